@@ -0,0 +1,79 @@
+import { readdir, readFile } from 'node:fs/promises'
+import path, { dirname } from 'node:path'
+import { fileURLToPath } from 'node:url'
+import { getBaseline, getBaselineDifference } from '../src/baseline.js'
+import { getBinaryBaselineDifference } from '../src/binaryBaseline.js'
+import * as TokenizeJava from '../src/tokenizeJava.js'
+
+const __dirname = dirname(fileURLToPath(import.meta.url))
+const root = path.join(__dirname, '..')
+
+/**
+ * @param {string} text
+ */
+const tokenize = (text) => {
+  let lineState = TokenizeJava.initialLineState
+  for (const line of text.split('\n')) {
+    lineState = TokenizeJava.tokenizeLine(line, lineState)
+  }
+}
+
+/**
+ * Compares all cases with their text and their binary baselines, reading the
+ * baselines from disk in both cases, next to only tokenizing the cases. Run
+ * scripts/convert-baselines.js first.
+ */
+const main = async () => {
+  const folder = `${root}/test/cases`
+  const dirents = await readdir(folder)
+  const names = dirents.filter((dirent) => dirent.endsWith('.java'))
+  const texts = await Promise.all(
+    names.map((name) => readFile(`${folder}/${name}`, 'utf8')),
+  )
+  const runs = Number(process.env.RUNS) || 3
+  let tokenizeTime = 0
+  let textTime = 0
+  let binaryTime = 0
+  let failures = 0
+  for (let run = 0; run <= runs; run++) {
+    let start = performance.now()
+    for (const text of texts) {
+      tokenize(text)
+    }
+    const tokenizeRun = performance.now() - start
+    start = performance.now()
+    for (let i = 0; i < names.length; i++) {
+      const expected = await readFile(
+        `${root}/test/baselines/${names[i].replace(/\.java$/, '.txt')}`,
+        'utf8',
+      )
+      if (getBaselineDifference(getBaseline(texts[i]), expected)) {
+        failures++
+      }
+    }
+    const textRun = performance.now() - start
+    start = performance.now()
+    for (let i = 0; i < names.length; i++) {
+      const bytes = await readFile(
+        `${root}/.cache/baselines/${names[i].replace(/\.java$/, '.bin')}`,
+      )
+      if (getBinaryBaselineDifference(texts[i], bytes)) {
+        failures++
+      }
+    }
+    const binaryRun = performance.now() - start
+    // the first run warms up
+    if (run > 0) {
+      tokenizeTime += tokenizeRun
+      textTime += textRun
+      binaryTime += binaryRun
+    }
+  }
+  console.info(`cases:            ${names.length}`)
+  console.info(`tokenize only:    ${(tokenizeTime / runs).toFixed(0)}ms`)
+  console.info(`text baselines:   ${(textTime / runs).toFixed(0)}ms`)
+  console.info(`binary baselines: ${(binaryTime / runs).toFixed(0)}ms`)
+  console.info(`failures:         ${failures}`)
+}
+
+main()
@@ -0,0 +1,66 @@
+import * as fs from 'node:fs/promises'
+import { tmpdir } from 'node:os'
+import path, { dirname } from 'node:path'
+import { fileURLToPath } from 'node:url'
+import {
+  createDiskTokenCache,
+  getTokenizerHash,
+  tokenizeText,
+} from '../src/diskTokenCache.js'
+
+const __dirname = dirname(fileURLToPath(import.meta.url))
+const root = path.join(__dirname, '..')
+
+const getLargestDocuments = async (count) => {
+  const folder = `${root}/test/cases`
+  const dirents = await fs.readdir(folder)
+  const documents = []
+  for (const dirent of dirents) {
+    documents.push(await fs.readFile(`${folder}/${dirent}`, 'utf8'))
+  }
+  documents.sort((a, b) => b.length - a.length)
+  return documents.slice(0, count)
+}
+
+const main = async () => {
+  const documents = await getLargestDocuments(Number(process.env.COUNT) || 50)
+  const source = await fs.readFile(`${root}/src/tokenizeJava.js`, 'utf8')
+  const cacheDir = await fs.mkdtemp(`${tmpdir()}/java-token-cache-`)
+  const cache = createDiskTokenCache({
+    cacheDir,
+    tokenizerHash: getTokenizerHash(source),
+    fs,
+  })
+  try {
+    let start = performance.now()
+    for (const text of documents) {
+      tokenizeText(text)
+    }
+    const tokenizeTime = performance.now() - start
+    for (const text of documents) {
+      await cache.save(text, tokenizeText(text))
+    }
+    start = performance.now()
+    for (const text of documents) {
+      const cached = await cache.load(text)
+      if (!cached) {
+        throw new Error('expected cache hit')
+      }
+    }
+    const loadTime = performance.now() - start
+    let bytes = 0
+    for (const dirent of await fs.readdir(cacheDir)) {
+      bytes += (await fs.stat(`${cacheDir}/${dirent}`)).size
+    }
+    const characters = documents.reduce((sum, text) => sum + text.length, 0)
+    console.info(`documents:  ${documents.length}`)
+    console.info(`characters: ${characters}`)
+    console.info(`cache size: ${bytes} bytes`)
+    console.info(`tokenize:   ${tokenizeTime.toFixed(0)}ms`)
+    console.info(`load:       ${loadTime.toFixed(0)}ms`)
+  } finally {
+    await fs.rm(cacheDir, { recursive: true, force: true })
+  }
+}
+
+main()
@@ -0,0 +1,76 @@
+import { readdir, readFile } from 'node:fs/promises'
+import path, { dirname } from 'node:path'
+import { fileURLToPath } from 'node:url'
+import {
+  createDocumentSymbolProvider,
+  getDocumentSymbols,
+} from '../src/documentSymbols.js'
+import { createDocumentTokenizer } from '../src/documentTokenizer.js'
+
+const __dirname = dirname(fileURLToPath(import.meta.url))
+const root = path.join(__dirname, '..')
+
+const getLargestClosureCompilerTests = async (count) => {
+  const folder = `${root}/test/cases`
+  const dirents = await readdir(folder)
+  const documents = []
+  for (const dirent of dirents) {
+    if (dirent.startsWith('closure-compiler-')) {
+      documents.push(await readFile(`${folder}/${dirent}`, 'utf8'))
+    }
+  }
+  documents.sort((a, b) => b.length - a.length)
+  return documents.slice(0, count)
+}
+
+/**
+ * @param {readonly any[]} symbols
+ */
+const countSymbols = (symbols) => {
+  let count = symbols.length
+  for (const symbol of symbols) {
+    count += countSymbols(symbol.children)
+  }
+  return count
+}
+
+const main = async () => {
+  const documents = await getLargestClosureCompilerTests(
+    Number(process.env.COUNT) || 10,
+  )
+  const editCount = Number(process.env.EDITS) || 100
+  let lineCount = 0
+  let symbolCount = 0
+  let fullTime = 0
+  let editTime = 0
+  for (const text of documents) {
+    let start = performance.now()
+    const symbols = getDocumentSymbols(text)
+    fullTime += performance.now() - start
+    symbolCount += countSymbols(symbols)
+    const documentTokenizer = createDocumentTokenizer(text)
+    const provider = createDocumentSymbolProvider(documentTokenizer)
+    lineCount += documentTokenizer.getLineCount()
+    provider.getDocumentSymbols()
+    start = performance.now()
+    for (let i = 0; i < editCount; i++) {
+      const lineIndex = (i * 7919) % documentTokenizer.getLineCount()
+      const line = documentTokenizer.getLine(lineIndex)
+      documentTokenizer.applyEdit(lineIndex, 1, [line + ' '])
+      provider.getDocumentSymbols()
+    }
+    editTime += performance.now() - start
+  }
+  console.info(`documents:              ${documents.length}`)
+  console.info(`lines:                  ${lineCount}`)
+  console.info(`symbols:                ${symbolCount}`)
+  console.info(`full outline:           ${fullTime.toFixed(1)}ms`)
+  console.info(
+    `full outline/1k lines:  ${((fullTime / lineCount) * 1000).toFixed(2)}ms`,
+  )
+  console.info(
+    `edit + outline/doc:     ${(editTime / (editCount * documents.length)).toFixed(3)}ms`,
+  )
+}
+
+main()
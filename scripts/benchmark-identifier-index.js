@@ -0,0 +1,95 @@
+import { readdir, readFile } from 'node:fs/promises'
+import path, { dirname } from 'node:path'
+import { fileURLToPath } from 'node:url'
+import { createDocumentTokenizer } from '../src/documentTokenizer.js'
+import { createIdentifierIndex } from '../src/identifierIndex.js'
+
+const __dirname = dirname(fileURLToPath(import.meta.url))
+const root = path.join(__dirname, '..')
+
+const getLargestDocuments = async (count) => {
+  const folder = `${root}/test/cases`
+  const dirents = await readdir(folder)
+  const documents = []
+  for (const dirent of dirents) {
+    documents.push(await readFile(`${folder}/${dirent}`, 'utf8'))
+  }
+  documents.sort((a, b) => b.length - a.length)
+  return documents.slice(0, count)
+}
+
+/**
+ * Finds whole word matches in the text, including strings and comments, like
+ * a plain text search does.
+ *
+ * @param {string} text
+ * @param {string} name
+ */
+const searchText = (text, name) => {
+  const regex = new RegExp(`\\b${name.replaceAll('$', '\\$')}\\b`, 'g')
+  let count = 0
+  while (regex.exec(text)) {
+    count++
+  }
+  return count
+}
+
+const main = async () => {
+  const documents = await getLargestDocuments(Number(process.env.COUNT) || 10)
+  const queryCount = Number(process.env.QUERIES) || 200
+  let buildTime = 0
+  let editTime = 0
+  let textTime = 0
+  let indexTime = 0
+  let textMatches = 0
+  let indexMatches = 0
+  for (const text of documents) {
+    const documentTokenizer = createDocumentTokenizer(text)
+    let start = performance.now()
+    const index = createIdentifierIndex(documentTokenizer)
+    buildTime += performance.now() - start
+    const names = []
+    for (let i = 0; names.length < queryCount; i++) {
+      const lineIndex = (i * 7919) % documentTokenizer.getLineCount()
+      const line = documentTokenizer.getLine(lineIndex)
+      const column = (i * 31) % (line.length + 1)
+      const name = index.getIdentifierAt(lineIndex, column)
+      if (name) {
+        names.push(name)
+      }
+    }
+    start = performance.now()
+    for (const name of names) {
+      textMatches += searchText(text, name)
+    }
+    textTime += performance.now() - start
+    start = performance.now()
+    for (const name of names) {
+      indexMatches += index.getOccurrences(name).length
+    }
+    indexTime += performance.now() - start
+    start = performance.now()
+    for (let i = 0; i < 100; i++) {
+      const lineIndex = (i * 104_729) % documentTokenizer.getLineCount()
+      const line = documentTokenizer.getLine(lineIndex)
+      documentTokenizer.applyEdit(lineIndex, 1, [line + ' x1'])
+    }
+    editTime += performance.now() - start
+  }
+  const queries = documents.length * queryCount
+  console.info(`documents:           ${documents.length}`)
+  console.info(
+    `index build/doc:     ${(buildTime / documents.length).toFixed(1)}ms`,
+  )
+  console.info(
+    `text search/query:   ${(textTime / queries).toFixed(3)}ms, ${textMatches} matches`,
+  )
+  console.info(
+    `index query/query:   ${(indexTime / queries).toFixed(3)}ms, ${indexMatches} matches in code`,
+  )
+  console.info(
+    `edit incl. tokenize: ${(editTime / (documents.length * 100)).toFixed(3)}ms`,
+  )
+}
+
+main()
@@ -0,0 +1,104 @@
+import { readdir, readFile } from 'node:fs/promises'
+import path, { dirname } from 'node:path'
+import { fileURLToPath } from 'node:url'
+import {
+  shouldDecreaseIndent,
+  shouldIncreaseIndent,
+} from '../src/indentation.js'
+import * as TokenizeJava from '../src/tokenizeJava.js'
+
+const __dirname = dirname(fileURLToPath(import.meta.url))
+const root = path.join(__dirname, '..')
+
+/**
+ * Returns the longest lines of the test cases together with their tokens and
+ * the state before them.
+ *
+ * @param {number} count
+ */
+const getLongestLines = async (count) => {
+  const folder = `${root}/test/cases`
+  const dirents = await readdir(folder)
+  const lines = []
+  for (const dirent of dirents) {
+    const text = await readFile(`${folder}/${dirent}`, 'utf8')
+    let lineState = TokenizeJava.initialLineState
+    for (const line of text.split('\n')) {
+      const startLineState = lineState
+      lineState = TokenizeJava.tokenizeLine(line, lineState)
+      lines.push({ line, tokens: lineState.tokens, startLineState })
+    }
+  }
+  lines.sort((a, b) => b.line.length - a.line.length)
+  return lines.slice(0, count)
+}
+
+/**
+ * Long lines of nested calls, where every opening bracket makes the increase
+ * pattern scan up to the first closing bracket.
+ *
+ * @param {number} length
+ */
+const getNestedCallLine = (length) => {
+  const depth = Math.floor(length / 10)
+  const line = '    f(a, '.repeat(depth) + ')'.repeat(depth) + ';'
+  const lineState = TokenizeJava.tokenizeLine(
+    line,
+    TokenizeJava.initialLineState,
+  )
+  return {
+    line,
+    tokens: lineState.tokens,
+    startLineState: TokenizeJava.initialLineState,
+  }
+}
+
+const measure = (name, entries, fn) => {
+  const iterations = Number(process.env.ITERATIONS) || 500
+  for (const entry of entries) {
+    fn(entry)
+  }
+  const start = performance.now()
+  for (let i = 0; i < iterations; i++) {
+    for (const entry of entries) {
+      fn(entry)
+    }
+  }
+  const perLine = (performance.now() - start) / iterations / entries.length
+  console.info(`${name.padEnd(36)} ${(perLine * 1000).toFixed(2)}µs/line`)
+}
+
+const main = async () => {
+  const languageConfiguration = JSON.parse(
+    await readFile(`${root}/languageConfiguration.json`, 'utf8'),
+  )
+  const { indentationRules } = languageConfiguration
+  const increaseIndentPattern = new RegExp(
+    indentationRules.increaseIndentPattern,
+  )
+  const decreaseIndentPattern = new RegExp(
+    indentationRules.decreaseIndentPattern,
+  )
+  const longest = await getLongestLines(Number(process.env.COUNT) || 1000)
+  console.info(
+    `longest lines: ${longest.at(-1).line.length} to ${longest[0].line.length} chars`,
+  )
+  const groups = [
+    ['longest corpus lines', longest],
+    ['nested calls, 1k chars', [getNestedCallLine(1000)]],
+    ['nested calls, 10k chars', [getNestedCallLine(10_000)]],
+  ]
+  for (const [name, entries] of groups) {
+    console.info(name)
+    measure('  regex', entries, ({ line }) => {
+      increaseIndentPattern.test(line)
+      decreaseIndentPattern.test(line)
+    })
+    measure('  tokens', entries, ({ line, tokens, startLineState }) => {
+      shouldIncreaseIndent(line, tokens)
+      shouldDecreaseIndent(line, tokens, startLineState)
+    })
+  }
+}
+
+main()
@@ -0,0 +1,76 @@
+import { readdir, readFile } from 'node:fs/promises'
+import path, { dirname } from 'node:path'
+import { fileURLToPath } from 'node:url'
+import { createDocumentTokenizer } from '../src/documentTokenizer.js'
+import { createMinimapProvider, getMinimapCells } from '../src/minimap.js'
+
+const __dirname = dirname(fileURLToPath(import.meta.url))
+const root = path.join(__dirname, '..')
+
+const getLargestDocument = async () => {
+  const folder = `${root}/test/cases`
+  const dirents = await readdir(folder)
+  let largest = ''
+  for (const dirent of dirents) {
+    const text = await readFile(`${folder}/${dirent}`, 'utf8')
+    if (text.length > largest.length) {
+      largest = text
+    }
+  }
+  return largest
+}
+
+const measure = (iterations, fn) => {
+  fn(0)
+  const start = performance.now()
+  for (let i = 0; i < iterations; i++) {
+    fn(i)
+  }
+  return (performance.now() - start) / iterations
+}
+
+const main = async () => {
+  const text = await getLargestDocument()
+  const documentTokenizer = createDocumentTokenizer(text)
+  const lineCount = documentTokenizer.getLineCount()
+  const iterations = Number(process.env.ITERATIONS) || 50
+
+  // downsampling the tokens of every line on every frame
+  const uncached = measure(iterations, () => {
+    for (let i = 0; i < lineCount; i++) {
+      getMinimapCells(documentTokenizer.getLineTokens(i))
+    }
+  })
+
+  const provider = createMinimapProvider(documentTokenizer)
+  const start = performance.now()
+  provider.getRows(0, lineCount)
+  const firstFrame = performance.now() - start
+
+  const afterEdit = measure(iterations, (i) => {
+    const lineIndex = (i * 7919) % lineCount
+    const line = documentTokenizer.getLine(lineIndex)
+    documentTokenizer.applyEdit(lineIndex, 1, [line + ' x'])
+    provider.getRows(0, lineCount)
+  })
+
+  const editOnly = measure(iterations, (i) => {
+    const lineIndex = (i * 7919) % lineCount
+    const line = documentTokenizer.getLine(lineIndex)
+    documentTokenizer.applyEdit(lineIndex, 1, [line + ' x'])
+  })
+
+  const blocks = measure(iterations, () => {
+    provider.getRows(0, lineCount, 8)
+  })
+
+  console.info(`lines:                     ${lineCount}`)
+  console.info(`uncached frame:            ${uncached.toFixed(2)}ms`)
+  console.info(`cached, first frame:       ${firstFrame.toFixed(2)}ms`)
+  console.info(
+    `cached, edit + frame:      ${afterEdit.toFixed(2)}ms (edit alone ${editOnly.toFixed(2)}ms)`,
+  )
+  console.info(`cached, 8 lines per row:   ${blocks.toFixed(2)}ms`)
+}
+
+main()
@@ -0,0 +1,64 @@
+import { readdir, readFile } from 'node:fs/promises'
+import path, { dirname } from 'node:path'
+import { fileURLToPath } from 'node:url'
+import { createDocumentTokenizer } from '../src/documentTokenizer.js'
+import {
+  createSemanticTokensProvider,
+  getSemanticTokens,
+} from '../src/semanticTokens.js'
+
+const __dirname = dirname(fileURLToPath(import.meta.url))
+const root = path.join(__dirname, '..')
+
+const getLargestDocuments = async (count) => {
+  const folder = `${root}/test/cases`
+  const dirents = await readdir(folder)
+  const documents = []
+  for (const dirent of dirents) {
+    documents.push(await readFile(`${folder}/${dirent}`, 'utf8'))
+  }
+  documents.sort((a, b) => b.length - a.length)
+  return documents.slice(0, count)
+}
+
+const main = async () => {
+  const documents = await getLargestDocuments(Number(process.env.COUNT) || 10)
+  const editCount = Number(process.env.EDITS) || 200
+  let fullInts = 0
+  let deltaInts = 0
+  let fullTime = 0
+  let deltaTime = 0
+  for (const text of documents) {
+    const documentTokenizer = createDocumentTokenizer(text)
+    const provider = createSemanticTokensProvider(documentTokenizer)
+    let { resultId } = provider.getFull()
+    for (let i = 0; i < editCount; i++) {
+      const lineIndex = (i * 7919) % documentTokenizer.getLineCount()
+      const line = documentTokenizer.getLine(lineIndex)
+      documentTokenizer.applyEdit(lineIndex, 1, [line + ' x'])
+      let start = performance.now()
+      const delta = provider.getDelta(resultId)
+      deltaTime += performance.now() - start
+      resultId = delta.resultId
+      for (const edit of delta.edits) {
+        deltaInts += edit.data.length + 2
+      }
+      const linesTokens = []
+      for (let j = 0; j < documentTokenizer.getLineCount(); j++) {
+        linesTokens.push(documentTokenizer.getLineTokens(j))
+      }
+      start = performance.now()
+      fullInts += getSemanticTokens(linesTokens).length
+      fullTime += performance.now() - start
+    }
+  }
+  const editTotal = documents.length * editCount
+  console.info(`edits:            ${editTotal}`)
+  console.info(`full ints/edit:   ${(fullInts / editTotal).toFixed(0)}`)
+  console.info(`delta ints/edit:  ${(deltaInts / editTotal).toFixed(1)}`)
+  console.info(`reduction:        ${(fullInts / deltaInts).toFixed(0)}x`)
+  console.info(`delta time/edit:  ${(deltaTime / editTotal).toFixed(3)}ms`)
+  console.info(`full time/edit:   ${(fullTime / editTotal).toFixed(3)}ms`)
+}
+
+main()
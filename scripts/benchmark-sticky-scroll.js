@@ -0,0 +1,72 @@
+import { readdir, readFile } from 'node:fs/promises'
+import path, { dirname } from 'node:path'
+import { fileURLToPath } from 'node:url'
+import { createDocumentTokenizer } from '../src/documentTokenizer.js'
+import { createStickyScrollProvider } from '../src/stickyScroll.js'
+
+const __dirname = dirname(fileURLToPath(import.meta.url))
+const root = path.join(__dirname, '..')
+
+const getLargestDocument = async () => {
+  const folder = `${root}/test/cases`
+  const dirents = await readdir(folder)
+  let largest = ''
+  for (const dirent of dirents) {
+    const text = await readFile(`${folder}/${dirent}`, 'utf8')
+    if (text.length > largest.length) {
+      largest = text
+    }
+  }
+  return largest
+}
+
+const main = async () => {
+  const text = await getLargestDocument()
+  const documentTokenizer = createDocumentTokenizer(text)
+  const lineCount = documentTokenizer.getLineCount()
+  const queryCount = Number(process.env.QUERIES) || 200
+
+  // without a kept scope stack, every scroll position scans the file again
+  let start = performance.now()
+  for (let i = 0; i < queryCount; i++) {
+    const lineIndex = (i * 7919) % lineCount
+    const provider = createStickyScrollProvider(documentTokenizer)
+    provider.getEnclosingScopes(lineIndex)
+    provider.dispose()
+  }
+  const scanTime = (performance.now() - start) / queryCount
+
+  const provider = createStickyScrollProvider(documentTokenizer)
+  start = performance.now()
+  for (let i = 0; i < lineCount; i++) {
+    provider.getEnclosingScopes(i)
+  }
+  const scrollTime = (performance.now() - start) / lineCount
+
+  start = performance.now()
+  for (let i = 0; i < queryCount; i++) {
+    provider.getEnclosingScopes((i * 7919) % lineCount)
+  }
+  const jumpTime = (performance.now() - start) / queryCount
+
+  start = performance.now()
+  for (let i = 0; i < queryCount; i++) {
+    const lineIndex = (i * 7919) % lineCount
+    const line = documentTokenizer.getLine(lineIndex)
+    documentTokenizer.applyEdit(lineIndex, 1, [line + ' x'])
+    provider.getEnclosingScopes(lineIndex)
+  }
+  const editTime = (performance.now() - start) / queryCount
+
+  console.info(`lines:                 ${lineCount}`)
+  console.info(`stateless scan/query:  ${scanTime.toFixed(3)}ms`)
+  console.info(
+    `scroll line by line:   ${(scrollTime * 1000).toFixed(2)}µs/query`,
+  )
+  console.info(
+    `random jump:           ${(jumpTime * 1000).toFixed(2)}µs/query`,
+  )
+  console.info(`edit + query:          ${editTime.toFixed(3)}ms`)
+}
+
+main()
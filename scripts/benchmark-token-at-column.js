@@ -0,0 +1,97 @@
+import { createDocumentTokenizer } from '../src/documentTokenizer.js'
+import {
+  getLineTokenIndex,
+  getTokenAtColumn,
+  getTokenAtColumnOfDocument,
+} from '../src/tokenAtColumn.js'
+import * as TokenizeJava from '../src/tokenizeJava.js'
+
+/**
+ * Finds the token at a column by walking the tokens, like callers did before
+ * the index existed.
+ *
+ * @param {ArrayLike<number>} tokens
+ * @param {number} column
+ */
+const findTokenLinear = (tokens, column) => {
+  let offset = 0
+  for (let i = 0; i < tokens.length; i += 2) {
+    offset += tokens[i + 1]
+    if (offset > column) {
+      return tokens[i]
+    }
+  }
+  return tokens[tokens.length - 2]
+}
+
+const measure = (iterations, fn) => {
+  for (let i = 0; i < 100; i++) {
+    fn(i)
+  }
+  const start = performance.now()
+  for (let i = 0; i < iterations; i++) {
+    fn(i)
+  }
+  return ((performance.now() - start) / iterations) * 1000
+}
+
+/**
+ * Types a character into the middle line of a document and asks for the
+ * token at the cursor after every keystroke, like completion does.
+ *
+ * @param {string} line
+ * @param {boolean} recordTokenStates
+ */
+const measureKeystrokes = (line, recordTokenStates) => {
+  const documentTokenizer = createDocumentTokenizer(
+    ['class Foo {', line, '}'].join('\n'),
+    { recordTokenStates },
+  )
+  const column = line.length >> 1
+  return measure(1000, (i) => {
+    const typed = `${line.slice(0, column)}${i & 1 ? 'x' : 'y'}`
+    documentTokenizer.applyEdit(1, 1, [typed + line.slice(column)])
+    getTokenAtColumnOfDocument(documentTokenizer, 1, typed.length)
+  })
+}
+
+const main = () => {
+  const iterations = Number(process.env.ITERATIONS) || 100_000
+  const part = 'builder.append("key = ", value /* x */).append(\'c\'); '
+  console.info('length    tokens   linear     indexed    index build')
+  for (const length of [100, 1000, 10_000, 100_000]) {
+    const line = part.repeat(Math.ceil(length / part.length)).slice(0, length)
+    const startLineState = TokenizeJava.initialLineState
+    const { tokens } = TokenizeJava.tokenizeLine(line, startLineState)
+    const columns = new Uint32Array(1024)
+    for (let i = 0; i < columns.length; i++) {
+      columns[i] = Math.floor(Math.random() * line.length)
+    }
+    const linear = measure(iterations, (i) => {
+      findTokenLinear(tokens, columns[i & 1023])
+    })
+    getLineTokenIndex(line, tokens, startLineState)
+    const indexed = measure(iterations, (i) => {
+      getTokenAtColumn(line, tokens, startLineState, columns[i & 1023])
+    })
+    const build = measure(100, () => {
+      // a fresh copy of the tokens, as after re-tokenizing the line
+      getLineTokenIndex(line, tokens.slice(), startLineState)
+    })
+    console.info(
+      `${String(length).padEnd(9)} ${String(tokens.length / 2).padEnd(8)} ${linear.toFixed(2).padStart(7)}µs ${indexed.toFixed(2).padStart(7)}µs ${build.toFixed(2).padStart(10)}µs`,
+    )
+  }
+  console.info()
+  console.info('length    keystroke  keystroke with recorded states')
+  for (const length of [100, 1000, 10_000]) {
+    const line = part.repeat(Math.ceil(length / part.length)).slice(0, length)
+    const tokenized = measureKeystrokes(line, false)
+    const recorded = measureKeystrokes(line, true)
+    console.info(
+      `${String(length).padEnd(9)} ${tokenized.toFixed(2).padStart(8)}µs ${recorded.toFixed(2).padStart(8)}µs`,
+    )
+  }
+}
+
+main()
@@ -0,0 +1,55 @@
+import { readdir, readFile } from 'node:fs/promises'
+import path, { dirname } from 'node:path'
+import { fileURLToPath } from 'node:url'
+import { createTokenCache } from '../src/tokenCache.js'
+import { initialLineState, tokenizeLine } from '../src/tokenizeJava.js'
+
+const __dirname = dirname(fileURLToPath(import.meta.url))
+const root = path.join(__dirname, '..')
+
+const getAllDocuments = async () => {
+  const folder = `${root}/test/cases`
+  const dirents = await readdir(folder)
+  const documents = []
+  for (const dirent of dirents) {
+    const content = await readFile(`${folder}/${dirent}`, 'utf8')
+    documents.push(content.split('\n'))
+  }
+  return documents
+}
+
+const tokenizeAll = (documents, tokenize) => {
+  const start = performance.now()
+  for (const lines of documents) {
+    let lineState = initialLineState
+    for (const line of lines) {
+      lineState = tokenize(line, lineState)
+    }
+  }
+  return performance.now() - start
+}
+
+const main = async () => {
+  const documents = await getAllDocuments()
+  tokenizeAll(documents, tokenizeLine)
+  const uncached = tokenizeAll(documents, tokenizeLine)
+  const cache = createTokenCache({
+    maxEntries: Number(process.env.MAX_ENTRIES) || 10_000,
+    maxBytes: Number(process.env.MAX_BYTES) || 8 * 1024 * 1024,
+  })
+  const cold = tokenizeAll(documents, cache.tokenizeLine)
+  const coldStats = cache.getStats()
+  const warm = tokenizeAll(documents, cache.tokenizeLine)
+  const stats = cache.getStats()
+  console.info(`documents:        ${documents.length}`)
+  console.info(`uncached:         ${uncached.toFixed(0)}ms`)
+  console.info(`cached (cold):    ${cold.toFixed(0)}ms`)
+  console.info(`cached (warm):    ${warm.toFixed(0)}ms`)
+  console.info(`hit rate (cold):  ${(coldStats.hitRate * 100).toFixed(1)}%`)
+  console.info(`hit rate (total): ${(stats.hitRate * 100).toFixed(1)}%`)
+  console.info(`entries:          ${stats.entries}`)
+  console.info(`bytes:            ${stats.bytes}`)
+  console.info(`evictions:        ${stats.evictions}`)
+}
+
+main()
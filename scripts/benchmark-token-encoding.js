@@ -0,0 +1,84 @@
+import { readdir, readFile } from 'node:fs/promises'
+import path, { dirname } from 'node:path'
+import { fileURLToPath } from 'node:url'
+import { decodeLine, encodeTokens } from '../src/encodeTokens.js'
+import { initialLineState, tokenizeLine } from '../src/tokenizeJava.js'
+
+const __dirname = dirname(fileURLToPath(import.meta.url))
+const root = path.join(__dirname, '..')
+
+const getAllDocumentTokens = async () => {
+  const folder = `${root}/test/cases`
+  const dirents = await readdir(folder)
+  const documents = []
+  for (const dirent of dirents) {
+    const content = await readFile(`${folder}/${dirent}`, 'utf8')
+    const linesTokens = []
+    let lineState = initialLineState
+    for (const line of content.split('\n')) {
+      lineState = tokenizeLine(line, lineState)
+      linesTokens.push(lineState.tokens)
+    }
+    documents.push(linesTokens)
+  }
+  return documents
+}
+
+const isEqual = (a, b) => {
+  if (a.length !== b.length) {
+    return false
+  }
+  for (let i = 0; i < a.length; i++) {
+    if (a[i] !== b[i]) {
+      return false
+    }
+  }
+  return true
+}
+
+const main = async () => {
+  const documents = await getAllDocumentTokens()
+  let tokenCount = 0
+  let lineCount = 0
+  for (const linesTokens of documents) {
+    lineCount += linesTokens.length
+    for (const tokens of linesTokens) {
+      tokenCount += tokens.length / 2
+    }
+  }
+  let start = performance.now()
+  const encoded = documents.map(encodeTokens)
+  const encodeTime = performance.now() - start
+  let encodedBytes = 0
+  for (const { bytes, lineOffsets } of encoded) {
+    encodedBytes += bytes.byteLength + lineOffsets.byteLength
+  }
+  const tokens = []
+  start = performance.now()
+  for (const document of encoded) {
+    for (let i = 0; i < document.lineOffsets.length - 1; i++) {
+      decodeLine(document, i, tokens)
+    }
+  }
+  const decodeTime = performance.now() - start
+  for (let d = 0; d < documents.length; d++) {
+    for (let i = 0; i < documents[d].length; i++) {
+      if (!isEqual(decodeLine(encoded[d], i), documents[d][i])) {
+        throw new Error(`round trip mismatch in document ${d} line ${i}`)
+      }
+    }
+  }
+  const rawBytes = tokenCount * 8 + (lineCount + 1) * 4
+  console.info(`tokens:           ${tokenCount}`)
+  console.info(`uint32 pairs:     ${rawBytes} bytes`)
+  console.info(`encoded:          ${encodedBytes} bytes`)
+  console.info(`ratio:            ${(rawBytes / encodedBytes).toFixed(2)}x`)
+  console.info(`bytes per token:  ${(encodedBytes / tokenCount).toFixed(2)}`)
+  console.info(`encode:           ${encodeTime.toFixed(0)}ms`)
+  console.info(`decode:           ${decodeTime.toFixed(0)}ms`)
+  console.info(
+    `decode throughput: ${(tokenCount / decodeTime / 1000).toFixed(1)}M tokens/s`,
+  )
+}
+
+main()
@@ -0,0 +1,115 @@
+import { readFile, writeFile } from 'node:fs/promises'
+import path, { dirname } from 'node:path'
+import { fileURLToPath } from 'node:url'
+import { hashString } from '../src/hash.js'
+
+const __dirname = dirname(fileURLToPath(import.meta.url))
+const root = path.join(__dirname, '..')
+const manifestPath = `${root}/test/cases-manifest.json`
+
+/**
+ * @typedef {object} CasesManifest
+ * @property {Record<string, string>} duplicates the canonical case of each
+ * removed case
+ * @property {Record<string, {hash: number, size: number}>} cases the content
+ * hash and the size in bytes of each remaining case
+ */
+
+/**
+ * Reads test/cases-manifest.json, which scripts/dedupe-cases.js creates and
+ * scripts/import-cases.js keeps up to date.
+ *
+ * @returns {Promise<CasesManifest|undefined>}
+ */
+export const loadManifest = async () => {
+  try {
+    return JSON.parse(await readFile(manifestPath, 'utf8'))
+  } catch {
+    return undefined
+  }
+}
+
+/**
+ * Returns why the manifest entry of a case does not match the text of the
+ * case, or undefined when it matches.
+ *
+ * @param {{hash: number, size: number}|undefined} entry
+ * @param {string} text
+ */
+export const getEntryProblem = (entry, text) => {
+  if (!entry) {
+    return 'missing from test/cases-manifest.json, run scripts/dedupe-cases.js'
+  }
+  const hash = hashString(text)
+  const size = Buffer.byteLength(text)
+  if (entry.hash !== hash || entry.size !== size) {
+    return `test/cases-manifest.json has hash ${entry.hash} and size ${entry.size}, the case has hash ${hash} and size ${size}, run scripts/dedupe-cases.js`
+  }
+  return undefined
+}
+
+/**
+ * Returns the problems of the manifest that the entries of the remaining
+ * cases do not show: entries of cases that were removed, duplicates that
+ * were added again and duplicates whose canonical case was removed.
+ *
+ * @param {CasesManifest} manifest
+ * @param {string[]} names all cases in test/cases
+ */
+export const getManifestProblems = ({ duplicates, cases }, names) => {
+  const present = new Set(names)
+  const problems = []
+  for (const name of Object.keys(cases)) {
+    if (!present.has(name)) {
+      problems.push(`${name} has an entry but was removed`)
+    }
+  }
+  for (const [name, canonical] of Object.entries(duplicates)) {
+    if (present.has(name)) {
+      problems.push(`${name} is a duplicate of ${canonical} but was added`)
+    } else if (!present.has(canonical)) {
+      problems.push(`${name} is a duplicate of ${canonical}, which was removed`)
+    }
+  }
+  return problems
+}
+
+/**
+ * Writes the manifest with one line per case, to keep diffs small. The file
+ * is in .prettierignore, because prettier would put every property on its own
+ * line.
+ *
+ * @param {CasesManifest} manifest
+ */
+export const writeManifest = async ({ duplicates, cases }) => {
+  const byName = (
+    /** @type {[string, any]} */ [a],
+    /** @type {[string, any]} */ [b],
+  ) => (a < b ? -1 : 1)
+  const duplicateLines = Object.entries(duplicates)
+    .sort(byName)
+    .map(
+      ([name, canonical]) =>
+        `    ${JSON.stringify(name)}: ${JSON.stringify(canonical)}`,
+    )
+  const caseLines = Object.entries(cases)
+    .sort(byName)
+    .map(
+      ([name, { hash, size }]) =>
+        `    ${JSON.stringify(name)}: { "hash": ${hash}, "size": ${size} }`,
+    )
+  /**
+   * @param {string[]} lines
+   */
+  const formatObject = (lines) => {
+    return lines.length === 0 ? '{}' : `{\n${lines.join(',\n')}\n  }`
+  }
+  await writeFile(
+    manifestPath,
+    `{
+  "duplicates": ${formatObject(duplicateLines)},
+  "cases": ${formatObject(caseLines)}
+}
+`,
+  )
+}
@@ -0,0 +1,132 @@
+import { createBracketIndex } from '../src/bracketIndex.js'
+import { getLineBrackets } from '../src/getLineBrackets.js'
+import { runEditCheck } from './edit-check.js'
+
+/**
+ * @typedef {object} StackBracket
+ * @property {number} lineIndex
+ * @property {number} column
+ * @property {number} kind see `getLineBrackets`
+ */
+
+/**
+ * @param {{lineIndex: number, column: number}|undefined} position
+ */
+const formatPosition = (position) => {
+  return position ? `${position.lineIndex}:${position.column}` : 'none'
+}
+
+/**
+ * Matches the brackets of the whole document with a stack, the way the index
+ * is expected to: a closing bracket closes the innermost open bracket of any
+ * kind, and a closing bracket without an open bracket is not matched.
+ *
+ * @param {import('./edit-check.js').DocumentTokenizer} documentTokenizer
+ */
+const matchWithStack = (documentTokenizer) => {
+  /**
+   * @type {StackBracket[]}
+   */
+  const brackets = []
+  /**
+   * @type {Map<StackBracket, StackBracket>}
+   */
+  const partners = new Map()
+  /**
+   * @type {StackBracket[]}
+   */
+  const stack = []
+  for (let i = 0; i < documentTokenizer.getLineCount(); i++) {
+    const lineBrackets = getLineBrackets(
+      documentTokenizer.getLine(i),
+      documentTokenizer.getLineTokens(i),
+    )
+    for (let j = 0; j < lineBrackets.length; j += 2) {
+      const bracket = {
+        lineIndex: i,
+        column: lineBrackets[j],
+        kind: lineBrackets[j + 1],
+      }
+      brackets.push(bracket)
+      if (bracket.kind > 0) {
+        stack.push(bracket)
+      } else if (stack.length > 0) {
+        const open = stack.pop()
+        partners.set(open, bracket)
+        partners.set(bracket, open)
+      }
+    }
+  }
+  return { brackets, partners }
+}
+
+/**
+ * Returns the innermost open bracket before a position that is not closed
+ * before it.
+ *
+ * @param {readonly StackBracket[]} brackets
+ * @param {number} lineIndex
+ * @param {number} column
+ */
+const findEnclosingWithStack = (brackets, lineIndex, column) => {
+  const stack = []
+  for (const bracket of brackets) {
+    if (
+      bracket.lineIndex > lineIndex ||
+      (bracket.lineIndex === lineIndex && bracket.column >= column)
+    ) {
+      break
+    }
+    if (bracket.kind > 0) {
+      stack.push(bracket)
+    } else {
+      stack.pop()
+    }
+  }
+  return stack.at(-1)
+}
+
+/**
+ * Checks that the bracket index matches every bracket like a stack over the
+ * whole document does, and finds the same enclosing pairs at random
+ * positions.
+ */
+runEditCheck({
+  open: (documentTokenizer) => {
+    const bracketIndex = createBracketIndex(documentTokenizer)
+    return {
+      check({ expect, random }) {
+        const { brackets, partners } = matchWithStack(documentTokenizer)
+        for (const bracket of brackets) {
+          const pair = bracketIndex.findMatchingBracket(
+            bracket.lineIndex,
+            bracket.column,
+          )
+          const partner = partners.get(bracket)
+          const actual = bracket.kind > 0 ? pair?.close : pair?.open
+          const isMatched = Boolean(partner && partner.kind === -bracket.kind)
+          expect(
+            `${formatPosition(actual)} ${Boolean(pair?.isMatched)}`,
+            `${formatPosition(partner)} ${partner ? isMatched : false}`,
+            `bracket ${formatPosition(bracket)}`,
+          )
+        }
+        for (let j = 0; j < 20; j++) {
+          const lineIndex = Math.floor(
+            random() * documentTokenizer.getLineCount(),
+          )
+          const line = documentTokenizer.getLine(lineIndex)
+          const column = Math.floor(random() * (line.length + 1))
+          const pair = bracketIndex.findEnclosingPair(lineIndex, column)
+          const expected = findEnclosingWithStack(brackets, lineIndex, column)
+          expect(
+            formatPosition(pair?.open),
+            formatPosition(expected),
+            `enclosing ${lineIndex}:${column}`,
+          )
+        }
+      },
+      dispose: bracketIndex.dispose,
+    }
+  },
+})
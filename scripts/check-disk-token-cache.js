@@ -0,0 +1,252 @@
+import * as fs from 'node:fs/promises'
+import { tmpdir } from 'node:os'
+import { parseArgs } from 'node:util'
+import {
+  createDiskTokenCache,
+  deserializeTokens,
+  serializeTokens,
+  tokenizeText,
+} from '../src/diskTokenCache.js'
+import { getPackedLineState } from '../src/tokenizeJava.js'
+import { readCases } from './random-edits.js'
+
+const TOKENIZER_HASH = 0x12345678
+
+/**
+ * @param {import('../src/diskTokenCache.js').CachedTokens|undefined} cachedTokens
+ */
+const formatTokens = (cachedTokens) => {
+  if (!cachedTokens) {
+    return 'miss'
+  }
+  return cachedTokens.states
+    .map(
+      (state, i) =>
+        `${getPackedLineState(state)} ${Array.from(cachedTokens.tokens[i])}`,
+    )
+    .join('\n')
+}
+
+/**
+ * @param {Uint8Array} bytes
+ */
+const swapByteOrder = (bytes) => {
+  const swapped = new Uint8Array(bytes.length)
+  for (let i = 0; i < bytes.length; i += 4) {
+    swapped[i] = bytes[i + 3]
+    swapped[i + 1] = bytes[i + 2]
+    swapped[i + 2] = bytes[i + 1]
+    swapped[i + 3] = bytes[i]
+  }
+  return swapped
+}
+
+/**
+ * Moves the end of the first line that does not end at the end of the data
+ * there, so that the line ends are no longer increasing.
+ *
+ * @param {Uint8Array} bytes
+ */
+const corruptLineEnds = (bytes) => {
+  const data = new Uint32Array(bytes.slice().buffer)
+  const lineCount = data[6]
+  const lineEndsOffset = 8 + lineCount
+  for (let i = 0; i < lineCount; i++) {
+    if (data[lineEndsOffset + i] < data.length) {
+      data[lineEndsOffset + i] = data.length
+      return new Uint8Array(data.buffer)
+    }
+  }
+  return undefined
+}
+
+/**
+ * Moves the end of the last line back by one token, when it has one, so that
+ * the data ends with a token that belongs to no line.
+ *
+ * @param {Uint8Array} bytes
+ */
+const shortenLastLine = (bytes) => {
+  const data = new Uint32Array(bytes.slice().buffer)
+  const lineCount = data[6]
+  const lastLineEnd = 8 + lineCount * 2 - 1
+  const lastLineStart = lineCount > 1 ? data[lastLineEnd - 1] : lastLineEnd + 1
+  if (data[lastLineEnd] - lastLineStart < 2) {
+    return undefined
+  }
+  data[lastLineEnd] -= 2
+  return new Uint8Array(data.buffer)
+}
+
+/**
+ * @param {string} text
+ */
+const changeMiddleCharacter = (text) => {
+  const index = text.length >> 1
+  const character = text[index] === 'x' ? 'y' : 'x'
+  return text.slice(0, index) + character + text.slice(index + 1)
+}
+
+/**
+ * @param {string} cacheDir
+ */
+const readTmpFiles = async (cacheDir) => {
+  const dirents = await fs.readdir(cacheDir)
+  return dirents.filter((dirent) => dirent.endsWith('.tmp')).join(' ')
+}
+
+/**
+ * Checks that serialized tokens read back unchanged, also from an unaligned
+ * buffer, and that data for another tokenizer or text, data in the other
+ * byte order, truncated data and data with corrupt line ends are misses.
+ * Then checks that the cache tokenizes again when the file on disk is
+ * corrupt, and that failed saves leave no temporary files behind.
+ */
+const main = async () => {
+  const { values } = parseArgs({
+    options: {
+      step: { type: 'string', default: '20' },
+    },
+  })
+  const cases = await readCases(Number(values.step))
+  let checkCount = 0
+  /**
+   * @type {string[]}
+   */
+  const failures = []
+  /**
+   * @param {string} actual
+   * @param {string} expected
+   * @param {string} what
+   */
+  const expect = (actual, expected, what) => {
+    checkCount++
+    if (actual !== expected) {
+      const [actualLine] = actual.split('\n')
+      const [expectedLine] = expected.split('\n')
+      failures.push(`${what}, expected ${expectedLine}, got ${actualLine}`)
+    }
+  }
+
+  for (const { name, text } of cases) {
+    const cachedTokens = tokenizeText(text)
+    const expected = formatTokens(cachedTokens)
+    const bytes = serializeTokens(text, TOKENIZER_HASH, cachedTokens)
+    /**
+     * @param {Uint8Array} data
+     * @param {string} what
+     * @param {string} [otherText]
+     */
+    const expectMiss = (data, what, otherText = text) => {
+      expect(
+        formatTokens(deserializeTokens(data, otherText, TOKENIZER_HASH)),
+        'miss',
+        `${name}: ${what}`,
+      )
+    }
+    expect(
+      formatTokens(deserializeTokens(bytes, text, TOKENIZER_HASH)),
+      expected,
+      `${name}: read back`,
+    )
+    const unaligned = new Uint8Array(bytes.length + 1)
+    unaligned.set(bytes, 1)
+    expect(
+      formatTokens(
+        deserializeTokens(unaligned.subarray(1), text, TOKENIZER_HASH),
+      ),
+      expected,
+      `${name}: read back unaligned`,
+    )
+    expect(
+      formatTokens(deserializeTokens(bytes, text, TOKENIZER_HASH ^ 1)),
+      'miss',
+      `${name}: other tokenizer`,
+    )
+    if (text.length > 0) {
+      expectMiss(bytes, 'other text', changeMiddleCharacter(text))
+    }
+    expectMiss(swapByteOrder(bytes), 'other byte order')
+    expectMiss(bytes.subarray(0, bytes.length - 4), 'truncated')
+    expectMiss(bytes.subarray(0, bytes.length - 2), 'truncated unaligned')
+    const corrupt = corruptLineEnds(bytes)
+    if (corrupt) {
+      expectMiss(corrupt, 'decreasing line ends')
+    }
+    const shortened = shortenLastLine(bytes)
+    if (shortened) {
+      expectMiss(shortened, 'token data after the last line')
+    }
+  }
+
+  const cacheDir = await fs.mkdtemp(`${tmpdir()}/java-token-cache-`)
+  try {
+    const { text } = cases.reduce((a, b) =>
+      b.text.length > a.text.length ? b : a,
+    )
+    const expected = formatTokens(tokenizeText(text))
+    const cache = createDiskTokenCache({
+      cacheDir,
+      tokenizerHash: TOKENIZER_HASH,
+      fs,
+    })
+    expect(formatTokens(await cache.getTokens(text)), expected, 'tokenized')
+    expect(formatTokens(await cache.load(text)), expected, 'loaded')
+    const [file] = await fs.readdir(cacheDir)
+    const bytes = await fs.readFile(`${cacheDir}/${file}`)
+    await fs.writeFile(`${cacheDir}/${file}`, bytes.subarray(0, 64))
+    expect(formatTokens(await cache.load(text)), 'miss', 'loaded truncated')
+    expect(
+      formatTokens(await cache.getTokens(text)),
+      expected,
+      'tokenized again',
+    )
+    expect(formatTokens(await cache.load(text)), expected, 'loaded again')
+
+    const failure = new Error('disk full')
+    const failingCaches = {
+      'failed write': createDiskTokenCache({
+        cacheDir,
+        tokenizerHash: TOKENIZER_HASH,
+        fs: {
+          ...fs,
+          async writeFile(path, data) {
+            await fs.writeFile(path, data.subarray(0, data.length >> 1))
+            throw failure
+          },
+        },
+      }),
+      'failed rename': createDiskTokenCache({
+        cacheDir,
+        tokenizerHash: TOKENIZER_HASH,
+        fs: {
+          ...fs,
+          async rename() {
+            throw failure
+          },
+        },
+      }),
+    }
+    for (const [what, failingCache] of Object.entries(failingCaches)) {
+      const error = await failingCache
+        .save(changeMiddleCharacter(text), tokenizeText(text))
+        .catch((error) => error)
+      expect(String(error), String(failure), `${what} error`)
+      expect(await readTmpFiles(cacheDir), '', `${what} temporary files`)
+    }
+  } finally {
+    await fs.rm(cacheDir, { recursive: true, force: true })
+  }
+
+  console.info(`cases:    ${cases.length}`)
+  console.info(`checks:   ${checkCount}`)
+  console.info(`failures: ${failures.length}`)
+  for (const message of failures.slice(0, 50)) {
+    console.info(message)
+  }
+  if (failures.length > 0) {
+    process.exitCode = 1
+  }
+}
+
+main()
@@ -0,0 +1,47 @@
+import {
+  createDocumentSymbolProvider,
+  getDocumentSymbols,
+} from '../src/documentSymbols.js'
+import { runEditCheck } from './edit-check.js'
+import { getText } from './random-edits.js'
+
+/**
+ * Returns one line per symbol, children after their parent and indented by
+ * their depth.
+ *
+ * @param {readonly import('../src/documentSymbols.js').DocumentSymbol[]} symbols
+ * @param {string} [indent]
+ * @returns {string[]}
+ */
+const formatSymbols = (symbols, indent = '') => {
+  return symbols.flatMap(
+    ({ name, kind, startLine, column, endLine, children }) => [
+      `${indent}${name} ${kind} ${startLine}:${column}-${endLine}`,
+      ...formatSymbols(children, `${indent}  `),
+    ],
+  )
+}
+
+/**
+ * Checks that the outline kept by the provider is the same as the outline of
+ * the text of the edited document.
+ */
+runEditCheck({
+  edits: 30,
+  skip: 0.3,
+  open: (documentTokenizer) => {
+    const provider = createDocumentSymbolProvider(documentTokenizer)
+    return {
+      check({ expect }) {
+        expect(
+          formatSymbols(provider.getDocumentSymbols()).join('\n'),
+          formatSymbols(getDocumentSymbols(getText(documentTokenizer))).join(
+            '\n',
+          ),
+          'symbols',
+        )
+      },
+      dispose: provider.dispose,
+    }
+  },
+})
@@ -0,0 +1,71 @@
+import { createDocumentTokenizer } from '../src/documentTokenizer.js'
+import { createFoldingRangeProvider } from '../src/foldingRanges.js'
+import { runEditCheck } from './edit-check.js'
+
+/**
+ * @param {readonly import('../src/foldingRanges.js').FoldingRange[]} ranges
+ */
+const formatRanges = (ranges) => {
+  return ranges
+    .map(({ startLine, endLine, kind }) => `${startLine}-${endLine} ${kind}`)
+    .join('\n')
+}
+
+/**
+ * Documents with the ranges they must have. Comparing with a fresh provider
+ * can not find mistakes that do not depend on edits, like a line that ends
+ * one block comment and starts the next one.
+ */
+const documents = [
+  {
+    lines: ['/*', ' * a', ' */ int x = 1; /*', ' * b', ' */'],
+    ranges: ['0-2 comment', '2-4 comment'],
+  },
+  {
+    lines: ['/*', ' * a', ' *//*', ' * b', ' */'],
+    ranges: ['0-2 comment', '2-4 comment'],
+  },
+  {
+    lines: ['/*', ' * a', ' */ /* b */', '/*', ' */'],
+    ranges: ['0-2 comment', '3-4 comment'],
+  },
+]
+
+for (const { lines, ranges } of documents) {
+  const provider = createFoldingRangeProvider(
+    createDocumentTokenizer(lines.join('\n')),
+  )
+  const actual = formatRanges(provider.getFoldingRanges())
+  const expected = ranges.join('\n')
+  provider.dispose()
+  if (actual !== expected) {
+    console.info(
+      `${JSON.stringify(lines)}: expected ${JSON.stringify(expected)}, got ${JSON.stringify(actual)}`,
+    )
+    process.exitCode = 1
+  }
+}
+
+/**
+ * Checks that the folding ranges of the edited document are the same as
+ * those of a provider created for a freshly tokenized copy.
+ */
+runEditCheck({
+  edits: 30,
+  skip: 0.3,
+  open: (documentTokenizer) => {
+    const provider = createFoldingRangeProvider(documentTokenizer)
+    return {
+      check({ expect, fresh }) {
+        const freshProvider = createFoldingRangeProvider(fresh())
+        expect(
+          formatRanges(provider.getFoldingRanges()),
+          formatRanges(freshProvider.getFoldingRanges()),
+          'ranges',
+        )
+        freshProvider.dispose()
+      },
+      dispose: provider.dispose,
+    }
+  },
+})
@@ -0,0 +1,50 @@
+import { createIdentifierIndex } from '../src/identifierIndex.js'
+import { runEditCheck } from './edit-check.js'
+
+/**
+ * @param {readonly import('../src/identifierIndex.js').Occurrence[]} occurrences
+ */
+const formatOccurrences = (occurrences) => {
+  return occurrences
+    .map(({ lineIndex, column, length }) => `${lineIndex}:${column}+${length}`)
+    .join(' ')
+}
+
+/**
+ * Checks that the identifier index finds the same identifiers at random
+ * positions, and the same occurrences of them, as an index created for a
+ * freshly tokenized copy. The edits that span many lines also replace whole
+ * blocks of lines.
+ */
+runEditCheck({
+  open: (documentTokenizer) => {
+    const identifierIndex = createIdentifierIndex(documentTokenizer)
+    return {
+      check({ expect, random, fresh }) {
+        const freshIndex = createIdentifierIndex(fresh())
+        for (let j = 0; j < 20; j++) {
+          const lineIndex = Math.floor(
+            random() * documentTokenizer.getLineCount(),
+          )
+          const line = documentTokenizer.getLine(lineIndex)
+          const column = Math.floor(random() * (line.length + 1))
+          const expected = freshIndex.getIdentifierAt(lineIndex, column)
+          expect(
+            identifierIndex.getIdentifierAt(lineIndex, column),
+            expected,
+            `identifier at ${lineIndex}:${column}`,
+          )
+          if (expected) {
+            expect(
+              formatOccurrences(identifierIndex.getOccurrences(expected)),
+              formatOccurrences(freshIndex.getOccurrences(expected)),
+              `occurrences of ${expected}`,
+            )
+          }
+        }
+        freshIndex.dispose()
+      },
+      dispose: identifierIndex.dispose,
+    }
+  },
+})
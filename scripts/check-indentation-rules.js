@@ -0,0 +1,121 @@
+import { readdir, readFile } from 'node:fs/promises'
+import path, { dirname } from 'node:path'
+import { fileURLToPath } from 'node:url'
+import {
+  shouldDecreaseIndent,
+  shouldIncreaseIndent,
+} from '../src/indentation.js'
+import * as TokenizeJava from '../src/tokenizeJava.js'
+
+const RE_QUOTE = /^["']+$/
+// a quoted part of a text token, which `shouldIncreaseIndent` skips as well
+const RE_QUOTED = /(["'])(?:\\.|(?!\1).)*\1?/g
+
+const __dirname = dirname(fileURLToPath(import.meta.url))
+const root = path.join(__dirname, '..')
+
+/**
+ * Returns the line with the text of strings and comments masked out, so that
+ * the regex rules no longer see the brackets, quotes and comment markers in
+ * them. String and comment tokens, quote punctuation and quoted parts of text
+ * tokens become `x`, which is neither a bracket nor a quote. A block comment that continues from the
+ * previous line becomes spaces instead, because both rules skip it when they
+ * look for a closing bracket at the start of the line.
+ *
+ * @param {string} line
+ * @param {ArrayLike<number>} tokens
+ * @param {any} startLineState
+ */
+const maskStringsAndComments = (line, tokens, startLineState) => {
+  let isLeadingComment =
+    startLineState.state === TokenizeJava.State.InsideBlockComment
+  let masked = ''
+  let offset = 0
+  for (let i = 0; i < tokens.length; i += 2) {
+    const type = tokens[i]
+    const length = tokens[i + 1]
+    const text = line.slice(offset, offset + length)
+    if (type === TokenizeJava.TokenType.Comment && isLeadingComment) {
+      masked += ' '.repeat(length)
+      isLeadingComment = text !== '*/'
+    } else if (
+      type === TokenizeJava.TokenType.String ||
+      type === TokenizeJava.TokenType.Comment ||
+      (type === TokenizeJava.TokenType.Punctuation && RE_QUOTE.test(text))
+    ) {
+      isLeadingComment = false
+      masked += 'x'.repeat(length)
+    } else if (type === TokenizeJava.TokenType.Text) {
+      isLeadingComment = false
+      masked += text.replace(RE_QUOTED, (quoted) => 'x'.repeat(quoted.length))
+    } else {
+      isLeadingComment = false
+      masked += text
+    }
+    offset += length
+  }
+  return masked
+}
+
+const main = async () => {
+  const languageConfiguration = JSON.parse(
+    await readFile(`${root}/languageConfiguration.json`, 'utf8'),
+  )
+  const { indentationRules } = languageConfiguration
+  const increaseIndentPattern = new RegExp(
+    indentationRules.increaseIndentPattern,
+  )
+  const decreaseIndentPattern = new RegExp(
+    indentationRules.decreaseIndentPattern,
+  )
+  const folder = `${root}/test/cases`
+  const dirents = await readdir(folder)
+  let lineCount = 0
+  let agreed = 0
+  let explained = 0
+  const unexplained = []
+  for (const dirent of dirents) {
+    const text = await readFile(`${folder}/${dirent}`, 'utf8')
+    const lines = text.split('\n')
+    let lineState = TokenizeJava.initialLineState
+    for (let i = 0; i < lines.length; i++) {
+      const line = lines[i]
+      const startLineState = lineState
+      lineState = TokenizeJava.tokenizeLine(line, lineState)
+      const { tokens } = lineState
+      const increase = shouldIncreaseIndent(line, tokens)
+      const decrease = shouldDecreaseIndent(line, tokens, startLineState)
+      const expectedIncrease = increaseIndentPattern.test(line)
+      const expectedDecrease = decreaseIndentPattern.test(line)
+      lineCount++
+      if (increase === expectedIncrease && decrease === expectedDecrease) {
+        agreed++
+        continue
+      }
+      // only excuse the rules when they agree once the regexes no longer
+      // see the inside of strings and comments
+      const masked = maskStringsAndComments(line, tokens, startLineState)
+      const maskedIncrease = increaseIndentPattern.test(masked)
+      const maskedDecrease = decreaseIndentPattern.test(masked)
+      if (increase === maskedIncrease && decrease === maskedDecrease) {
+        explained++
+      } else {
+        unexplained.push(
+          `${dirent}:${i + 1}: increase ${increase}/${maskedIncrease}, decrease ${decrease}/${maskedDecrease}: ${line}`,
+        )
+      }
+    }
+  }
+  console.info(`lines:       ${lineCount}`)
+  console.info(`agreed:      ${agreed}`)
+  console.info(`strings and comments: ${explained}`)
+  console.info(`unexplained: ${unexplained.length}`)
+  for (const message of unexplained.slice(0, 50)) {
+    console.info(message)
+  }
+  if (unexplained.length > 0) {
+    process.exitCode = 1
+  }
+}
+
+main()
@@ -0,0 +1,150 @@
+import {
+  createMinimapProvider,
+  getTokenBufferMinimap,
+} from '../src/minimap.js'
+import { tokenizeToBuffer } from '../src/tokenBuffer.js'
+import { TokenType } from '../src/tokenizeJava.js'
+import { tokenTypeIndices } from '../src/tokenTypeIndex.js'
+import { runEditCheck } from './edit-check.js'
+import { getText } from './random-edits.js'
+
+const CELL_COUNT = 32
+const COLUMNS_PER_CELL = 4
+
+/**
+ * Returns the color that most of the given colors have, ignoring 0, or 0.
+ * Ties go to the color that comes first.
+ *
+ * @param {number[]} colors
+ */
+const getMostCommonColor = (colors) => {
+  /**
+   * @type {Map<number, number>}
+   */
+  const counts = new Map()
+  for (const color of colors) {
+    if (color !== 0) {
+      counts.set(color, (counts.get(color) || 0) + 1)
+    }
+  }
+  let best = 0
+  let bestCount = 0
+  for (const [color, count] of counts) {
+    if (count > bestCount) {
+      best = color
+      bestCount = count
+    }
+  }
+  return best
+}
+
+/**
+ * Computes the cells of a line the slow way, from the color of each column.
+ *
+ * @param {ArrayLike<number>} tokens
+ */
+const getExpectedCells = (tokens) => {
+  const columns = []
+  const maxColumn = CELL_COUNT * COLUMNS_PER_CELL
+  for (let i = 0; i < tokens.length && columns.length < maxColumn; i += 2) {
+    const type = tokens[i]
+    const color =
+      type === TokenType.Whitespace ||
+      type === TokenType.None ||
+      type === TokenType.NewLine
+        ? 0
+        : tokenTypeIndices.get(type) + 1
+    for (let j = 0; j < Math.min(tokens[i + 1], maxColumn); j++) {
+      columns.push(color)
+    }
+  }
+  const cells = []
+  for (let cell = 0; cell < CELL_COUNT; cell++) {
+    const start = cell * COLUMNS_PER_CELL
+    cells.push(
+      getMostCommonColor(columns.slice(start, start + COLUMNS_PER_CELL)),
+    )
+  }
+  return cells
+}
+
+/**
+ * @param {ArrayLike<number>} rows
+ */
+const formatRows = (rows) => {
+  const lines = []
+  for (let i = 0; i < rows.length; i += CELL_COUNT) {
+    lines.push(Array.from(rows.slice(i, i + CELL_COUNT)).join(','))
+  }
+  return lines.join('\n')
+}
+
+/**
+ * Checks the cached minimap rows of the edited document, for random ranges
+ * and numbers of lines per row, and the minimap of a token buffer, against
+ * cells computed from the color of every column of a freshly tokenized copy.
+ */
+runEditCheck({
+  skip: 0.3,
+  open: (documentTokenizer) => {
+    const provider = createMinimapProvider(documentTokenizer, {
+      cellCount: CELL_COUNT,
+      columnsPerCell: COLUMNS_PER_CELL,
+    })
+    return {
+      check({ expect, random, fresh }) {
+        const freshTokenizer = fresh()
+        const lineCount = freshTokenizer.getLineCount()
+        /**
+         * @param {number} start
+         * @param {number} end
+         */
+        const getExpectedLines = (start, end) => {
+          const lines = []
+          for (let i = start; i < Math.min(end, lineCount); i++) {
+            lines.push(getExpectedCells(freshTokenizer.getLineTokens(i)))
+          }
+          return lines
+        }
+        for (const linesPerRow of [1, 2, 3, 8]) {
+          const startLine = Math.floor(random() * lineCount)
+          const endLine = startLine + Math.floor(random() * 100)
+          const expected = []
+          for (let row = startLine; row < endLine; row += linesPerRow) {
+            const rowLines = getExpectedLines(
+              row,
+              Math.min(row + linesPerRow, endLine),
+            )
+            if (rowLines.length === 0) {
+              break
+            }
+            for (let cell = 0; cell < CELL_COUNT; cell++) {
+              expected.push(
+                getMostCommonColor(rowLines.map((cells) => cells[cell])),
+              )
+            }
+          }
+          expect(
+            formatRows(provider.getRows(startLine, endLine, linesPerRow)),
+            formatRows(expected),
+            `rows ${startLine}-${endLine}, ${linesPerRow} lines per row`,
+          )
+        }
+        if (random() < 0.05) {
+          expect(
+            formatRows(
+              getTokenBufferMinimap(
+                tokenizeToBuffer(getText(documentTokenizer)),
+                lineCount,
+                { cellCount: CELL_COUNT, columnsPerCell: COLUMNS_PER_CELL },
+              ),
+            ),
+            formatRows(getExpectedLines(0, lineCount).flat()),
+            'token buffer minimap',
+          )
+        }
+      },
+      dispose: provider.dispose,
+    }
+  },
+})
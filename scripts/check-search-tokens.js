@@ -0,0 +1,111 @@
+import { TokenClass, searchTokens } from '../src/searchTokens.js'
+import { TokenType } from '../src/tokenizeJava.js'
+import { runEditCheck } from './edit-check.js'
+import { getText } from './random-edits.js'
+
+/**
+ * Queries that change the state of the lines that search skips, or that are
+ * likely to be inside strings and comments.
+ */
+const QUERIES = ['*/', '/*', '//', '"', "'", '\\', 'class', 'extends']
+
+/**
+ * Returns the class of the token at the column, from the tokens of the whole
+ * line.
+ *
+ * @param {string} line
+ * @param {ArrayLike<number>} tokens
+ * @param {number} column
+ */
+const getExpectedTokenClass = (line, tokens, column) => {
+  let offset = 0
+  for (let i = 0; i < tokens.length; i += 2) {
+    const end = offset + tokens[i + 1]
+    if (column < end) {
+      const type = tokens[i]
+      const text = line.slice(offset, end)
+      if (type === TokenType.Comment) {
+        return TokenClass.Comment
+      }
+      if (
+        type === TokenType.String ||
+        (type === TokenType.Punctuation && (text === '"' || text === "'"))
+      ) {
+        return TokenClass.String
+      }
+      return TokenClass.Code
+    }
+    offset = end
+  }
+  return TokenClass.Code
+}
+
+/**
+ * @param {readonly import('../src/searchTokens.js').SearchMatch[]} matches
+ */
+const formatMatches = (matches) => {
+  return matches
+    .map(
+      ({ lineIndex, column, tokenClass }) =>
+        `${lineIndex}:${column} ${tokenClass}`,
+    )
+    .join('\n')
+}
+
+/**
+ * Checks that searching the edited document, which skips the lines without
+ * matches that can not change the state, finds the same matches with the
+ * same token classes as looking up every occurrence in the tokens of a
+ * freshly tokenized copy. Queries are random parts of the text, which may
+ * span lines, and queries that end comments and strings.
+ */
+runEditCheck({
+  skip: 0.3,
+  open: (documentTokenizer) => {
+    return {
+      check({ expect, random, fresh }) {
+        const text = getText(documentTokenizer)
+        const freshTokenizer = fresh()
+        const lineStarts = [0]
+        for (let i = 0; i < text.length; i++) {
+          if (text[i] === '\n') {
+            lineStarts.push(i + 1)
+          }
+        }
+        for (let j = 0; j < 6; j++) {
+          const start = Math.floor(random() * text.length)
+          const query =
+            j % 2 === 0
+              ? QUERIES[Math.floor(random() * QUERIES.length)]
+              : text.slice(start, start + 1 + Math.floor(random() * 8))
+          const tokenClasses = 1 + Math.floor(random() * 7)
+          const expected = []
+          let lineIndex = 0
+          for (
+            let hit = text.indexOf(query);
+            hit !== -1 && query;
+            hit = text.indexOf(query, hit + query.length)
+          ) {
+            while (lineStarts[lineIndex + 1] <= hit) {
+              lineIndex++
+            }
+            const column = hit - lineStarts[lineIndex]
+            const tokenClass = getExpectedTokenClass(
+              freshTokenizer.getLine(lineIndex),
+              freshTokenizer.getLineTokens(lineIndex),
+              column,
+            )
+            if (tokenClass & tokenClasses) {
+              expected.push({ lineIndex, column, tokenClass })
+            }
+          }
+          expect(
+            formatMatches(searchTokens(text, query, tokenClasses)),
+            formatMatches(expected),
+            `search for ${JSON.stringify(query)} in ${tokenClasses}`,
+          )
+        }
+      },
+    }
+  },
+})
@@ -0,0 +1,62 @@
+import {
+  createSemanticTokensProvider,
+  getSemanticTokens,
+} from '../src/semanticTokens.js'
+import { runEditCheck } from './edit-check.js'
+
+/**
+ * Applies the edits of a delta to the tokens a client has.
+ *
+ * @param {number[]} data
+ * @param {readonly import('../src/semanticTokens.js').SemanticTokensEdit[]} edits
+ */
+const applyEdits = (data, edits) => {
+  // edits are relative to the data before any of them, apply the last first
+  for (const { start, deleteCount, data: inserted } of edits.toReversed()) {
+    data.splice(start, deleteCount, ...inserted)
+  }
+}
+
+/**
+ * @param {ArrayLike<number>} data
+ */
+const formatTokens = (data) => {
+  const lines = []
+  for (let i = 0; i < data.length; i += 5) {
+    lines.push(Array.prototype.slice.call(data, i, i + 5).join(' '))
+  }
+  return lines.join('\n')
+}
+
+/**
+ * Checks that a client that applies the semantic token deltas ends up with
+ * the same tokens as a full encode of a freshly tokenized copy.
+ */
+runEditCheck({
+  edits: 30,
+  skip: 0.3,
+  open: (documentTokenizer) => {
+    const provider = createSemanticTokensProvider(documentTokenizer)
+    const full = provider.getFull()
+    let { resultId } = full
+    const data = [...full.data]
+    return {
+      check({ expect, fresh }) {
+        const delta = provider.getDelta(resultId)
+        resultId = delta.resultId
+        applyEdits(data, delta.edits)
+        const freshTokenizer = fresh()
+        const linesTokens = []
+        for (let i = 0; i < freshTokenizer.getLineCount(); i++) {
+          linesTokens.push(freshTokenizer.getLineTokens(i))
+        }
+        expect(
+          formatTokens(data),
+          formatTokens(getSemanticTokens(linesTokens)),
+          'tokens',
+        )
+      },
+      dispose: provider.dispose,
+    }
+  },
+})
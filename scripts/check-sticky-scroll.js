@@ -0,0 +1,39 @@
+import { createStickyScrollProvider } from '../src/stickyScroll.js'
+import { runEditCheck } from './edit-check.js'
+
+/**
+ * Checks that the scopes enclosing random lines are the same as those a
+ * provider created for a freshly tokenized copy finds. Queries go to random
+ * lines, so the lazy pass stops at different lines and edits fall before,
+ * inside and after the part that was parsed, and resuming from a checkpoint
+ * is checked both when it goes back and when it goes forward.
+ */
+runEditCheck({
+  edits: 30,
+  skip: 0.3,
+  open: (documentTokenizer) => {
+    const provider = createStickyScrollProvider(documentTokenizer)
+    return {
+      check({ expect, random, fresh }) {
+        const freshProvider = createStickyScrollProvider(fresh())
+        const lineCount = documentTokenizer.getLineCount()
+        // sometimes parse the whole document, so that later edits fall
+        // before the end of the parsed part
+        const isFull = random() < 0.3
+        for (let j = 0; j < 10; j++) {
+          const lineIndex =
+            isFull && j === 9
+              ? lineCount - 1
+              : Math.floor(random() * lineCount)
+          expect(
+            provider.getEnclosingScopes(lineIndex).join(' '),
+            freshProvider.getEnclosingScopes(lineIndex).join(' '),
+            `scopes of ${lineIndex}`,
+          )
+        }
+        freshProvider.dispose()
+      },
+      dispose: provider.dispose,
+    }
+  },
+})
@@ -0,0 +1,97 @@
+import {
+  getTokenAtColumn,
+  getTokenAtColumnOfDocument,
+  getTokenAtColumnOfLine,
+} from '../src/tokenAtColumn.js'
+import { tokenizeLine } from '../src/tokenizeJava.js'
+import { runEditCheck } from './edit-check.js'
+
+/**
+ * @param {import('../src/tokenAtColumn.js').TokenAtColumn} token
+ */
+const formatToken = ({ type, start, end, state }) => {
+  return `${type} ${start}-${end} state ${state}`
+}
+
+/**
+ * Finds the token at a column by walking the tokens from the start of the
+ * line, and takes the state before the token from tokenizing the text before
+ * it. Columns at or after the end of the line take the state at the end of
+ * the line.
+ *
+ * @param {string} line
+ * @param {ArrayLike<number>} tokens
+ * @param {any} startLineState
+ * @param {number} column
+ */
+const findWithScan = (line, tokens, startLineState, column) => {
+  const tokenCount = tokens.length / 2
+  const endState = tokenizeLine(line, startLineState).state
+  if (tokenCount === 0) {
+    return { type: -1, start: 0, end: 0, state: endState }
+  }
+  let start = 0
+  let i = 0
+  while (i < tokenCount - 1 && start + tokens[i * 2 + 1] <= column) {
+    start += tokens[i * 2 + 1]
+    i++
+  }
+  const end = start + tokens[i * 2 + 1]
+  const state =
+    column >= end && i === tokenCount - 1
+      ? endState
+      : tokenizeLine(line.slice(0, start), startLineState).state
+  return { type: tokens[i * 2], start, end, state }
+}
+
+/**
+ * Checks that the token at random columns of random lines, and the state
+ * before it, are the same as a scan over the tokens of the line finds. The
+ * edited document records token states, so the document query uses the
+ * states of the last tokenize pass and the other queries tokenize again.
+ */
+runEditCheck({
+  documentOptions: { recordTokenStates: true },
+  open: (documentTokenizer) => ({
+    check({ expect, random }) {
+      for (let j = 0; j < 20; j++) {
+        const lineIndex = Math.floor(
+          random() * documentTokenizer.getLineCount(),
+        )
+        const line = documentTokenizer.getLine(lineIndex)
+        const tokens = documentTokenizer.getLineTokens(lineIndex)
+        const startLineState = documentTokenizer.getStartState(lineIndex)
+        const column = Math.floor(random() * (line.length + 2))
+        const expected = formatToken(
+          findWithScan(line, tokens, startLineState, column),
+        )
+        expect(
+          formatToken(
+            getTokenAtColumnOfDocument(documentTokenizer, lineIndex, column),
+          ),
+          expected,
+          `token at ${lineIndex}:${column} of document`,
+        )
+        expect(
+          formatToken(
+            getTokenAtColumn(line, tokens.slice(), startLineState, column),
+          ),
+          expected,
+          `token at ${lineIndex}:${column}`,
+        )
+        expect(
+          formatToken(
+            getTokenAtColumnOfLine(
+              documentTokenizer,
+              line,
+              startLineState,
+              column,
+            ),
+          ),
+          expected,
+          `token at ${lineIndex}:${column} of line`,
+        )
+      }
+    },
+  }),
+})
@@ -0,0 +1,210 @@
+import { setImmediate } from 'node:timers/promises'
+import { fileURLToPath } from 'node:url'
+import { parseArgs } from 'node:util'
+import { Worker, isMainThread, parentPort } from 'node:worker_threads'
+import {
+  createTokenBufferWriter,
+  getPublishedLineCount,
+  readLineState,
+  readLineTokens,
+  waitForLines,
+  waitForLinesAsync,
+} from '../src/tokenBuffer.js'
+import * as TokenizeJava from '../src/tokenizeJava.js'
+import { createRandom, readCases } from './random-edits.js'
+
+/**
+ * How long a reader waits for a line before it reports that it was not woken
+ * up. Waits only end at the timeout when a publish does not notify.
+ */
+const TIMEOUT = 2000
+
+/**
+ * @param {ArrayLike<number>} tokens
+ * @param {any} lineState
+ */
+const formatLine = (tokens, lineState) => {
+  return `${TokenizeJava.getPackedLineState(lineState)} ${Array.from(tokens)}`
+}
+
+/**
+ * Reads every line of a shared token buffer that another thread is still
+ * writing, waiting until each line is published.
+ *
+ * @param {SharedArrayBuffer} buffer
+ * @param {number} lineCount
+ * @param {(buffer: SharedArrayBuffer, lineCount: number, timeout: number) => number|Promise<number>} wait
+ */
+const readLines = async (buffer, lineCount, wait) => {
+  const lines = []
+  let waits = 0
+  for (let i = 0; i < lineCount; i++) {
+    if (getPublishedLineCount(buffer) <= i) {
+      waits++
+      const start = performance.now()
+      const published = await wait(buffer, i + 1, TIMEOUT)
+      if (published <= i || performance.now() - start >= TIMEOUT) {
+        lines.push(`line ${i} was not woken up within ${TIMEOUT}ms`)
+        break
+      }
+    }
+    lines.push(formatLine(readLineTokens(buffer, i), readLineState(buffer, i)))
+  }
+  return { lines: lines.join('\n'), waits }
+}
+
+/**
+ * Tokenizes the text into the writer, publishing every `publishInterval`
+ * lines. `afterPublish` lets the main thread give the reader time to wait.
+ *
+ * @param {ReturnType<typeof createTokenBufferWriter>} writer
+ * @param {string} text
+ * @param {number} publishInterval
+ * @param {() => void|Promise<void>} [afterPublish]
+ */
+const writeLines = async (writer, text, publishInterval, afterPublish) => {
+  const lines = text.split('\n')
+  let lineState = TokenizeJava.initialLineState
+  for (let i = 0; i < lines.length; i++) {
+    lineState = TokenizeJava.tokenizeLine(lines[i], lineState)
+    writer.writeLine(lineState.tokens, lineState)
+    if ((i + 1) % publishInterval === 0) {
+      writer.publish()
+      await afterPublish?.()
+    }
+  }
+  writer.publish()
+}
+
+/**
+ * @param {string} text
+ */
+const createSharedWriter = (text) => {
+  return createTokenBufferWriter({
+    lineCapacity: text.split('\n').length,
+    tokenCapacity: text.length,
+    shared: true,
+  })
+}
+
+/**
+ * In the worker, either reads a buffer that the main thread writes, blocking
+ * in `waitForLines`, or writes a buffer that the main thread reads, posting
+ * the buffer before the first line is written.
+ */
+const runWorker = () => {
+  parentPort.on('message', async (message) => {
+    if (message.type === 'read') {
+      const { buffer, lineCount } = message
+      parentPort.postMessage(await readLines(buffer, lineCount, waitForLines))
+    } else {
+      const writer = createSharedWriter(message.text)
+      parentPort.postMessage({ buffer: writer.buffer })
+      await writeLines(writer, message.text, message.publishInterval)
+    }
+  })
+}
+
+/**
+ * @param {Worker} worker
+ * @returns {Promise<any>}
+ */
+const receive = (worker) => {
+  return new Promise((resolve, reject) => {
+    worker.once('error', reject)
+    worker.once('message', (message) => {
+      worker.off('error', reject)
+      resolve(message)
+    })
+  })
+}
+
+/**
+ * Checks the shared token buffer between threads: a worker reads the lines
+ * that the main thread publishes, blocking in `waitForLines`, and the main
+ * thread reads the lines that the worker publishes, with
+ * `waitForLinesAsync`. Lines are published in random intervals, and the lines
+ * read must equal a direct tokenization.
+ */
+const main = async () => {
+  const { values } = parseArgs({
+    options: {
+      seed: { type: 'string', default: '1' },
+      step: { type: 'string', default: '20' },
+    },
+  })
+  const random = createRandom(Number(values.seed))
+  const cases = await readCases(Number(values.step))
+  const worker = new Worker(fileURLToPath(import.meta.url))
+  let lineCount = 0
+  let waitCount = 0
+  const mismatches = []
+  try {
+    for (const { name, text } of cases) {
+      const expected = []
+      let lineState = TokenizeJava.initialLineState
+      for (const line of text.split('\n')) {
+        lineState = TokenizeJava.tokenizeLine(line, lineState)
+        expected.push(formatLine(lineState.tokens, lineState))
+      }
+      lineCount += expected.length * 2
+
+      const writer = createSharedWriter(text)
+      const read = receive(worker)
+      worker.postMessage({
+        type: 'read',
+        buffer: writer.buffer,
+        lineCount: expected.length,
+      })
+      await writeLines(writer, text, 1 + Math.floor(random() * 64), () =>
+        setImmediate(),
+      )
+      const readByWorker = await read
+
+      const written = receive(worker)
+      worker.postMessage({
+        type: 'write',
+        text,
+        publishInterval: 1 + Math.floor(random() * 64),
+      })
+      const { buffer } = await written
+      const readByMain = await readLines(
+        buffer,
+        expected.length,
+        waitForLinesAsync,
+      )
+
+      waitCount += readByWorker.waits + readByMain.waits
+      for (const [what, { lines }] of Object.entries({
+        'waitForLines in a worker': readByWorker,
+        waitForLinesAsync: readByMain,
+      })) {
+        const actualLines = lines.split('\n')
+        const index = expected.findIndex((line, i) => line !== actualLines[i])
+        if (index !== -1) {
+          mismatches.push(
+            `${name}: ${what}, line ${index}: expected ${expected[index]}, got ${actualLines[index]}`,
+          )
+        }
+      }
+    }
+  } finally {
+    await worker.terminate()
+  }
+  console.info(`cases:      ${cases.length}`)
+  console.info(`lines:      ${lineCount}`)
+  console.info(`waits:      ${waitCount}`)
+  console.info(`mismatches: ${mismatches.length}`)
+  for (const message of mismatches.slice(0, 50)) {
+    console.info(message)
+  }
+  if (mismatches.length > 0) {
+    process.exitCode = 1
+  }
+}
+
+if (isMainThread) {
+  main()
+} else {
+  runWorker()
+}
@@ -0,0 +1,122 @@
+import { getPackedLineState } from '../src/tokenizeJava.js'
+import {
+  createTokenStore,
+  getLineState,
+  getLineTokens,
+} from '../src/tokenStore.js'
+import { runEditCheck } from './edit-check.js'
+import { getText } from './random-edits.js'
+
+/**
+ * Small blocks, so that consecutive versions of a document share most of
+ * their blocks.
+ *
+ * @type {import('../src/tokenStore.js').TokenStoreOptions}
+ */
+const storeOptions = {
+  averageBlockSize: 8,
+  minBlockSize: 2,
+  maxBlockSize: 32,
+}
+
+/**
+ * The number of versions of each document that stay acquired.
+ */
+const maxHeld = 3
+
+/**
+ * @param {ReturnType<typeof createTokenStore>} tokenStore
+ */
+const formatStats = (tokenStore) => {
+  const { documents, blocks, lines, tokens } = tokenStore.getStats()
+  return `${documents} documents, ${blocks} blocks, ${lines} lines, ${tokens} tokens`
+}
+
+/**
+ * @param {import('../src/tokenStore.js').StoredDocument} document
+ * @param {(lineIndex: number) => string} formatLine
+ */
+const formatLines = (document, formatLine) => {
+  const lines = []
+  for (let i = 0; i < document.lineCount; i++) {
+    lines.push(formatLine(i))
+  }
+  return lines.join('\n')
+}
+
+const tokenStore = createTokenStore(storeOptions)
+
+/**
+ * Checks that the token store returns the same tokens and line states as a
+ * direct tokenization while several versions of an edited document share
+ * blocks, that the shared tokens can not be modified, and that acquiring and
+ * releasing keeps exactly the blocks a new store needs for the acquired
+ * documents. One store is used for all cases, so it must be empty at the
+ * end.
+ */
+await runEditCheck({
+  open: (documentTokenizer) => {
+    /**
+     * @type {import('../src/tokenStore.js').StoredDocument[]}
+     */
+    const held = []
+    return {
+      check({ expect, random, fresh }) {
+        const document = tokenStore.acquire(getText(documentTokenizer))
+        held.push(document)
+        if (random() < 0.2) {
+          // the same version opened twice
+          held.push(tokenStore.acquire(document.text))
+        }
+        const direct = fresh()
+        expect(
+          formatLines(document, (i) => getLineTokens(document, i).join(',')),
+          formatLines(document, (i) => direct.getLineTokens(i).join(',')),
+          'tokens',
+        )
+        expect(
+          formatLines(document, (i) =>
+            String(getPackedLineState(getLineState(document, i))),
+          ),
+          formatLines(document, (i) =>
+            String(getPackedLineState(direct.getLineState(i))),
+          ),
+          'line states',
+        )
+        const lineIndex = Math.floor(random() * document.lineCount)
+        expect(
+          `${Object.isFrozen(getLineTokens(document, lineIndex))} ${Object.isFrozen(getLineState(document, lineIndex))}`,
+          'true true',
+          `frozen tokens and state of line ${lineIndex}`,
+        )
+        while (held.length > maxHeld) {
+          const index = Math.floor(random() * held.length)
+          tokenStore.release(held[index])
+          held.splice(index, 1)
+        }
+        const expectedStore = createTokenStore(storeOptions)
+        for (const { text } of held) {
+          expectedStore.acquire(text)
+        }
+        expect(
+          formatStats(tokenStore),
+          formatStats(expectedStore),
+          'stats after release',
+        )
+      },
+      dispose() {
+        for (const document of held) {
+          tokenStore.release(document)
+        }
+      },
+    }
+  },
+  edits: 10,
+  skip: 0.3,
+})
+
+const remaining = formatStats(tokenStore)
+console.info(`remaining:  ${remaining}`)
+if (remaining !== formatStats(createTokenStore())) {
+  process.exitCode = 1
+}
@@ -0,0 +1,47 @@
+import { mkdir, readdir, readFile, writeFile } from 'node:fs/promises'
+import path, { dirname } from 'node:path'
+import { fileURLToPath } from 'node:url'
+import { parseArgs } from 'node:util'
+import { convertTextBaseline } from '../src/binaryBaseline.js'
+
+const __dirname = dirname(fileURLToPath(import.meta.url))
+const root = path.join(__dirname, '..')
+
+/**
+ * Converts the text baselines in test/baselines to binary baselines, which
+ * `verify-baselines.js --binary` compares against. Each binary baseline
+ * stores the hash of its text baseline, and `--binary` converts those whose
+ * text baseline changed again, so this only saves that work up front.
+ */
+const main = async () => {
+  const { values } = parseArgs({
+    options: {
+      out: { type: 'string', default: `${root}/.cache/baselines` },
+    },
+  })
+  const folder = `${root}/test/baselines`
+  const dirents = await readdir(folder)
+  await mkdir(values.out, { recursive: true })
+  let textSize = 0
+  let binarySize = 0
+  let count = 0
+  for (const dirent of dirents) {
+    if (!dirent.endsWith('.txt')) {
+      continue
+    }
+    const text = await readFile(`${folder}/${dirent}`, 'utf8')
+    const bytes = convertTextBaseline(text)
+    await writeFile(
+      `${values.out}/${dirent.replace(/\.txt$/, '.bin')}`,
+      bytes,
+    )
+    textSize += Buffer.byteLength(text)
+    binarySize += bytes.length
+    count++
+  }
+  console.info(
+    `converted ${count} baselines, ${(textSize / 1e6).toFixed(1)} MB to ${(binarySize / 1e6).toFixed(1)} MB`,
+  )
+}
+
+main()
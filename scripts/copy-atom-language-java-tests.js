@@ -1,10 +1,4 @@
-import { execaCommand } from 'execa'
-import { cp, readFile, rm, writeFile } from 'node:fs/promises'
-import path, { dirname } from 'node:path'
-import { fileURLToPath } from 'node:url'
-
-const __dirname = dirname(fileURLToPath(import.meta.url))
-const root = path.join(__dirname, '..')
+import { importCases } from './import-cases.js'
 
 const REPO = 'https://github.com/atom/language-java'
 const COMMIT = '047fd33bd12f4926bc5dbc0c930cd9d5fa280602'
@@ -92,39 +86,15 @@ const parseFile = (content) => {
   return tests
 }
 
-const getAllTests = async (file) => {
-  const allTests = []
-  const fileContent = await readFile(file, 'utf8')
-  const parsed = parseFile(fileContent)
-  allTests.push(...parsed)
-  return allTests
-}
-
-const writeTestFiles = async (allTests) => {
-  for (const test of allTests) {
-    await writeFile(
-      `${root}/test/cases/${test.testName}.java`,
-      test.testContent,
-    )
-  }
-}
-
 const main = async () => {
-  process.chdir(root)
-  await rm(`${root}/.tmp`, { recursive: true, force: true })
-  await execaCommand(`git clone ${REPO} .tmp/atom-language-java`)
-  process.chdir(`${root}/.tmp/atom-language-java`)
-  await execaCommand(`git checkout ${COMMIT}`)
-  process.chdir(root)
-  await cp(
-    `${root}/.tmp/atom-language-java/spec`,
-    `${root}/.tmp/atom-language-java-cases`,
-    { recursive: true },
-  )
-  const allTests = await getAllTests(
-    `${root}/.tmp/atom-language-java-cases/java-spec.coffee`,
-  )
-  await writeTestFiles(allTests)
+  await importCases({
+    id: 'atom-language-java',
+    repo: REPO,
+    commit: COMMIT,
+    prefix: 'atom-language-java-',
+    isSource: (file) => file === 'spec/java-spec.coffee',
+    getTests: (file, content) => parseFile(content),
+  })
 }
 
 main()
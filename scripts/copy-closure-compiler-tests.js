@@ -1,10 +1,4 @@
-import { execaCommand } from 'execa'
-import { readdir, readFile, rm, writeFile } from 'node:fs/promises'
-import path, { dirname } from 'node:path'
-import { fileURLToPath } from 'node:url'
-
-const __dirname = dirname(fileURLToPath(import.meta.url))
-const root = path.join(__dirname, '..')
+import { importCases } from './import-cases.js'
 
 const REPO = 'https://github.com/google/closure-compiler'
 const COMMIT = '23e25dae584075decfd7c7e3ecc876cd8f55d42d'
@@ -32,41 +26,17 @@ const getTestName = (line) => {
   )
 }
 
-const getAllTests = async (folder) => {
-  const dirents = await readdir(folder, { recursive: true })
-  const allTests = []
-  for (const dirent of dirents) {
-    if (!dirent.endsWith('.java')) {
-      continue
-    }
-    const filePath = `${folder}/${dirent}`
-    const fileContent = await readFile(filePath, 'utf8')
-    allTests.push({
-      testContent: fileContent,
-      testName: getTestName(dirent),
-    })
-  }
-  return allTests
-}
-
-const writeTestFiles = async (allTests) => {
-  for (const test of allTests) {
-    await writeFile(
-      `${root}/test/cases/${test.testName}.java`,
-      test.testContent,
-    )
-  }
-}
-
 const main = async () => {
-  process.chdir(root)
-  await rm(`${root}/.tmp`, { recursive: true, force: true })
-  await execaCommand(`git clone ${REPO} .tmp/closure-compiler`)
-  process.chdir(`${root}/.tmp/closure-compiler`)
-  await execaCommand(`git checkout ${COMMIT}`)
-  process.chdir(root)
-  const allTests = await getAllTests(`${root}/.tmp/closure-compiler`)
-  await writeTestFiles(allTests)
+  await importCases({
+    id: 'closure-compiler',
+    repo: REPO,
+    commit: COMMIT,
+    prefix: 'closure-compiler-',
+    isSource: (file) => file.endsWith('.java'),
+    getTests: (file, content) => [
+      { testName: getTestName(file), testContent: content },
+    ],
+  })
 }
 
 main()
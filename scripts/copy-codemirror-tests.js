@@ -1,10 +1,4 @@
-import { execaCommand } from 'execa'
-import path, { dirname } from 'node:path'
-import { fileURLToPath } from 'node:url'
-import { cp, readdir, readFile, rm, writeFile } from 'node:fs/promises'
-
-const __dirname = dirname(fileURLToPath(import.meta.url))
-const root = path.join(__dirname, '..')
+import { importCases } from './import-cases.js'
 
 const REPO = 'https://github.com/lezer-parser/java'
 const COMMIT = 'd89968838ccfc8d2a11557d669a8e1bca2f7a8bb'
@@ -60,42 +54,16 @@ const parseFile = (content) => {
   return tests
 }
 
-const getAllTests = async (folder) => {
-  const dirents = await readdir(folder)
-  const allTests = []
-  for (const dirent of dirents) {
-    const filePath = `${folder}/${dirent}`
-    const fileContent = await readFile(filePath, 'utf8')
-    const parsed = parseFile(fileContent)
-    allTests.push(...parsed)
-  }
-  return allTests
-}
-
-const writeTestFiles = async (allTests) => {
-  for (const test of allTests) {
-    await writeFile(
-      `${root}/test/cases/${test.testName}.java`,
-      test.testContent,
-    )
-  }
-}
-
 const main = async () => {
-  process.chdir(root)
-  await rm(`${root}/.tmp`, { recursive: true, force: true })
-  await execaCommand(`git clone ${REPO} .tmp/code-mirror-java`)
-  process.chdir(`${root}/.tmp/code-mirror-java`)
-  await execaCommand(`git checkout ${COMMIT}`)
-  process.chdir(root)
-  await cp(
-    `${root}/.tmp/code-mirror-java/test`,
-    `${root}/.tmp/code-mirror-cases`,
-    { recursive: true },
-  )
-  await rm(`${root}/.tmp/code-mirror-cases/test-java.js`)
-  const allTests = await getAllTests(`${root}/.tmp/code-mirror-cases`)
-  await writeTestFiles(allTests)
+  await importCases({
+    id: 'codemirror',
+    repo: REPO,
+    commit: COMMIT,
+    prefix: 'codemirror-',
+    isSource: (file) =>
+      /^test\/[^/]+$/.test(file) && file !== 'test/test-java.js',
+    getTests: (file, content) => parseFile(content),
+  })
 }
 
 main()
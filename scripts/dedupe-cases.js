@@ -0,0 +1,82 @@
+import { readdir, readFile, rm } from 'node:fs/promises'
+import path, { dirname } from 'node:path'
+import { fileURLToPath } from 'node:url'
+import { parseArgs } from 'node:util'
+import { hashString } from '../src/hash.js'
+import { loadManifest, writeManifest } from './cases-manifest.js'
+
+const __dirname = dirname(fileURLToPath(import.meta.url))
+const root = path.join(__dirname, '..')
+const casesFolder = `${root}/test/cases`
+const baselinesFolder = `${root}/test/baselines`
+
+/**
+ * Removes every case whose content is the same as that of another case,
+ * together with its baseline, and keeps the first of them by name. The
+ * manifest records which case each removed case was a copy of, so that
+ * imports do not add it again, and the hash and size of the remaining cases,
+ * which verify-baselines.js uses to split them into shards.
+ */
+const main = async () => {
+  const { values } = parseArgs({
+    options: {
+      'dry-run': { type: 'boolean', default: false },
+    },
+  })
+  const dryRun = values['dry-run']
+  const manifest = (await loadManifest()) || { duplicates: {}, cases: {} }
+  const dirents = await readdir(casesFolder)
+  const names = dirents.filter((dirent) => dirent.endsWith('.java')).sort()
+  /**
+   * @type {Map<number, {name: string, text: string}[]>}
+   */
+  const canonicalByHash = new Map()
+  /**
+   * @type {Record<string, string>}
+   */
+  const duplicates = {}
+  /**
+   * @type {import('./cases-manifest.js').CasesManifest['cases']}
+   */
+  const cases = {}
+  for (const name of names) {
+    const buffer = await readFile(`${casesFolder}/${name}`)
+    const text = buffer.toString('utf8')
+    const hash = hashString(text)
+    const candidates = canonicalByHash.get(hash) || []
+    // equal hashes are only duplicates when the contents are equal as well
+    const canonical = candidates.find((candidate) => candidate.text === text)
+    if (canonical) {
+      duplicates[name] = canonical.name
+      continue
+    }
+    candidates.push({ name, text })
+    canonicalByHash.set(hash, candidates)
+    cases[name] = { hash, size: buffer.byteLength }
+  }
+  for (const [name, canonical] of Object.entries(duplicates)) {
+    console.info(`DUPLICATE ${name} of ${canonical}`)
+    if (!dryRun) {
+      await rm(`${casesFolder}/${name}`)
+      await rm(`${baselinesFolder}/${name.replace(/\.java$/, '.txt')}`, {
+        force: true,
+      })
+    }
+  }
+  const removed = Object.keys(duplicates).length
+  console.info(
+    `${removed} duplicates of ${names.length} cases${dryRun ? ' found' : ' removed'}`,
+  )
+  if (dryRun) {
+    return
+  }
+  // keep the duplicates removed by earlier runs whose canonical case is left
+  for (const [name, canonical] of Object.entries(manifest.duplicates)) {
+    if (!(name in cases) && canonical in cases) {
+      duplicates[name] ??= canonical
+    }
+  }
+  await writeManifest({ duplicates, cases })
+}
+
+main()
@@ -0,0 +1,136 @@
+import { parseArgs } from 'node:util'
+import { createDocumentTokenizer } from '../src/documentTokenizer.js'
+import {
+  applyRandomEdit,
+  createRandom,
+  getText,
+  readCases,
+} from './random-edits.js'
+
+/**
+ * @typedef {ReturnType<typeof createDocumentTokenizer>} DocumentTokenizer
+ */
+
+/**
+ * @typedef {object} CheckContext
+ * @property {(actual: string, expected: string, what: string) => void} expect
+ * counts a query and records a mismatch when the results differ
+ * @property {() => number} random
+ * @property {() => DocumentTokenizer} fresh returns a document tokenizer for
+ * a freshly tokenized copy of the edited document
+ */
+
+/**
+ * @typedef {object} OpenedCheck
+ * @property {(context: CheckContext) => void} check
+ * @property {() => void} [dispose]
+ */
+
+/**
+ * @typedef {object} EditCheckOptions
+ * @property {(documentTokenizer: DocumentTokenizer, random: () => number) => OpenedCheck} open
+ * attaches the code under test to a document
+ * @property {import('../src/documentTokenizer.js').DocumentTokenizerOptions} [documentOptions]
+ * for the edited document
+ * @property {number} [edits] the default for `--edits`
+ * @property {number} [skip] the chance that no check runs after an edit, so
+ * that several edits are combined into one update
+ */
+
+/**
+ * Describes the first line where two multiline results differ, or the
+ * results themselves when they are single lines.
+ *
+ * @param {string} actual
+ * @param {string} expected
+ */
+const describeDifference = (actual, expected) => {
+  if (!actual.includes('\n') && !expected.includes('\n')) {
+    return `expected ${expected || 'nothing'}, got ${actual || 'nothing'}`
+  }
+  const actualLines = actual.split('\n')
+  const expectedLines = expected.split('\n')
+  let index = expectedLines.findIndex((line, i) => line !== actualLines[i])
+  if (index === -1) {
+    // all expected lines match, the first extra one differs
+    index = expectedLines.length
+  }
+  return `line ${index}: expected ${expectedLines[index]?.trim()}, got ${actualLines[index]?.trim()}`
+}
+
+/**
+ * Edits every `--step`th case at random, see `applyRandomEdit`, and checks
+ * the code under test against a reference before the first edit and after
+ * the edits. The first mismatch of a case is reported and ends that case.
+ * Prints a summary and sets a failing exit code when anything differs.
+ *
+ * @param {EditCheckOptions} options
+ */
+export const runEditCheck = async ({
+  open,
+  documentOptions,
+  edits = 20,
+  skip = 0,
+}) => {
+  const { values } = parseArgs({
+    options: {
+      seed: { type: 'string', default: '1' },
+      step: { type: 'string', default: '20' },
+      edits: { type: 'string', default: `${edits}` },
+    },
+  })
+  const random = createRandom(Number(values.seed))
+  const cases = await readCases(Number(values.step))
+  let editCount = 0
+  let queryCount = 0
+  const mismatches = []
+  for (const { name, text } of cases) {
+    const documentTokenizer = createDocumentTokenizer(text, documentOptions)
+    const opened = open(documentTokenizer, random)
+    for (let i = 0; i <= Number(values.edits); i++) {
+      if (i > 0) {
+        applyRandomEdit(documentTokenizer, random)
+        editCount++
+        if (random() < skip) {
+          continue
+        }
+      }
+      /**
+       * @type {DocumentTokenizer|undefined}
+       */
+      let freshTokenizer
+      /**
+       * @type {string[]}
+       */
+      const errors = []
+      opened.check({
+        expect(actual, expected, what) {
+          queryCount++
+          if (actual !== expected) {
+            errors.push(`${what}, ${describeDifference(actual, expected)}`)
+          }
+        },
+        random,
+        fresh() {
+          freshTokenizer ||= createDocumentTokenizer(getText(documentTokenizer))
+          return freshTokenizer
+        },
+      })
+      if (errors.length > 0) {
+        mismatches.push(`${name}: after edit ${i}, ${errors[0]}`)
+        break
+      }
+    }
+    opened.dispose?.()
+  }
+  console.info(`cases:      ${cases.length}`)
+  console.info(`edits:      ${editCount}`)
+  console.info(`queries:    ${queryCount}`)
+  console.info(`mismatches: ${mismatches.length}`)
+  for (const message of mismatches.slice(0, 50)) {
+    console.info(message)
+  }
+  if (mismatches.length > 0) {
+    process.exitCode = 1
+  }
+}
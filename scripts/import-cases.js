@@ -0,0 +1,479 @@
+import { execa } from 'execa'
+import { readdir, readFile, rm, stat, writeFile } from 'node:fs/promises'
+import path, { dirname } from 'node:path'
+import { fileURLToPath } from 'node:url'
+import { parseArgs } from 'node:util'
+import { hashString } from '../src/hash.js'
+import { loadManifest, writeManifest } from './cases-manifest.js'
+
+const __dirname = dirname(fileURLToPath(import.meta.url))
+const root = path.join(__dirname, '..')
+const casesFolder = `${root}/test/cases`
+const baselinesFolder = `${root}/test/baselines`
+const importedCommitsPath = `${root}/test/imported-commits.json`
+
+// the number of files that are read or written at the same time
+const IO_CONCURRENCY = 16
+// the number of blobs read from git with one process
+const BLOB_BATCH_SIZE = 1000
+
+/**
+ * @typedef {object} Test
+ * @property {string} testName the name of the case, without `.java`
+ * @property {string} testContent
+ */
+
+/**
+ * @typedef {object} ImportOptions
+ * @property {string} id the name of the upstream repository, which the
+ * imported commit is stored under
+ * @property {string} repo the url or the local path of the upstream repository
+ * @property {string} commit the commit to import
+ * @property {string} prefix the prefix of the names of the imported cases
+ * @property {(file: string) => boolean} isSource whether an upstream file
+ * contains tests
+ * @property {(file: string, content: string) => Test[]} getTests returns the
+ * tests of an upstream file
+ */
+
+/**
+ * @param {string} cwd
+ * @param {string[]} args
+ * @param {import('execa').Options} [options]
+ */
+const git = (cwd, args, options) => {
+  return execa('git', ['-C', cwd, ...args], options)
+}
+
+/**
+ * @param {string} folder
+ * @param {string} commit
+ */
+const hasCommit = async (folder, commit) => {
+  try {
+    await git(folder, ['cat-file', '-e', `${commit}^{commit}`])
+    return true
+  } catch {
+    return false
+  }
+}
+
+/**
+ * Returns a folder that git can read the commit from. A local repository is
+ * used as it is, a remote one is mirrored to `.tmp` once and fetched into
+ * afterwards.
+ *
+ * @param {string} id
+ * @param {string} repo
+ * @param {string} commit
+ */
+const getRepository = async (id, repo, commit) => {
+  const isLocal = await stat(repo).then(
+    (stats) => stats.isDirectory(),
+    () => false,
+  )
+  if (isLocal) {
+    return repo
+  }
+  const mirror = `${root}/.tmp/${id}.git`
+  const hasMirror = await stat(mirror).then(
+    () => true,
+    () => false,
+  )
+  if (!hasMirror) {
+    await execa('git', ['clone', '--mirror', repo, mirror])
+  } else if (!(await hasCommit(mirror, commit))) {
+    await git(mirror, ['fetch', '--prune', 'origin'])
+  }
+  if (!(await hasCommit(mirror, commit))) {
+    await git(mirror, ['fetch', 'origin', commit])
+  }
+  return mirror
+}
+
+/**
+ * Reads the contents of files at given commits, for example
+ * `89c3aaf:user/build.xml`, with `git cat-file --batch`. Files that do not
+ * exist are left out.
+ *
+ * @param {string} folder
+ * @param {string[]} specs
+ */
+const readBlobs = async (folder, specs) => {
+  /**
+   * @type {Map<string, string>}
+   */
+  const blobs = new Map()
+  const decoder = new TextDecoder()
+  for (let i = 0; i < specs.length; i += BLOB_BATCH_SIZE) {
+    const batch = specs.slice(i, i + BLOB_BATCH_SIZE)
+    const { stdout } = await git(folder, ['cat-file', '--batch'], {
+      input: batch.join('\n') + '\n',
+      encoding: 'buffer',
+      maxBuffer: Infinity,
+    })
+    let offset = 0
+    for (const spec of batch) {
+      const headerEnd = stdout.indexOf(10, offset)
+      const header = decoder.decode(stdout.subarray(offset, headerEnd))
+      offset = headerEnd + 1
+      if (header.endsWith(' missing')) {
+        continue
+      }
+      const size = Number(header.slice(header.lastIndexOf(' ') + 1))
+      blobs.set(spec, decoder.decode(stdout.subarray(offset, offset + size)))
+      // the content is followed by a newline
+      offset += size + 1
+    }
+  }
+  return blobs
+}
+
+/**
+ * Returns the files that differ between two commits. Renamed files count as
+ * removed and added.
+ *
+ * @param {string} folder
+ * @param {string} oldCommit
+ * @param {string} newCommit
+ */
+const getChangedFiles = async (folder, oldCommit, newCommit) => {
+  const { stdout } = await git(folder, [
+    'diff',
+    '--no-renames',
+    '--name-status',
+    '-z',
+    oldCommit,
+    newCommit,
+  ])
+  const parts = stdout.split('\0')
+  /**
+   * @type {string[]}
+   */
+  const oldFiles = []
+  /**
+   * @type {string[]}
+   */
+  const newFiles = []
+  for (let i = 0; i + 1 < parts.length; i += 2) {
+    const [status, file] = [parts[i], parts[i + 1]]
+    if (status !== 'A') {
+      oldFiles.push(file)
+    }
+    if (status !== 'D') {
+      newFiles.push(file)
+    }
+  }
+  return { oldFiles, newFiles }
+}
+
+/**
+ * @param {string} folder
+ * @param {string} commit
+ */
+const getAllFiles = async (folder, commit) => {
+  const { stdout } = await git(folder, [
+    'ls-tree',
+    '-r',
+    '-z',
+    '--name-only',
+    commit,
+  ])
+  return stdout.split('\0').filter(Boolean)
+}
+
+/**
+ * Calls `fn` for each item, with at most `limit` calls pending at a time.
+ *
+ * @template T
+ * @param {readonly T[]} items
+ * @param {number} limit
+ * @param {(item: T) => Promise<void>} fn
+ */
+const forEachConcurrent = async (items, limit, fn) => {
+  let next = 0
+  const run = async () => {
+    while (next < items.length) {
+      await fn(items[next++])
+    }
+  }
+  const runners = Math.min(limit, items.length)
+  await Promise.all(Array.from({ length: runners }, run))
+}
+
+/**
+ * @param {string} file
+ */
+const readJson = async (file) => {
+  try {
+    return JSON.parse(await readFile(file, 'utf8'))
+  } catch {
+    return undefined
+  }
+}
+
+/**
+ * @param {ImportOptions} options
+ * @param {Map<string, string>} blobs
+ * @param {string} commit
+ * @param {string[]} files
+ */
+const getTestsAt = (options, blobs, commit, files) => {
+  /**
+   * @type {Map<string, string>}
+   */
+  const tests = new Map()
+  for (const file of files) {
+    const content = blobs.get(`${commit}:${file}`)
+    if (content === undefined || !options.isSource(file)) {
+      continue
+    }
+    for (const { testName, testContent } of options.getTests(file, content)) {
+      tests.set(`${testName}.java`, testContent)
+    }
+  }
+  return tests
+}
+
+/**
+ * Forgets removed cases that were duplicates, and duplicates whose canonical
+ * case was removed or changed. Returns those of them that were read in this
+ * import, so that they are written as cases of their own. The others are
+ * added by the next import that reads them, or by `--full`.
+ *
+ * @param {import('./cases-manifest.js').CasesManifest} manifest
+ * @param {Map<string, string>} newTests
+ * @param {[string, string][]} changed
+ * @param {string[]} removed
+ */
+const forgetDuplicates = (manifest, newTests, changed, removed) => {
+  const changedNames = new Set(changed.map(([name]) => name))
+  const removedNames = new Set(removed)
+  /**
+   * @type {[string, string][]}
+   */
+  const restored = []
+  for (const [name, canonical] of Object.entries(manifest.duplicates)) {
+    if (
+      removedNames.has(name) ||
+      removedNames.has(canonical) ||
+      changedNames.has(canonical)
+    ) {
+      delete manifest.duplicates[name]
+      const content = newTests.get(name)
+      if (content !== undefined) {
+        restored.push([name, content])
+      }
+    }
+  }
+  return restored
+}
+
+/**
+ * Finds the changed cases whose content is the same as that of another case,
+ * by their hash in the manifest, and records them as duplicates. The first
+ * case by name stays, as with scripts/dedupe-cases.js, except that cases that
+ * are already there always stay.
+ *
+ * @param {import('./cases-manifest.js').CasesManifest} manifest
+ * @param {[string, string][]} changed sorted by name
+ * @param {string[]} removed
+ */
+const findDuplicates = async (manifest, changed, removed) => {
+  const changedNames = new Set(changed.map(([name]) => name))
+  const removedNames = new Set(removed)
+  /**
+   * @type {Map<number, string[]>}
+   */
+  const namesByHash = new Map()
+  /**
+   * @param {number} hash
+   * @param {string} name
+   */
+  const addName = (hash, name) => {
+    const names = namesByHash.get(hash) || []
+    names.push(name)
+    namesByHash.set(hash, names)
+  }
+  for (const [name, { hash }] of Object.entries(manifest.cases)) {
+    if (!changedNames.has(name) && !removedNames.has(name)) {
+      addName(hash, name)
+    }
+  }
+  /**
+   * @type {Map<string, string>}
+   */
+  const writtenContents = new Map()
+  /**
+   * @type {[string, string][]}
+   */
+  const written = []
+  /**
+   * @type {string[]}
+   */
+  const duplicates = []
+  for (const [name, content] of changed) {
+    const hash = hashString(content)
+    let canonical
+    // equal hashes are only duplicates when the contents are equal as well
+    for (const other of namesByHash.get(hash) || []) {
+      const otherContent =
+        writtenContents.get(other) ??
+        (await readFile(`${casesFolder}/${other}`, 'utf8'))
+      if (otherContent === content) {
+        canonical = other
+        break
+      }
+    }
+    if (canonical) {
+      manifest.duplicates[name] = canonical
+      duplicates.push(name)
+      continue
+    }
+    addName(hash, name)
+    writtenContents.set(name, content)
+    written.push([name, content])
+  }
+  return { written, duplicates }
+}
+
+/**
+ * Imports the tests of an upstream repository into test/cases. Only the
+ * upstream files that changed since the last imported commit are read, and
+ * only the cases whose content changed are written. Cases that are no longer
+ * produced are deleted together with their baselines. Without a previous
+ * import, or with `--full`, all upstream files are read and every case with
+ * the prefix that is no longer produced is deleted. New and changed cases
+ * that are copies of another case are skipped and recorded as duplicates in
+ * test/cases-manifest.json, which is updated with the hash and size of the
+ * written cases.
+ *
+ * `--repo` and `--commit` override the upstream repository, which can be a
+ * local path, and the commit.
+ *
+ * @param {ImportOptions} options
+ */
+export const importCases = async (options) => {
+  const { values } = parseArgs({
+    options: {
+      repo: { type: 'string', default: options.repo },
+      commit: { type: 'string', default: options.commit },
+      full: { type: 'boolean', default: false },
+    },
+  })
+  const { id, prefix } = options
+  const folder = await getRepository(id, values.repo, values.commit)
+  // store the full hash, also when given a branch or a short hash
+  const { stdout: commit } = await git(folder, [
+    'rev-parse',
+    `${values.commit}^{commit}`,
+  ])
+  const importedCommits = (await readJson(importedCommitsPath)) || {}
+  const manifest = await loadManifest()
+  const oldCommit = values.full ? undefined : importedCommits[id]
+  let oldTests
+  let newTests
+  if (oldCommit && (await hasCommit(folder, oldCommit))) {
+    const { oldFiles, newFiles } = await getChangedFiles(
+      folder,
+      oldCommit,
+      commit,
+    )
+    const blobs = await readBlobs(folder, [
+      ...oldFiles
+        .filter(options.isSource)
+        .map((file) => `${oldCommit}:${file}`),
+      ...newFiles
+        .filter(options.isSource)
+        .map((file) => `${commit}:${file}`),
+    ])
+    oldTests = getTestsAt(options, blobs, oldCommit, oldFiles)
+    newTests = getTestsAt(options, blobs, commit, newFiles)
+  } else {
+    if (oldCommit) {
+      console.warn(`${id}: ${oldCommit} is not available, importing all`)
+    }
+    const files = (await getAllFiles(folder, commit)).filter(options.isSource)
+    const blobs = await readBlobs(
+      folder,
+      files.map((file) => `${commit}:${file}`),
+    )
+    const dirents = await readdir(casesFolder)
+    oldTests = new Map(
+      dirents
+        .filter((dirent) => dirent.startsWith(prefix))
+        .map((dirent) => [dirent, '']),
+    )
+    newTests = getTestsAt(options, blobs, commit, files)
+  }
+  const removed = [...oldTests.keys()].filter((name) => !newTests.has(name))
+  // duplicates that scripts/dedupe-cases.js removed stay removed
+  const candidates = [...newTests].filter(
+    ([name]) => !(manifest && name in manifest.duplicates),
+  )
+  /**
+   * @type {Set<string>}
+   */
+  const existingNames = new Set()
+  /**
+   * @type {[string, string][]}
+   */
+  const changed = []
+  await forEachConcurrent(candidates, IO_CONCURRENCY, async (test) => {
+    const [name, content] = test
+    const existing = await readFile(`${casesFolder}/${name}`, 'utf8').catch(
+      () => undefined,
+    )
+    if (existing !== undefined) {
+      existingNames.add(name)
+    }
+    if (existing !== content) {
+      changed.push(test)
+    }
+  })
+  if (manifest) {
+    changed.push(...forgetDuplicates(manifest, newTests, changed, removed))
+  }
+  changed.sort(([a], [b]) => (a < b ? -1 : 1))
+  const { written, duplicates } = manifest
+    ? await findDuplicates(manifest, changed, removed)
+    : { written: changed, duplicates: [] }
+  await forEachConcurrent(written, IO_CONCURRENCY, async ([name, content]) => {
+    await writeFile(`${casesFolder}/${name}`, content)
+  })
+  const deleted = [
+    ...removed,
+    ...duplicates.filter((name) => existingNames.has(name)),
+  ]
+  await forEachConcurrent(deleted, IO_CONCURRENCY, async (name) => {
+    await rm(`${casesFolder}/${name}`, { force: true })
+    await rm(`${baselinesFolder}/${name.replace(/\.java$/, '.txt')}`, {
+      force: true,
+    })
+  })
+  if (manifest) {
+    for (const name of deleted) {
+      delete manifest.cases[name]
+    }
+    for (const [name, content] of written) {
+      manifest.cases[name] = {
+        hash: hashString(content),
+        size: Buffer.byteLength(content),
+      }
+    }
+    await writeManifest(manifest)
+  }
+  const added = written.filter(([name]) => !existingNames.has(name)).length
+  const updated = written.length - added
+  importedCommits[id] = commit
+  await writeFile(
+    importedCommitsPath,
+    JSON.stringify(importedCommits, null, 2) + '\n',
+  )
+  console.info(
+    `${id}: ${added} added, ${updated} updated, ${removed.length} removed, ${duplicates.length} duplicates skipped`,
+  )
+  if (added + updated > 0) {
+    console.info('next, run npm run update-baselines')
+  }
+}
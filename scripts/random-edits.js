@@ -0,0 +1,126 @@
+import { readdir, readFile } from 'node:fs/promises'
+import path, { dirname } from 'node:path'
+import { fileURLToPath } from 'node:url'
+
+const __dirname = dirname(fileURLToPath(import.meta.url))
+const root = path.join(__dirname, '..')
+const casesFolder = `${root}/test/cases`
+
+// lines that open or close comments, strings, blocks and declarations, so
+// that edits change the state of the following lines
+const SNIPPETS = [
+  '/*',
+  '*/',
+  '"',
+  "'",
+  '"""',
+  '// comment',
+  'class Foo {',
+  'interface Bar<T> {',
+  '  void run(int a) {',
+  '  int value = 1;',
+  '  foo(bar, "baz");',
+  '  @Override',
+  '}',
+  '{',
+  '(',
+  ')]',
+  '',
+]
+
+/**
+ * A small seeded random number generator, so that failures can be repeated
+ * with the same `--seed`.
+ *
+ * @param {number} seed
+ */
+export const createRandom = (seed) => {
+  let state = seed >>> 0
+  return () => {
+    state = (state + 0x6d2b79f5) >>> 0
+    let t = state
+    t = Math.imul(t ^ (t >>> 15), t | 1)
+    t ^= t + Math.imul(t ^ (t >>> 7), t | 61)
+    return ((t ^ (t >>> 14)) >>> 0) / 4294967296
+  }
+}
+
+/**
+ * Reads every `step`th case, in name order.
+ *
+ * @param {number} step
+ */
+export const readCases = async (step) => {
+  const dirents = await readdir(casesFolder)
+  const names = dirents
+    .filter((dirent) => dirent.endsWith('.java'))
+    .sort()
+    .filter((name, i) => i % step === 0)
+  return Promise.all(
+    names.map(async (name) => ({
+      name,
+      text: await readFile(`${casesFolder}/${name}`, 'utf8'),
+    })),
+  )
+}
+
+/**
+ * Replaces up to two lines at a random position with up to three new lines.
+ * The new lines are snippets, lines from elsewhere in the document, or a
+ * snippet inserted into a line of the document. Every tenth edit replaces up
+ * to 300 lines, so that edits also span many lines.
+ *
+ * @param {ReturnType<typeof import('../src/documentTokenizer.js').createDocumentTokenizer>} documentTokenizer
+ * @param {() => number} random
+ */
+export const applyRandomEdit = (documentTokenizer, random) => {
+  /**
+   * @param {number} count
+   */
+  const pick = (count) => Math.floor(random() * count)
+  const lineCount = documentTokenizer.getLineCount()
+  const isLarge = pick(10) === 0
+  const startLine = pick(lineCount)
+  const deleteCount = Math.min(
+    pick(isLarge ? 300 : 3),
+    lineCount - startLine - 1,
+  )
+  const insertCount = pick(isLarge ? 300 : 3) + (deleteCount === 0 ? 1 : 0)
+  /**
+   * @type {string[]}
+   */
+  const lines = []
+  for (let i = 0; i < insertCount; i++) {
+    const snippet = SNIPPETS[pick(SNIPPETS.length)]
+    const line = documentTokenizer.getLine(pick(lineCount))
+    switch (pick(3)) {
+      case 0:
+        lines.push(snippet)
+        break
+      case 1:
+        lines.push(line)
+        break
+      default: {
+        const column = pick(line.length + 1)
+        lines.push(line.slice(0, column) + snippet + line.slice(column))
+        break
+      }
+    }
+  }
+  documentTokenizer.applyEdit(startLine, deleteCount, lines)
+  return { startLine, deleteCount, lines }
+}
+
+/**
+ * @param {ReturnType<typeof import('../src/documentTokenizer.js').createDocumentTokenizer>} documentTokenizer
+ */
+export const getText = (documentTokenizer) => {
+  /**
+   * @type {string[]}
+   */
+  const lines = []
+  for (let i = 0; i < documentTokenizer.getLineCount(); i++) {
+    lines.push(documentTokenizer.getLine(i))
+  }
+  return lines.join('\n')
+}
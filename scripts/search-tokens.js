@@ -0,0 +1,131 @@
+import { readdir, readFile } from 'node:fs/promises'
+import { availableParallelism } from 'node:os'
+import path, { dirname } from 'node:path'
+import { fileURLToPath } from 'node:url'
+import { parseArgs } from 'node:util'
+import {
+  Worker,
+  isMainThread,
+  parentPort,
+  workerData,
+} from 'node:worker_threads'
+import { TokenClass, searchTokens } from '../src/searchTokens.js'
+
+const __dirname = dirname(fileURLToPath(import.meta.url))
+const root = path.join(__dirname, '..')
+
+const tokenClassNames = {
+  code: TokenClass.Code,
+  string: TokenClass.String,
+  comment: TokenClass.Comment,
+}
+
+/**
+ * @param {number} tokenClass
+ */
+const getTokenClassName = (tokenClass) => {
+  return Object.keys(tokenClassNames).find(
+    (name) => tokenClassNames[name] === tokenClass,
+  )
+}
+
+/**
+ * Searches the files assigned to this worker and posts the matches of each
+ * file with the text of the matching lines.
+ */
+const runWorker = async () => {
+  const { files, query, tokenClasses } = workerData
+  for (const file of files) {
+    const text = await readFile(file, 'utf8')
+    const matches = searchTokens(text, query, tokenClasses)
+    if (matches.length === 0) {
+      continue
+    }
+    const lines = text.split('\n')
+    parentPort.postMessage({
+      file,
+      matches: matches.map((match) => ({
+        ...match,
+        line: lines[match.lineIndex],
+      })),
+    })
+  }
+}
+
+/**
+ * @param {string[]} files
+ * @param {number} workerCount
+ */
+const splitFiles = (files, workerCount) => {
+  /**
+   * @type {string[][]}
+   */
+  const shards = Array.from({ length: workerCount }, () => [])
+  for (let i = 0; i < files.length; i++) {
+    shards[i % workerCount].push(files[i])
+  }
+  return shards.filter((shard) => shard.length > 0)
+}
+
+const main = async () => {
+  const { values, positionals } = parseArgs({
+    allowPositionals: true,
+    options: {
+      in: { type: 'string', default: 'code,string,comment' },
+      workers: { type: 'string', default: String(availableParallelism()) },
+    },
+  })
+  const [query, folder = `${root}/test/cases`] = positionals
+  if (!query) {
+    console.error(
+      'usage: search-tokens.js <query> [folder] [--in code,string,comment] [--workers n]',
+    )
+    process.exitCode = 1
+    return
+  }
+  let tokenClasses = 0
+  for (const name of values.in.split(',')) {
+    if (!(name in tokenClassNames)) {
+      throw new Error(`unknown token class ${name}`)
+    }
+    tokenClasses |= tokenClassNames[name]
+  }
+  const dirents = await readdir(folder, { recursive: true })
+  const files = dirents
+    .filter((dirent) => dirent.endsWith('.java'))
+    .map((dirent) => path.join(folder, dirent))
+  const start = performance.now()
+  let matchCount = 0
+  const shards = splitFiles(files, Number(values.workers) || 1)
+  await Promise.all(
+    shards.map(
+      (shard) =>
+        new Promise((resolve, reject) => {
+          const worker = new Worker(fileURLToPath(import.meta.url), {
+            workerData: { files: shard, query, tokenClasses },
+          })
+          worker.on('message', ({ file, matches }) => {
+            const relative = path.relative(folder, file)
+            for (const { lineIndex, column, tokenClass, line } of matches) {
+              console.info(
+                `${relative}:${lineIndex + 1}:${column + 1}: ${getTokenClassName(tokenClass)}: ${line.trim()}`,
+              )
+            }
+            matchCount += matches.length
+          })
+          worker.on('error', reject)
+          worker.on('exit', resolve)
+        }),
+    ),
+  )
+  const time = performance.now() - start
+  console.error(
+    `${matchCount} matches in ${files.length} files, ${shards.length} workers, ${time.toFixed(0)}ms`,
+  )
+}
+
+if (isMainThread) {
+  main()
+} else {
+  runWorker()
+}
@@ -0,0 +1,365 @@
+import { readdir, readFile, writeFile } from 'node:fs/promises'
+import path, { dirname } from 'node:path'
+import { fileURLToPath, pathToFileURL } from 'node:url'
+import { parseArgs } from 'node:util'
+import { hashString } from '../src/hash.js'
+import { countTokenizerRules } from '../src/tokenizerRules.js'
+
+const __dirname = dirname(fileURLToPath(import.meta.url))
+const root = path.join(__dirname, '..')
+const casesFolder = `${root}/test/cases`
+const tokenizerPath = `${root}/src/tokenizeJava.js`
+
+const FAMILIES = [
+  'google-web-toolkit',
+  'closure-compiler',
+  'atom-language-java',
+  'codemirror',
+]
+
+// the subset is refined one case at a time, up to this many cases
+const MAX_REFINE_STEPS = 200
+
+/**
+ * @typedef {object} CaseProfile
+ * @property {string} name
+ * @property {number} length
+ * @property {string} stratum the family, size and line length of the case
+ * @property {Uint32Array} hits how often each tokenizer rule matched
+ * @property {Set<string>} features the token types, states and rules of the
+ * case, for example `TokenType:Numeric`
+ */
+
+/**
+ * @param {string} name
+ */
+const getFamily = (name) => {
+  return FAMILIES.find((family) => name.startsWith(`${family}-`)) || 'other'
+}
+
+/**
+ * Groups cases by family, by size in steps of four times the size and by
+ * average line length in steps of 20 characters.
+ *
+ * @param {string} name
+ * @param {string} text
+ */
+const getStratum = (name, text) => {
+  const lineCount = text.split('\n').length
+  const size = Math.floor(Math.log2(text.length + 1) / 2)
+  const lineLength = Math.min(Math.floor(text.length / lineCount / 20), 3)
+  return `${getFamily(name)}/${size}/${lineLength}`
+}
+
+/**
+ * Tokenizes every case with a tokenizer that counts the matches of its rules.
+ *
+ * @param {string[]} names
+ */
+const getProfiles = async (names) => {
+  const source = await readFile(tokenizerPath, 'utf8')
+  const counting = countTokenizerRules(source, pathToFileURL(tokenizerPath))
+  const tokenizer = await import(
+    `data:text/javascript;base64,${Buffer.from(counting.source).toString('base64')}`
+  )
+  const stateNames = Object.keys(tokenizer.State)
+  /**
+   * @type {CaseProfile[]}
+   */
+  const profiles = []
+  for (const name of names) {
+    const text = await readFile(`${casesFolder}/${name}`, 'utf8')
+    /**
+     * @type {Set<string>}
+     */
+    const features = new Set()
+    tokenizer.ruleHits.fill(0)
+    let lineState = tokenizer.initialLineState
+    for (const line of text.split('\n')) {
+      lineState = tokenizer.tokenizeLine(line, lineState)
+      features.add(`State:${stateNames[lineState.state]}`)
+      const { tokens } = lineState
+      for (let i = 0; i < tokens.length; i += 2) {
+        features.add(`TokenType:${tokenizer.TokenMap[tokens[i]]}`)
+      }
+    }
+    const hits = tokenizer.ruleHits.slice()
+    for (let i = 0; i < hits.length; i++) {
+      if (hits[i] > 0) {
+        features.add(`State:${counting.rules[i].state}`)
+        features.add(`Rule:${counting.rules[i].id}`)
+      }
+    }
+    profiles.push({
+      name,
+      length: text.length,
+      stratum: getStratum(name, text),
+      hits,
+      features,
+    })
+  }
+  return { profiles, rules: counting.rules }
+}
+
+/**
+ * @param {readonly CaseProfile[]} profiles
+ * @param {number} ruleCount
+ */
+const sumHits = (profiles, ruleCount) => {
+  const sum = new Float64Array(ruleCount)
+  for (const { hits } of profiles) {
+    for (let i = 0; i < ruleCount; i++) {
+      sum[i] += hits[i]
+    }
+  }
+  return sum
+}
+
+/**
+ * Returns the total variation distance between two hit profiles: half the sum
+ * of the differences of the share of each rule. 0 means the rules matched in
+ * the same proportions, 1 means no rule matched in both.
+ *
+ * @param {Float64Array} a
+ * @param {Float64Array} b
+ */
+const getDistance = (a, b) => {
+  let totalA = 0
+  let totalB = 0
+  for (let i = 0; i < a.length; i++) {
+    totalA += a[i]
+    totalB += b[i]
+  }
+  let distance = 0
+  for (let i = 0; i < a.length; i++) {
+    distance += Math.abs(a[i] / (totalA || 1) - b[i] / (totalB || 1))
+  }
+  return distance / 2
+}
+
+/**
+ * Picks cases from every stratum in proportion to its share of the
+ * characters of the corpus, in an order that is random but the same on every
+ * run.
+ *
+ * @param {readonly CaseProfile[]} profiles
+ * @param {number} fraction
+ */
+const selectStratified = (profiles, fraction) => {
+  /**
+   * @type {Map<string, CaseProfile[]>}
+   */
+  const strata = new Map()
+  for (const profile of profiles) {
+    const stratum = strata.get(profile.stratum) || []
+    stratum.push(profile)
+    strata.set(profile.stratum, stratum)
+  }
+  /**
+   * @type {Set<CaseProfile>}
+   */
+  const selected = new Set()
+  for (const stratum of strata.values()) {
+    const total = stratum.reduce((sum, profile) => sum + profile.length, 0)
+    const quota = total * fraction
+    const shuffled = stratum.toSorted(
+      (a, b) => hashString(a.name) - hashString(b.name),
+    )
+    let length = 0
+    for (const profile of shuffled) {
+      // round to the nearest case, so small strata are sometimes left out
+      if (length + profile.length / 2 > quota) {
+        break
+      }
+      selected.add(profile)
+      length += profile.length
+    }
+  }
+  return selected
+}
+
+/**
+ * Adds the smallest case for every token type, state and rule that occurs in
+ * the corpus but not in the selected cases.
+ *
+ * @param {readonly CaseProfile[]} profiles
+ * @param {Set<CaseProfile>} selected
+ */
+const addMissingFeatures = (profiles, selected) => {
+  const covered = new Set([...selected].flatMap((p) => [...p.features]))
+  const bySize = profiles.toSorted((a, b) => a.length - b.length)
+  for (const profile of bySize) {
+    for (const feature of profile.features) {
+      if (!covered.has(feature)) {
+        selected.add(profile)
+        for (const other of profile.features) {
+          covered.add(other)
+        }
+        break
+      }
+    }
+  }
+}
+
+/**
+ * Adds the case that brings the hit profile of the subset closest to the one
+ * of the corpus, until they are within the tolerance.
+ *
+ * @param {readonly CaseProfile[]} profiles
+ * @param {Set<CaseProfile>} selected
+ * @param {Float64Array} corpusHits
+ * @param {number} tolerance
+ */
+const refine = (profiles, selected, corpusHits, tolerance) => {
+  const hits = sumHits([...selected], corpusHits.length)
+  const candidate = new Float64Array(corpusHits.length)
+  for (let step = 0; step < MAX_REFINE_STEPS; step++) {
+    let best
+    let bestDistance = getDistance(hits, corpusHits)
+    if (bestDistance <= tolerance) {
+      return
+    }
+    for (const profile of profiles) {
+      if (selected.has(profile)) {
+        continue
+      }
+      for (let i = 0; i < hits.length; i++) {
+        candidate[i] = hits[i] + profile.hits[i]
+      }
+      const distance = getDistance(candidate, corpusHits)
+      if (distance < bestDistance) {
+        best = profile
+        bestDistance = distance
+      }
+    }
+    if (!best) {
+      return
+    }
+    selected.add(best)
+    for (let i = 0; i < hits.length; i++) {
+      hits[i] += best.hits[i]
+    }
+  }
+}
+
+/**
+ * Compares the subset with the corpus and prints how far apart they are.
+ * Returns whether the subset covers every feature of the corpus and its hit
+ * profile is within the tolerance.
+ *
+ * @param {readonly CaseProfile[]} profiles
+ * @param {readonly CaseProfile[]} subset
+ * @param {import('../src/tokenizerRules.js').TokenizerRule[]} rules
+ * @param {number} tolerance
+ */
+const checkSubset = (profiles, subset, rules, tolerance) => {
+  const corpusHits = sumHits(profiles, rules.length)
+  const subsetHits = sumHits(subset, rules.length)
+  const distance = getDistance(subsetHits, corpusHits)
+  const covered = new Set(subset.flatMap((profile) => [...profile.features]))
+  const missing = new Set(
+    profiles.flatMap((profile) =>
+      [...profile.features].filter((feature) => !covered.has(feature)),
+    ),
+  )
+  const corpusLength = profiles.reduce((sum, p) => sum + p.length, 0)
+  const subsetLength = subset.reduce((sum, p) => sum + p.length, 0)
+  console.info(
+    `${subset.length} of ${profiles.length} cases, ${subsetLength} of ${corpusLength} characters (${((subsetLength / corpusLength) * 100).toFixed(2)}%)`,
+  )
+  for (const family of [...FAMILIES, 'other']) {
+    const inFamily = (/** @type {CaseProfile} */ profile) =>
+      getFamily(profile.name) === family
+    const corpusShare =
+      profiles.filter(inFamily).reduce((sum, p) => sum + p.length, 0) /
+      corpusLength
+    const subsetShare =
+      subset.filter(inFamily).reduce((sum, p) => sum + p.length, 0) /
+      (subsetLength || 1)
+    console.info(
+      `  ${family.padEnd(20)} ${(corpusShare * 100).toFixed(1).padStart(5)}% of corpus, ${(subsetShare * 100).toFixed(1).padStart(5)}% of subset`,
+    )
+  }
+  let largest = 0
+  let largestRule = ''
+  const corpusTotal = corpusHits.reduce((sum, count) => sum + count, 0)
+  const subsetTotal = subsetHits.reduce((sum, count) => sum + count, 0)
+  for (let i = 0; i < rules.length; i++) {
+    const difference = Math.abs(
+      subsetHits[i] / (subsetTotal || 1) - corpusHits[i] / (corpusTotal || 1),
+    )
+    if (difference > largest) {
+      largest = difference
+      largestRule = rules[i].id
+    }
+  }
+  console.info(
+    `hit profile distance ${distance.toFixed(4)} (tolerance ${tolerance}), largest difference ${(largest * 100).toFixed(2)}% for ${largestRule}`,
+  )
+  for (const feature of missing) {
+    console.error(`MISSING ${feature}`)
+  }
+  return { distance, ok: distance <= tolerance && missing.size === 0 }
+}
+
+/**
+ * Selects a small subset of the cases for quick benchmarks. The subset draws
+ * from every family of cases, size and line length in proportion to the
+ * corpus, contains every token type, state and tokenizer rule that the corpus
+ * does and matches the rules about as often, relative to each other, as the
+ * corpus does. With `--check`, an existing manifest is compared with the
+ * current corpus and tokenizer instead.
+ */
+const main = async () => {
+  const { values } = parseArgs({
+    options: {
+      fraction: { type: 'string', default: '0.02' },
+      tolerance: { type: 'string', default: '0.02' },
+      out: { type: 'string', default: 'test/benchmark-subset.json' },
+      check: { type: 'boolean', default: false },
+    },
+  })
+  const manifestPath = path.resolve(root, values.out)
+  const tolerance = Number(values.tolerance)
+  const dirents = await readdir(casesFolder)
+  const names = dirents.filter((dirent) => dirent.endsWith('.java')).sort()
+  const { profiles, rules } = await getProfiles(names)
+  if (values.check) {
+    const manifest = JSON.parse(await readFile(manifestPath, 'utf8'))
+    const byName = new Map(profiles.map((profile) => [profile.name, profile]))
+    const subset = manifest.cases.map((name) => byName.get(name))
+    const removed = manifest.cases.filter((name, i) => !subset[i])
+    for (const name of removed) {
+      console.error(`REMOVED ${name}`)
+    }
+    const { ok } = checkSubset(
+      profiles,
+      subset.filter(Boolean),
+      rules,
+      manifest.tolerance,
+    )
+    if (!ok || removed.length > 0) {
+      process.exitCode = 1
+    }
+    return
+  }
+  const fraction = Number(values.fraction)
+  const selected = selectStratified(profiles, fraction)
+  addMissingFeatures(profiles, selected)
+  refine(profiles, selected, sumHits(profiles, rules.length), tolerance)
+  const subset = profiles.filter((profile) => selected.has(profile))
+  const { distance, ok } = checkSubset(profiles, subset, rules, tolerance)
+  const manifest = {
+    fraction,
+    tolerance,
+    distance: Number(distance.toFixed(6)),
+    cases: subset.map((profile) => profile.name),
+  }
+  await writeFile(manifestPath, JSON.stringify(manifest, null, 2) + '\n')
+  console.info(`manifest written to ${path.relative(root, manifestPath)}`)
+  if (!ok) {
+    process.exitCode = 1
+  }
+}
+
+main()
@@ -0,0 +1,403 @@
+import * as fs from 'node:fs/promises'
+import { tmpdir } from 'node:os'
+import path, { dirname } from 'node:path'
+import { PerformanceObserver, constants } from 'node:perf_hooks'
+import { setImmediate } from 'node:timers/promises'
+import { fileURLToPath } from 'node:url'
+import { parseArgs } from 'node:util'
+import { setFlagsFromString } from 'node:v8'
+import { runInNewContext } from 'node:vm'
+import { createBracketIndex } from '../src/bracketIndex.js'
+import {
+  createDiskTokenCache,
+  getTokenizerHash,
+} from '../src/diskTokenCache.js'
+import { createDocumentSymbolProvider } from '../src/documentSymbols.js'
+import { createDocumentTokenizer } from '../src/documentTokenizer.js'
+import { createFoldingRangeProvider } from '../src/foldingRanges.js'
+import { hashString } from '../src/hash.js'
+import { createIdentifierIndex } from '../src/identifierIndex.js'
+import { createMinimapProvider } from '../src/minimap.js'
+import { createSemanticTokensProvider } from '../src/semanticTokens.js'
+import { createStickyScrollProvider } from '../src/stickyScroll.js'
+import { readLineState, tokenizeToBuffer } from '../src/tokenBuffer.js'
+import { createTokenCache } from '../src/tokenCache.js'
+import { initialLineStateWithBracketColors } from '../src/tokenizeJava.js'
+import { createTokenStore, getLineState } from '../src/tokenStore.js'
+import { createRandom } from './random-edits.js'
+
+const __dirname = dirname(fileURLToPath(import.meta.url))
+const root = path.join(__dirname, '..')
+const casesFolder = `${root}/test/cases`
+const subsetPath = `${root}/test/benchmark-subset.json`
+
+setFlagsFromString('--expose-gc')
+/**
+ * @type {() => void}
+ */
+const gc = runInNewContext('gc')
+
+// text that is typed and then deleted again, `$` is a new identifier each time
+const SNIPPETS = [
+  'int $ = 0;',
+  'call($, "text");',
+  '/* $',
+  '"$',
+  'if ($) {',
+  '}',
+  '@Override $',
+  "char $ = '\\n';",
+]
+
+/**
+ * Creates the caches that the editor worker shares between all documents:
+ * the line token cache, which the document tokenizers also go through, the
+ * token store and a disk cache in a temporary folder that `dispose` removes.
+ */
+const openCaches = async () => {
+  const source = await fs.readFile(`${root}/src/tokenizeJava.js`, 'utf8')
+  const cacheDir = await fs.mkdtemp(`${tmpdir()}/java-token-cache-`)
+  const tokenCache = createTokenCache()
+  return {
+    tokenCache,
+    tokenStore: createTokenStore({ tokenizeLine: tokenCache.tokenizeLine }),
+    diskTokenCache: createDiskTokenCache({
+      cacheDir,
+      tokenizerHash: getTokenizerHash(source),
+      fs,
+    }),
+    dispose: () => fs.rm(cacheDir, { recursive: true, force: true }),
+  }
+}
+
+/**
+ * @typedef {Awaited<ReturnType<typeof openCaches>>} Caches
+ */
+
+/**
+ * Passes a text through the shared caches the way opening a file does: it is
+ * loaded from or saved to the disk cache, stored in the token store together
+ * with an edited copy that shares most of its blocks, tokenized into a shared
+ * token buffer for the renderer, and tokenized with bracket colors. Only the
+ * caches keep anything afterwards.
+ *
+ * @param {Caches} caches
+ * @param {string} text
+ * @param {() => number} random
+ * @param {number} editCount used to make new identifiers
+ */
+const useCaches = async (caches, text, random, editCount) => {
+  const { tokenCache, tokenStore, diskTokenCache } = caches
+  await diskTokenCache.getTokens(text)
+  const lines = text.split('\n')
+  const editedLines = lines.toSpliced(
+    Math.floor(random() * lines.length),
+    0,
+    `int value${editCount} = 0;`,
+  )
+  const storedDocuments = [
+    tokenStore.acquire(text),
+    tokenStore.acquire(editedLines.join('\n')),
+  ]
+  for (const storedDocument of storedDocuments) {
+    getLineState(
+      storedDocument,
+      Math.floor(random() * storedDocument.lineCount),
+    )
+    tokenStore.release(storedDocument)
+  }
+  const buffer = tokenizeToBuffer(text, { shared: true })
+  for (let i = 0; i < 100; i++) {
+    readLineState(buffer, Math.floor(random() * lines.length))
+  }
+  let lineState = initialLineStateWithBracketColors
+  for (const line of lines) {
+    lineState = tokenCache.tokenizeLine(line, lineState)
+  }
+}
+
+/**
+ * Opens a document the way the editor worker does: a document tokenizer that
+ * goes through the shared token cache, with all providers attached to it.
+ * `query` asks every provider about a position, `dispose` detaches them.
+ *
+ * @param {Caches} caches
+ * @param {string} text
+ */
+const openDocument = (caches, text) => {
+  const documentTokenizer = createDocumentTokenizer(text, {
+    tokenizeLine: caches.tokenCache.tokenizeLine,
+  })
+  const stickyScroll = createStickyScrollProvider(documentTokenizer)
+  const foldingRanges = createFoldingRangeProvider(documentTokenizer)
+  const minimap = createMinimapProvider(documentTokenizer)
+  const semanticTokens = createSemanticTokensProvider(documentTokenizer)
+  const identifierIndex = createIdentifierIndex(documentTokenizer)
+  const bracketIndex = createBracketIndex(documentTokenizer)
+  const documentSymbols = createDocumentSymbolProvider(documentTokenizer)
+  const providers = [
+    stickyScroll,
+    foldingRanges,
+    minimap,
+    semanticTokens,
+    identifierIndex,
+    bracketIndex,
+    documentSymbols,
+  ]
+  let resultId = semanticTokens.getFull().resultId
+  return {
+    documentTokenizer,
+    /**
+     * @param {number} lineIndex
+     * @param {number} column
+     */
+    query(lineIndex, column) {
+      stickyScroll.getEnclosingScopes(lineIndex)
+      foldingRanges.getFoldingRanges()
+      minimap.getRows(lineIndex, lineIndex + 100)
+      resultId = semanticTokens.getDelta(resultId).resultId
+      identifierIndex.getOccurrencesAt(lineIndex, column)
+      bracketIndex.findEnclosingPair(lineIndex, column)
+      documentSymbols.getDocumentSymbols()
+    },
+    dispose() {
+      for (const provider of providers) {
+        provider.dispose()
+      }
+    },
+  }
+}
+
+/**
+ * Types a snippet into a line one character at a time and deletes it again
+ * the same way, querying the providers after every keystroke. The document
+ * ends up as it was, so anything it retains afterwards is a leak.
+ *
+ * @param {ReturnType<typeof openDocument>} document
+ * @param {() => number} random
+ * @param {number} editCount used to make new identifiers
+ */
+const typeAndDelete = (document, random, editCount) => {
+  const { documentTokenizer } = document
+  const lineIndex = Math.floor(random() * documentTokenizer.getLineCount())
+  const line = documentTokenizer.getLine(lineIndex)
+  const column = Math.floor(random() * (line.length + 1))
+  const snippet = SNIPPETS[Math.floor(random() * SNIPPETS.length)].replace(
+    '$',
+    `value${editCount}`,
+  )
+  const lengths = [
+    ...Array.from({ length: snippet.length }, (_, i) => i + 1),
+    ...Array.from({ length: snippet.length + 1 }, (_, i) => snippet.length - i),
+  ]
+  for (const length of lengths) {
+    const typed = line.slice(0, column) + snippet.slice(0, length)
+    documentTokenizer.applyEdit(lineIndex, 1, [typed + line.slice(column)])
+    document.query(lineIndex, typed.length)
+  }
+}
+
+/**
+ * @param {readonly number[]} values
+ * @param {number} fraction
+ */
+const getPercentile = (values, fraction) => {
+  const sorted = values.toSorted((a, b) => a - b)
+  const index = Math.min(
+    Math.floor(sorted.length * fraction),
+    sorted.length - 1,
+  )
+  return sorted[index]
+}
+
+/**
+ * @param {readonly number[]} values
+ */
+const getMean = (values) => {
+  return values.reduce((sum, value) => sum + value, 0) / values.length
+}
+
+/**
+ * Returns the memory that is still reachable, after collecting everything
+ * else. Array buffers are included, because token data is kept in typed
+ * arrays.
+ */
+const getRetainedMemory = () => {
+  gc()
+  gc()
+  const { heapUsed, arrayBuffers } = process.memoryUsage()
+  return heapUsed + arrayBuffers
+}
+
+/**
+ * @param {number} bytes
+ */
+const formatMb = (bytes) => {
+  return `${(bytes / 1024 / 1024).toFixed(2)}MB`
+}
+
+const GC_KINDS = {
+  [constants.NODE_PERFORMANCE_GC_MINOR]: 'minor',
+  [constants.NODE_PERFORMANCE_GC_MAJOR]: 'major',
+  [constants.NODE_PERFORMANCE_GC_INCREMENTAL]: 'incremental',
+  [constants.NODE_PERFORMANCE_GC_WEAKCB]: 'weak callbacks',
+}
+
+/**
+ * Collects the duration of every garbage collection that was not forced by
+ * taking a sample.
+ */
+const observeGcPauses = () => {
+  /**
+   * @type {Map<string, number[]>}
+   */
+  const pauses = new Map()
+  const observer = new PerformanceObserver((list) => {
+    for (const entry of list.getEntries()) {
+      // @ts-ignore
+      const { kind, flags } = entry.detail
+      if (flags & constants.NODE_PERFORMANCE_GC_FLAGS_FORCED) {
+        continue
+      }
+      const name = GC_KINDS[kind] || `kind ${kind}`
+      const durations = pauses.get(name) || []
+      durations.push(entry.duration)
+      pauses.set(name, durations)
+    }
+  })
+  observer.observe({ entryTypes: ['gc'] })
+  return { pauses, disconnect: () => observer.disconnect() }
+}
+
+/**
+ * Edits corpus documents for a while, like an editor worker that runs for
+ * days, and samples the retained memory after full garbage collections. The
+ * samples include the caches of the tokenizer, like its interned line states,
+ * the shared caches and those of the providers. Fails when the memory at the
+ * end of the run is more than `--max-growth` megabytes above the memory after
+ * the warmup, or when the token store still holds blocks that were released.
+ *
+ * `--documents` documents stay open for the whole run and get most of the
+ * edits. After every `--reopen` edits another document is passed through the
+ * shared caches, opened, edited a few times and closed again. Samples are
+ * taken while only the long-lived documents are open, so they only differ by
+ * what leaked.
+ */
+const main = async () => {
+  const { values } = parseArgs({
+    options: {
+      duration: { type: 'string', default: '60' },
+      interval: { type: 'string', default: '2' },
+      warmup: { type: 'string', default: '10' },
+      documents: { type: 'string', default: '10' },
+      reopen: { type: 'string', default: '100' },
+      'max-growth': { type: 'string', default: '1' },
+      seed: { type: 'string', default: '1' },
+    },
+  })
+  const duration = Number(values.duration) * 1000
+  const interval = Number(values.interval) * 1000
+  const warmup = Number(values.warmup) * 1000
+  const reopen = Number(values.reopen)
+  const maxGrowth = Number(values['max-growth']) * 1024 * 1024
+  const random = createRandom(Number(values.seed))
+  // the subset is made by scripts/select-benchmark-subset.js
+  const names = await fs.readFile(subsetPath, 'utf8').then(
+    (content) => JSON.parse(content).cases,
+    async () =>
+      (await fs.readdir(casesFolder)).filter((n) => n.endsWith('.java')),
+  )
+  const texts = await Promise.all(
+    names
+      .toSorted((a, b) => hashString(a) - hashString(b))
+      .slice(0, 100)
+      .map((name) => fs.readFile(`${casesFolder}/${name}`, 'utf8')),
+  )
+  // keep at least one document for opening and closing
+  const documentCount = Math.min(Number(values.documents), texts.length - 1)
+  const gcPauses = observeGcPauses()
+  /**
+   * @type {{time: number, retained: number}[]}
+   */
+  const samples = []
+  const start = performance.now()
+  let nextSample = start + warmup
+  let editCount = 0
+  let reopenCount = 0
+  const caches = await openCaches()
+  const documents = texts
+    .slice(0, documentCount)
+    .map((text) => openDocument(caches, text))
+  while (performance.now() - start < duration) {
+    for (let i = 0; i < reopen; i++) {
+      const document = documents[Math.floor(random() * documents.length)]
+      typeAndDelete(document, random, editCount++)
+      // let the gc observer run, like a worker between messages
+      await setImmediate()
+    }
+    const transientCount = texts.length - documentCount
+    const text = texts[documentCount + (reopenCount++ % transientCount)]
+    await useCaches(caches, text, random, editCount++)
+    const document = openDocument(caches, text)
+    for (let i = 0; i < 10; i++) {
+      typeAndDelete(document, random, editCount++)
+    }
+    document.dispose()
+    const now = performance.now()
+    if (now >= nextSample) {
+      const retained = getRetainedMemory()
+      samples.push({ time: now - start, retained })
+      console.info(
+        `${((now - start) / 1000).toFixed(0).padStart(6)}s  ${formatMb(retained)} retained, ${editCount} edits`,
+      )
+      nextSample = now + interval
+    }
+  }
+  gcPauses.disconnect()
+  await caches.dispose()
+  if (samples.length < 3) {
+    throw new Error('too few samples, increase --duration or lower --interval')
+  }
+  // compare the start and the end of the run, averaged to smooth out the
+  // documents that are open at the time of a sample
+  const third = Math.max(Math.floor(samples.length / 3), 1)
+  const first = getMean(samples.slice(0, third).map((s) => s.retained))
+  const last = getMean(samples.slice(-third).map((s) => s.retained))
+  const growth = last - first
+  const minutes = (samples.at(-1).time - samples[0].time) / 60000
+  console.info(
+    `retained ${formatMb(first)} after warmup, ${formatMb(last)} at the end, ${formatMb(growth)} growth (${formatMb(growth / minutes)}/min)`,
+  )
+  const cacheStats = caches.tokenCache.getStats()
+  console.info(
+    `token cache ${cacheStats.entries} entries, ${formatMb(cacheStats.bytes)}, ${(cacheStats.hitRate * 100).toFixed(1)}% hits`,
+  )
+  console.info('gc pauses:')
+  for (const [kind, durations] of gcPauses.pauses) {
+    const columns = [
+      kind.padEnd(16),
+      `${durations.length}`.padStart(6),
+      ` p50 ${getPercentile(durations, 0.5).toFixed(2)}ms`,
+      ` p90 ${getPercentile(durations, 0.9).toFixed(2)}ms`,
+      ` p99 ${getPercentile(durations, 0.99).toFixed(2)}ms`,
+      ` max ${Math.max(...durations).toFixed(2)}ms`,
+      ` total ${durations.reduce((sum, d) => sum + d, 0).toFixed(0)}ms`,
+    ]
+    console.info(`  ${columns.join('')}`)
+  }
+  const storeStats = caches.tokenStore.getStats()
+  if (storeStats.documents > 0 || storeStats.blocks > 0) {
+    console.error(
+      `FAIL the token store holds ${storeStats.documents} documents and ${storeStats.blocks} blocks after all were released`,
+    )
+    process.exitCode = 1
+  }
+  if (growth > maxGrowth) {
+    console.error(
+      `FAIL retained memory grew by ${formatMb(growth)}, more than ${formatMb(maxGrowth)}`,
+    )
+    process.exitCode = 1
+  }
+}
+
+main()
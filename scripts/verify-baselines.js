@@ -0,0 +1,106 @@
+import { readdir } from 'node:fs/promises'
+import { availableParallelism } from 'node:os'
+import { parseArgs } from 'node:util'
+import { getManifestProblems, loadManifest } from './cases-manifest.js'
+import { casesFolder, getCaseNames } from './verify-cases.js'
+import { verifyIncremental } from './verify-incremental.js'
+import { verify } from './verify-pool.js'
+import { verifyWithTimings } from './verify-timings.js'
+import { updateBaselines } from './verify-update.js'
+
+/**
+ * Compares the tokens of the cases in test/cases with their baselines in a
+ * pool of workers. Without a mode, every selected case is compared with its
+ * text baseline, or with `--binary` with its binary baseline.
+ *
+ * - `--incremental` only runs the cases that a change could affect, see
+ *   verify-incremental.js
+ * - `--update` writes the baselines of the cases whose tokens changed, see
+ *   verify-update.js
+ * - `--timings` times every case and reports the slowest ones, see
+ *   verify-timings.js
+ *
+ * A positional argument only selects the cases whose name contains it,
+ * `--subset` only the cases of the benchmark subset and `--shard 2/4` only the
+ * second of four shards of about the same size.
+ *
+ * Except with `--update`, test/cases-manifest.json is checked as well: each
+ * verified case must have an entry with its hash and size, and the manifest
+ * must not list removed cases or duplicates that are present.
+ */
+const main = async () => {
+  const { values, positionals } = parseArgs({
+    allowPositionals: true,
+    options: {
+      workers: { type: 'string', default: String(availableParallelism()) },
+      incremental: { type: 'boolean', default: false },
+      binary: { type: 'boolean', default: false },
+      update: { type: 'boolean', default: false },
+      timings: { type: 'boolean', default: false },
+      top: { type: 'string', default: '20' },
+      runs: { type: 'string', default: '3' },
+      subset: { type: 'boolean', default: false },
+      shard: { type: 'string' },
+    },
+  })
+  const modes = [
+    values.incremental,
+    values.binary,
+    values.update,
+    values.timings,
+  ]
+  if (modes.filter(Boolean).length > 1) {
+    throw new Error(
+      'use only one of --incremental, --binary, --update and --timings',
+    )
+  }
+  const [filter = ''] = positionals
+  const names = await getCaseNames({
+    filter,
+    subset: values.subset,
+    shard: values.shard,
+  })
+  const manifest = values.update ? undefined : await loadManifest()
+  const manifestProblems = manifest
+    ? getManifestProblems(
+        manifest,
+        (await readdir(casesFolder)).filter((dirent) =>
+          dirent.endsWith('.java'),
+        ),
+      )
+    : []
+  for (const problem of manifestProblems) {
+    console.error(`FAIL test/cases-manifest.json: ${problem}`)
+  }
+  const workerCount = Number(values.workers) || 1
+  const start = performance.now()
+  let result
+  if (values.incremental) {
+    result = await verifyIncremental(names, workerCount)
+  } else if (values.update) {
+    result = await updateBaselines(names, workerCount)
+  } else if (values.timings) {
+    result = await verifyWithTimings(
+      names,
+      workerCount,
+      Number(values.top),
+      Math.max(Number(values.runs) || 1, 1),
+    )
+  } else {
+    result = {
+      ...(await verify(names, workerCount, { binary: values.binary })),
+      skipped: 0,
+    }
+  }
+  const { passed, skipped } = result
+  const failed = result.failed + manifestProblems.length
+  const time = performance.now() - start
+  console.info(
+    `${passed} passed, ${failed} failed, ${skipped} unaffected, ${result.workerCount} workers, ${time.toFixed(0)}ms`,
+  )
+  if (failed > 0) {
+    process.exitCode = 1
+  }
+}
+
+main()
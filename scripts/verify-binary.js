@@ -0,0 +1,77 @@
+import { mkdir, readFile, stat, utimes, writeFile } from 'node:fs/promises'
+import {
+  convertTextBaseline,
+  getBinaryBaselineDifference,
+  isConvertedFrom,
+  isCurrentFormat,
+} from '../src/binaryBaseline.js'
+import {
+  baselinesFolder,
+  formatDifference,
+  getBaselineName,
+  root,
+} from './verify-cases.js'
+
+const binaryBaselinesFolder = `${root}/.cache/baselines`
+
+/**
+ * @param {string} file
+ */
+const getModifiedTime = async (file) => {
+  try {
+    return (await stat(file)).mtimeMs
+  } catch {
+    return -1
+  }
+}
+
+/**
+ * Returns the binary baseline of a case. A binary baseline of the current
+ * format that is at least as new as its text baseline is used without reading
+ * the text baseline, like `make` does. An older one is checked against the
+ * hash of the text baseline and touched when it still matches, and a missing
+ * or stale one is converted again.
+ *
+ * @param {string} name
+ */
+const loadBinaryBaseline = async (name) => {
+  const baselinePath = `${baselinesFolder}/${getBaselineName(name)}`
+  const binaryPath = `${binaryBaselinesFolder}/${name.replace(/\.java$/, '.bin')}`
+  const [textTime, binaryTime] = await Promise.all([
+    getModifiedTime(baselinePath),
+    getModifiedTime(binaryPath),
+  ])
+  if (textTime === -1) {
+    return undefined
+  }
+  const bytes = binaryTime === -1 ? undefined : await readFile(binaryPath)
+  if (bytes && binaryTime >= textTime && isCurrentFormat(bytes)) {
+    return bytes
+  }
+  const expected = await readFile(baselinePath, 'utf8')
+  if (bytes && isConvertedFrom(bytes, expected)) {
+    const now = new Date()
+    await utimes(binaryPath, now, now)
+    return bytes
+  }
+  const converted = convertTextBaseline(expected)
+  await mkdir(binaryBaselinesFolder, { recursive: true })
+  await writeFile(binaryPath, converted)
+  return converted
+}
+
+/**
+ * Compares a case with its binary baseline, which stops tokenizing at the
+ * first difference.
+ *
+ * @param {string} name
+ * @param {string} text
+ */
+export const getBinaryDifference = async (name, text) => {
+  const bytes = await loadBinaryBaseline(name)
+  if (!bytes) {
+    return `missing baseline ${getBaselineName(name)}`
+  }
+  const difference = getBinaryBaselineDifference(text, bytes)
+  return difference && formatDifference(difference)
+}
@@ -0,0 +1,112 @@
+import { readdir, readFile, stat } from 'node:fs/promises'
+import path, { dirname } from 'node:path'
+import { fileURLToPath } from 'node:url'
+import { loadManifest } from './cases-manifest.js'
+
+const __dirname = dirname(fileURLToPath(import.meta.url))
+export const root = path.join(__dirname, '..')
+export const casesFolder = `${root}/test/cases`
+export const baselinesFolder = `${root}/test/baselines`
+const subsetPath = `${root}/test/benchmark-subset.json`
+
+/**
+ * @param {string} name
+ */
+export const getBaselineName = (name) => {
+  return name.replace(/\.java$/, '.txt')
+}
+
+/**
+ * @param {import('../src/baseline.js').BaselineDifference} difference
+ */
+export const formatDifference = ({
+  lineIndex,
+  tokenIndex,
+  actual,
+  expected,
+}) => {
+  return `line ${lineIndex + 1}, token ${tokenIndex + 1}: expected ${expected}, got ${actual}`
+}
+
+/**
+ * Splits the cases into shards of about the same total size, assigning the
+ * largest remaining case to the smallest shard.
+ *
+ * @param {{name: string, size: number}[]} cases
+ * @param {number} shardCount
+ */
+export const splitCases = (cases, shardCount) => {
+  const shards = Array.from({ length: shardCount }, () => ({
+    names: [],
+    size: 0,
+  }))
+  const sorted = cases.toSorted(
+    (a, b) => b.size - a.size || (a.name < b.name ? -1 : 1),
+  )
+  for (const { name, size } of sorted) {
+    let smallest = shards[0]
+    for (const shard of shards) {
+      if (shard.size < smallest.size) {
+        smallest = shard
+      }
+    }
+    smallest.names.push(name)
+    smallest.size += size
+  }
+  return shards
+}
+
+/**
+ * Returns the sizes of the cases, from the manifest where it has them, so
+ * that the shards are the same on every machine.
+ *
+ * @param {string[]} names
+ * @param {import('./cases-manifest.js').CasesManifest} [manifest]
+ */
+export const getSizes = (names, manifest) => {
+  return Promise.all(
+    names.map(async (name) => {
+      const size =
+        manifest?.cases[name]?.size ??
+        (await stat(`${casesFolder}/${name}`)).size
+      return { name, size }
+    }),
+  )
+}
+
+/**
+ * @typedef {object} CaseSelection
+ * @property {string} filter only cases whose name contains it
+ * @property {boolean} subset only the cases of the benchmark subset
+ * @property {string} [shard] only one shard of the cases, for example `2/4`
+ */
+
+/**
+ * Returns the names of the cases to verify. Duplicates that
+ * scripts/dedupe-cases.js removed are left out.
+ *
+ * @param {CaseSelection} selection
+ */
+export const getCaseNames = async ({ filter, subset, shard }) => {
+  // the subset is made by scripts/select-benchmark-subset.js
+  const dirents = subset
+    ? JSON.parse(await readFile(subsetPath, 'utf8')).cases
+    : await readdir(casesFolder)
+  const manifest = await loadManifest()
+  const names = dirents.filter(
+    (dirent) =>
+      dirent.endsWith('.java') &&
+      dirent.includes(filter) &&
+      !(manifest && dirent in manifest.duplicates),
+  )
+  if (!shard) {
+    return names
+  }
+  // for splitting a run across machines, for example --shard 2/4
+  const [index, count] = shard.split('/').map(Number)
+  if (!(index >= 1 && index <= count)) {
+    throw new Error(`invalid shard ${shard}, expected for example 1/4`)
+  }
+  const shards = splitCases(await getSizes(names, manifest), count)
+  return shards[index - 1].names
+}
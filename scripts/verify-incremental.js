@@ -0,0 +1,199 @@
+import { mkdir, readFile, stat, writeFile } from 'node:fs/promises'
+import { dirname } from 'node:path'
+import { pathToFileURL } from 'node:url'
+import { hashString } from '../src/hash.js'
+import {
+  getTokenizerRules,
+  instrumentTokenizer,
+} from '../src/tokenizerRules.js'
+import {
+  baselinesFolder,
+  casesFolder,
+  getBaselineName,
+  root,
+} from './verify-cases.js'
+import { verify } from './verify-pool.js'
+
+const tokenizerPath = `${root}/src/tokenizeJava.js`
+const cachePath = `${root}/.cache/verify-baselines.json`
+
+/**
+ * What an incremental run remembers about a case that passed. The stat keys
+ * avoid reading unchanged files, the hashes avoid re-running cases whose files
+ * were only touched.
+ *
+ * @typedef {object} CaseCacheEntry
+ * @property {string} caseStat
+ * @property {number} caseHash
+ * @property {string} baselineStat
+ * @property {number} baselineHash
+ * @property {string[]} rules the ids of the tokenizer rules the case tried
+ */
+
+/**
+ * @typedef {object} VerifyCache
+ * @property {number} restHash
+ * @property {Record<string, number>} rules the hash of each tokenizer rule
+ * @property {Record<string, CaseCacheEntry>} cases
+ */
+
+/**
+ * @param {string} file
+ */
+const getStatKey = async (file) => {
+  const { size, mtimeMs } = await stat(file)
+  return `${size}:${mtimeMs}`
+}
+
+/**
+ * @returns {Promise<VerifyCache|undefined>}
+ */
+const loadCache = async () => {
+  try {
+    return JSON.parse(await readFile(cachePath, 'utf8'))
+  } catch {
+    return undefined
+  }
+}
+
+/**
+ * Returns the ids of the rules whose source changed. When a state gains or
+ * loses a rule, the order of its rules changes, so all of its rules count as
+ * changed.
+ *
+ * @param {Record<string, number>} oldRules
+ * @param {import('../src/tokenizerRules.js').TokenizerRule[]} rules
+ */
+const getChangedRules = (oldRules, rules) => {
+  /**
+   * @type {Set<string>}
+   */
+  const changed = new Set()
+  /**
+   * @type {Set<string>}
+   */
+  const changedStates = new Set()
+  const ids = new Set(rules.map((rule) => rule.id))
+  for (const { id, state, hash } of rules) {
+    if (!(id in oldRules)) {
+      changedStates.add(state)
+    } else if (oldRules[id] !== hash) {
+      changed.add(id)
+    }
+  }
+  for (const id of Object.keys(oldRules)) {
+    if (!ids.has(id)) {
+      changedStates.add(id.split(':')[0])
+    }
+  }
+  for (const id of [...ids, ...Object.keys(oldRules)]) {
+    if (changedStates.has(id.split(':')[0])) {
+      changed.add(id)
+    }
+  }
+  return changed
+}
+
+/**
+ * Returns whether the case and its baseline are the ones that passed before.
+ * Files whose size or modification time changed are compared by hash.
+ *
+ * @param {string} name
+ * @param {CaseCacheEntry} entry
+ */
+const isUnchanged = async (name, entry) => {
+  const casePath = `${casesFolder}/${name}`
+  const baselinePath = `${baselinesFolder}/${getBaselineName(name)}`
+  try {
+    const [caseStat, baselineStat] = await Promise.all([
+      getStatKey(casePath),
+      getStatKey(baselinePath),
+    ])
+    if (caseStat === entry.caseStat && baselineStat === entry.baselineStat) {
+      return true
+    }
+    const [text, expected] = await Promise.all([
+      readFile(casePath, 'utf8'),
+      readFile(baselinePath, 'utf8'),
+    ])
+    if (
+      hashString(text) !== entry.caseHash ||
+      hashString(expected) !== entry.baselineHash
+    ) {
+      return false
+    }
+    entry.caseStat = caseStat
+    entry.baselineStat = baselineStat
+    return true
+  } catch {
+    return false
+  }
+}
+
+/**
+ * Only runs the cases that are new, changed, failed last time or tried a
+ * tokenizer rule whose source changed since the last run. Changes to the
+ * tokenizer outside of its rules run all cases.
+ *
+ * @param {string[]} names
+ * @param {number} workerCount
+ */
+export const verifyIncremental = async (names, workerCount) => {
+  const source = await readFile(tokenizerPath, 'utf8')
+  const { rules, restHash } = getTokenizerRules(source)
+  const cache = await loadCache()
+  const cases = cache && cache.restHash === restHash ? cache.cases : {}
+  const changedRules = getChangedRules(cache?.rules || {}, rules)
+  for (const [name, entry] of Object.entries(cases)) {
+    if (entry.rules.some((id) => changedRules.has(id))) {
+      delete cases[name]
+    }
+  }
+  const unchanged = await Promise.all(
+    names.map((name) => cases[name] && isUnchanged(name, cases[name])),
+  )
+  const selected = names.filter((name, i) => !unchanged[i])
+  for (const name of selected) {
+    delete cases[name]
+  }
+  const instrumented = instrumentTokenizer(source, pathToFileURL(tokenizerPath))
+  const result = await verify(
+    selected,
+    workerCount,
+    {
+      instrumentedSource: instrumented.source,
+      ruleIds: instrumented.rules.map((rule) => rule.id),
+    },
+    ({ name, caseHash, baselineHash, rules }) => {
+      cases[name] = {
+        caseStat: '',
+        caseHash,
+        baselineStat: '',
+        baselineHash,
+        rules,
+      }
+    },
+  )
+  await Promise.all(
+    selected.map(async (name) => {
+      const entry = cases[name]
+      if (entry) {
+        entry.caseStat = await getStatKey(`${casesFolder}/${name}`)
+        entry.baselineStat = await getStatKey(
+          `${baselinesFolder}/${getBaselineName(name)}`,
+        )
+      }
+    }),
+  )
+  /**
+   * @type {VerifyCache}
+   */
+  const newCache = {
+    restHash,
+    rules: Object.fromEntries(rules.map((rule) => [rule.id, rule.hash])),
+    cases,
+  }
+  await mkdir(dirname(cachePath), { recursive: true })
+  await writeFile(cachePath, JSON.stringify(newCache))
+  return { ...result, skipped: names.length - selected.length }
+}
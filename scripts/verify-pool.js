@@ -0,0 +1,81 @@
+import { Worker } from 'node:worker_threads'
+import { loadManifest } from './cases-manifest.js'
+import { getSizes, splitCases } from './verify-cases.js'
+
+const workerUrl = new URL('./verify-worker.js', import.meta.url)
+
+/**
+ * @param {string[]} names
+ * @param {number} shardCount
+ * @param {import('./cases-manifest.js').CasesManifest} [manifest]
+ */
+const getShards = async (names, shardCount, manifest) => {
+  const cases = await getSizes(names, manifest)
+  return splitCases(cases, shardCount).filter(
+    (shard) => shard.names.length > 0,
+  )
+}
+
+/**
+ * @param {object} data
+ * @param {(message: any) => void} onMessage
+ */
+const runShard = (data, onMessage) => {
+  return new Promise((resolve, reject) => {
+    let passed = 0
+    const worker = new Worker(workerUrl, { workerData: data })
+    worker.on('message', (message) => {
+      if (message.type === 'done') {
+        passed = message.passed
+      } else {
+        onMessage(message)
+      }
+    })
+    worker.on('error', reject)
+    worker.on('exit', (code) => {
+      if (code === 0) {
+        resolve(passed)
+      } else {
+        reject(new Error(`worker exited with code ${code}`))
+      }
+    })
+  })
+}
+
+/**
+ * Verifies the cases in a pool of workers, see scripts/verify-worker.js, and
+ * prints failures as they arrive. Unless baselines are updated, each worker
+ * also gets the manifest entries of its cases and fails the cases whose
+ * entry is missing or out of date.
+ *
+ * @param {string[]} names
+ * @param {number} workerCount
+ * @param {Record<string, any>} data passed to every worker
+ * @param {(message: any) => void} [onMessage] receives the other messages
+ */
+export const verify = async (names, workerCount, data, onMessage) => {
+  const manifest = await loadManifest()
+  const shards = await getShards(names, workerCount, manifest)
+  let failed = 0
+  const passedCounts = await Promise.all(
+    shards.map((shard) => {
+      const manifestEntries =
+        manifest && !data.update
+          ? shard.names.map((name) => manifest.cases[name])
+          : undefined
+      return runShard(
+        { ...data, names: shard.names, manifestEntries },
+        (message) => {
+          if (message.type === 'failure') {
+            failed++
+            console.error(`FAIL ${message.name}: ${message.message}`)
+          } else {
+            onMessage?.(message)
+          }
+        },
+      )
+    }),
+  )
+  const passed = passedCounts.reduce((total, count) => total + count, 0)
+  return { passed, failed, workerCount: shards.length }
+}
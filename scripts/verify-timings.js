@@ -0,0 +1,77 @@
+import { mkdir, writeFile } from 'node:fs/promises'
+import path, { dirname } from 'node:path'
+import { getTimingTotals, rateCaseTimings } from '../src/caseTimings.js'
+import { root } from './verify-cases.js'
+import { verify } from './verify-pool.js'
+
+const timingsPath = `${root}/.cache/timings.json`
+
+/**
+ * @param {number} time in nanoseconds
+ */
+const formatTime = (time) => {
+  return `${(time / 1e6).toFixed(3)}ms`
+}
+
+/**
+ * @param {import('../src/caseTimings.js').RatedCaseTiming} timing
+ */
+const formatTiming = (timing) => {
+  const columns = [
+    timing.nsPerChar.toFixed(1).padStart(10),
+    formatTime(timing.tokenizeTime).padStart(12),
+    formatTime(timing.compareTime).padStart(12),
+    String(timing.length).padStart(10),
+    `  ${timing.name}`,
+    timing.outlier ? ` (outlier, score ${timing.score.toFixed(1)})` : '',
+  ]
+  return columns.join('')
+}
+
+/**
+ * Verifies the cases while timing them, then writes all timings to a report
+ * and prints the cases that took the longest per character. Cases whose rate
+ * is an outlier are printed even when they are not among the slowest.
+ *
+ * @param {string[]} names
+ * @param {number} workerCount
+ * @param {number} top the number of cases to print
+ * @param {number} runs the number of times to time each case
+ */
+export const verifyWithTimings = async (names, workerCount, top, runs) => {
+  /**
+   * @type {import('../src/caseTimings.js').CaseTiming[]}
+   */
+  const timings = []
+  const result = await verify(
+    names,
+    workerCount,
+    { timings: runs },
+    (message) => {
+      if (message.type === 'timing') {
+        timings.push(message.timing)
+      }
+    },
+  )
+  const rated = rateCaseTimings(timings)
+  const totals = getTimingTotals(timings)
+  await mkdir(dirname(timingsPath), { recursive: true })
+  await writeFile(
+    timingsPath,
+    JSON.stringify({ totals, cases: rated }, null, 2) + '\n',
+  )
+  const ranked = rated.filter((timing) => timing.rated)
+  const slowest = ranked.slice(0, top)
+  const outliers = ranked.slice(top).filter((timing) => timing.outlier)
+  console.info(
+    `${'ns/char'.padStart(10)}${'tokenize'.padStart(12)}${'compare'.padStart(12)}${'chars'.padStart(10)}  case`,
+  )
+  for (const timing of [...slowest, ...outliers]) {
+    console.info(formatTiming(timing))
+  }
+  console.info(
+    `total: ${totals.nsPerChar.toFixed(1)} ns/char, tokenize ${formatTime(totals.tokenizeTime)}, compare ${formatTime(totals.compareTime)}, ${rated.filter((timing) => timing.outlier).length} outliers`,
+  )
+  console.info(`report written to ${path.relative(root, timingsPath)}`)
+  return { ...result, skipped: 0 }
+}
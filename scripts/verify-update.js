@@ -0,0 +1,41 @@
+import { verify } from './verify-pool.js'
+
+/**
+ * Writes the baselines of the cases whose tokens changed and leaves all other
+ * baselines untouched, then prints how often each token type transition
+ * occurred, for example `Text -> Numeric`.
+ *
+ * @param {string[]} names
+ * @param {number} workerCount
+ */
+export const updateBaselines = async (names, workerCount) => {
+  /**
+   * @type {Map<string, {count: number, cases: number}>}
+   */
+  const transitions = new Map()
+  let updated = 0
+  const result = await verify(
+    names,
+    workerCount,
+    { update: true },
+    (message) => {
+      if (message.type !== 'update') {
+        return
+      }
+      updated++
+      console.info(`UPDATE ${message.name}`)
+      for (const [transition, count] of message.transitions) {
+        const entry = transitions.get(transition) || { count: 0, cases: 0 }
+        entry.count += count
+        entry.cases++
+        transitions.set(transition, entry)
+      }
+    },
+  )
+  console.info(`${updated} baselines updated`)
+  const sorted = [...transitions].sort((a, b) => b[1].count - a[1].count)
+  for (const [transition, { count, cases }] of sorted) {
+    console.info(`${String(count).padStart(8)}  ${transition} (${cases} cases)`)
+  }
+  return { ...result, skipped: 0 }
+}
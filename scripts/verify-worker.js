@@ -0,0 +1,143 @@
+import { readFile, writeFile } from 'node:fs/promises'
+import { parentPort, workerData } from 'node:worker_threads'
+import {
+  getBaseline,
+  getBaselineDifference,
+  getBaselineTransitions,
+} from '../src/baseline.js'
+import { hashString } from '../src/hash.js'
+import { getEntryProblem } from './cases-manifest.js'
+import { getBinaryDifference } from './verify-binary.js'
+import {
+  baselinesFolder,
+  casesFolder,
+  formatDifference,
+  getBaselineName,
+} from './verify-cases.js'
+
+/**
+ * Tokenizes the cases of this worker's shard and posts each failure as soon
+ * as it is found, followed by the number of passed cases. With an
+ * instrumented tokenizer, each passed case is posted as well, with its hashes
+ * and the rules it tried. When updating, the baselines of failing cases are
+ * written instead, and posted with their token type transitions. With
+ * timings, the time to tokenize and to compare each case is posted as well,
+ * the fastest of `timings` runs, so that garbage collections and compilation
+ * of the tokenizer are mostly left out. With manifest entries, a case whose
+ * entry does not match its text fails before it is tokenized.
+ */
+const runWorker = async () => {
+  const {
+    names,
+    manifestEntries,
+    instrumentedSource,
+    ruleIds,
+    binary,
+    update,
+    timings,
+  } = workerData
+  const tokenizer = instrumentedSource
+    ? await import(
+        `data:text/javascript;base64,${Buffer.from(instrumentedSource).toString('base64')}`
+      )
+    : undefined
+  let passed = 0
+  for (let i = 0; i < names.length; i++) {
+    const name = names[i]
+    const text = await readFile(`${casesFolder}/${name}`, 'utf8')
+    const entryProblem =
+      manifestEntries && getEntryProblem(manifestEntries[i], text)
+    if (entryProblem) {
+      parentPort.postMessage({ type: 'failure', name, message: entryProblem })
+      continue
+    }
+    if (binary) {
+      const message = await getBinaryDifference(name, text)
+      if (message) {
+        parentPort.postMessage({ type: 'failure', name, message })
+      } else {
+        passed++
+      }
+      continue
+    }
+    const baselineName = getBaselineName(name)
+    let expected
+    try {
+      expected = await readFile(`${baselinesFolder}/${baselineName}`, 'utf8')
+    } catch {
+      if (!update) {
+        parentPort.postMessage({
+          type: 'failure',
+          name,
+          message: `missing baseline ${baselineName}`,
+        })
+        continue
+      }
+      expected = undefined
+    }
+    tokenizer?.coveredRules.fill(0)
+    let actual = ''
+    let tokenizeTime = Infinity
+    for (let run = 0; run < (timings || 1); run++) {
+      const tokenizeStart = performance.now()
+      actual = getBaseline(text, tokenizer)
+      tokenizeTime = Math.min(tokenizeTime, performance.now() - tokenizeStart)
+    }
+    if (
+      update &&
+      (expected === undefined || getBaselineDifference(actual, expected))
+    ) {
+      // keep the line ending of the existing baseline
+      const newline = expected?.endsWith('\n') ? '\n' : ''
+      await writeFile(`${baselinesFolder}/${baselineName}`, actual + newline)
+      parentPort.postMessage({
+        type: 'update',
+        name,
+        transitions:
+          expected === undefined
+            ? [['(new baseline)', 1]]
+            : [...getBaselineTransitions(expected, actual)],
+      })
+      continue
+    }
+    let difference
+    let compareTime = Infinity
+    for (let run = 0; run < (timings || 1); run++) {
+      const compareStart = performance.now()
+      difference = getBaselineDifference(actual, expected)
+      compareTime = Math.min(compareTime, performance.now() - compareStart)
+    }
+    if (timings) {
+      parentPort.postMessage({
+        type: 'timing',
+        timing: {
+          name,
+          length: text.length,
+          tokenizeTime: Math.round(tokenizeTime * 1e6),
+          compareTime: Math.round(compareTime * 1e6),
+        },
+      })
+    }
+    if (difference) {
+      parentPort.postMessage({
+        type: 'failure',
+        name,
+        message: formatDifference(difference),
+      })
+      continue
+    }
+    passed++
+    if (tokenizer) {
+      parentPort.postMessage({
+        type: 'pass',
+        name,
+        caseHash: hashString(text),
+        baselineHash: hashString(expected),
+        rules: ruleIds.filter((id, i) => tokenizer.coveredRules[i] === 1),
+      })
+    }
+  }
+  parentPort.postMessage({ type: 'done', passed })
+}
+
+runWorker()
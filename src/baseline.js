@@ -0,0 +1,157 @@
+import * as TokenizeJava from './tokenizeJava.js'
+
+/**
+ * Returns the baseline of a test case in the format of
+ * test-syntax-highlighting: the name of each token type on its own line, with
+ * a `NewLine` entry between the lines of the case.
+ *
+ * @param {string} text
+ * @param {typeof TokenizeJava} [tokenizer]
+ */
+export const getBaseline = (text, tokenizer = TokenizeJava) => {
+  /**
+   * @type {string[]}
+   */
+  const names = []
+  let lineState = tokenizer.initialLineState
+  const lines = text.split('\n')
+  for (let i = 0; i < lines.length; i++) {
+    if (i > 0) {
+      names.push('NewLine')
+    }
+    lineState = tokenizer.tokenizeLine(lines[i], lineState)
+    const { tokens } = lineState
+    for (let j = 0; j < tokens.length; j += 2) {
+      names.push(tokenizer.TokenMap[tokens[j]])
+    }
+  }
+  return names.join('\n')
+}
+
+/**
+ * @typedef {object} BaselineDifference
+ * @property {number} lineIndex the line of the case
+ * @property {number} tokenIndex the index of the token in that line
+ * @property {string} actual
+ * @property {string} expected
+ */
+
+/**
+ * Returns where an actual baseline first differs from the expected one, or
+ * undefined when they are equal. A trailing newline in the expected baseline
+ * is ignored.
+ *
+ * @param {string} actual
+ * @param {string} expected
+ * @returns {BaselineDifference|undefined}
+ */
+export const getBaselineDifference = (actual, expected) => {
+  if (expected.endsWith('\n')) {
+    expected = expected.slice(0, -1)
+  }
+  if (actual === expected) {
+    return undefined
+  }
+  const actualNames = actual.split('\n')
+  const expectedNames = expected.split('\n')
+  let lineIndex = 0
+  let tokenIndex = 0
+  for (let i = 0; ; i++) {
+    if (actualNames[i] !== expectedNames[i]) {
+      return {
+        lineIndex,
+        tokenIndex,
+        actual: actualNames[i] ?? '<end>',
+        expected: expectedNames[i] ?? '<end>',
+      }
+    }
+    if (actualNames[i] === 'NewLine') {
+      lineIndex++
+      tokenIndex = 0
+    } else {
+      tokenIndex++
+    }
+  }
+}
+
+/**
+ * @param {string} baseline
+ */
+const splitLines = (baseline) => {
+  /**
+   * @type {string[][]}
+   */
+  const lines = [[]]
+  if (baseline === '') {
+    return lines
+  }
+  for (const name of baseline.split('\n')) {
+    if (name === 'NewLine') {
+      lines.push([])
+    } else {
+      lines.at(-1).push(name)
+    }
+  }
+  return lines
+}
+
+/**
+ * Counts how the token types of a case changed between two baselines, for
+ * example `Text -> Numeric`. Lines that kept their number of tokens are
+ * compared token by token. For other lines the tokens between the common
+ * start and end of the line make up one transition, like
+ * `Text -> Punctuation VariableName`.
+ *
+ * @param {string} oldBaseline
+ * @param {string} newBaseline
+ * @returns {Map<string, number>}
+ */
+export const getBaselineTransitions = (oldBaseline, newBaseline) => {
+  /**
+   * @type {Map<string, number>}
+   */
+  const transitions = new Map()
+  /**
+   * @param {string} transition
+   */
+  const add = (transition) => {
+    transitions.set(transition, (transitions.get(transition) || 0) + 1)
+  }
+  const oldLines = splitLines(oldBaseline.replace(/\n$/, ''))
+  const newLines = splitLines(newBaseline.replace(/\n$/, ''))
+  const lineCount = Math.max(oldLines.length, newLines.length)
+  for (let i = 0; i < lineCount; i++) {
+    const oldNames = oldLines[i] || []
+    const newNames = newLines[i] || []
+    if (oldNames.length === newNames.length) {
+      for (let j = 0; j < oldNames.length; j++) {
+        if (oldNames[j] !== newNames[j]) {
+          add(`${oldNames[j]} -> ${newNames[j]}`)
+        }
+      }
+      continue
+    }
+    let start = 0
+    while (
+      start < oldNames.length &&
+      start < newNames.length &&
+      oldNames[start] === newNames[start]
+    ) {
+      start++
+    }
+    let oldEnd = oldNames.length
+    let newEnd = newNames.length
+    while (
+      oldEnd > start &&
+      newEnd > start &&
+      oldNames[oldEnd - 1] === newNames[newEnd - 1]
+    ) {
+      oldEnd--
+      newEnd--
+    }
+    const from = oldNames.slice(start, oldEnd).join(' ') || '(nothing)'
+    const to = newNames.slice(start, newEnd).join(' ') || '(nothing)'
+    add(`${from} -> ${to}`)
+  }
+  return transitions
+}
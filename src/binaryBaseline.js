@@ -0,0 +1,217 @@
+import { hashString } from './hash.js'
+import * as TokenizeJava from './tokenizeJava.js'
+
+/**
+ * Layout:
+ *
+ * - header, little-endian uint32 values: magic, format version, the hash of
+ *   the text baseline it was converted from, token count, byte length of the
+ *   name table
+ * - the name table: the distinct token type names of the baseline, utf-8
+ *   encoded and separated by newlines
+ * - one byte per token: its index in the name table
+ *
+ * Like the text baselines, lines are separated by a `NewLine` token.
+ */
+const MAGIC = 0x424c424a
+const FORMAT_VERSION = 2
+const HEADER_LENGTH = 20
+const MAX_NAME_COUNT = 256
+
+/**
+ * @typedef {object} BinaryBaseline
+ * @property {number} sourceHash the hash of the text baseline, 0 when it was
+ * not converted from one
+ * @property {string[]} names the name table
+ * @property {Uint8Array} ids the index in the name table of each token
+ */
+
+const encoder = new TextEncoder()
+const decoder = new TextDecoder()
+
+/**
+ * @param {readonly string[]} tokenNames
+ * @param {number} [sourceHash]
+ */
+export const encodeBinaryBaseline = (tokenNames, sourceHash = 0) => {
+  /**
+   * @type {Map<string, number>}
+   */
+  const ids = new Map()
+  const bytes = new Uint8Array(tokenNames.length)
+  for (let i = 0; i < tokenNames.length; i++) {
+    const name = tokenNames[i]
+    let id = ids.get(name)
+    if (id === undefined) {
+      id = ids.size
+      if (id === MAX_NAME_COUNT) {
+        throw new Error(`more than ${MAX_NAME_COUNT} token names`)
+      }
+      ids.set(name, id)
+    }
+    bytes[i] = id
+  }
+  const nameTable = encoder.encode([...ids.keys()].join('\n'))
+  const result = new Uint8Array(HEADER_LENGTH + nameTable.length + bytes.length)
+  const view = new DataView(result.buffer)
+  view.setUint32(0, MAGIC, true)
+  view.setUint32(4, FORMAT_VERSION, true)
+  view.setUint32(8, sourceHash, true)
+  view.setUint32(12, tokenNames.length, true)
+  view.setUint32(16, nameTable.length, true)
+  result.set(nameTable, HEADER_LENGTH)
+  result.set(bytes, HEADER_LENGTH + nameTable.length)
+  return result
+}
+
+/**
+ * Converts a text baseline, with one token type name per line. The hash of
+ * the text is stored with it, see `isConvertedFrom`.
+ *
+ * @param {string} text
+ */
+export const convertTextBaseline = (text) => {
+  const sourceHash = hashString(text)
+  if (text.endsWith('\n')) {
+    text = text.slice(0, -1)
+  }
+  return encodeBinaryBaseline(text === '' ? [] : text.split('\n'), sourceHash)
+}
+
+/**
+ * Returns whether the bytes start with the header of the current format
+ * version.
+ *
+ * @param {Uint8Array} bytes
+ */
+export const isCurrentFormat = (bytes) => {
+  if (bytes.byteLength < HEADER_LENGTH) {
+    return false
+  }
+  const view = new DataView(bytes.buffer, bytes.byteOffset, bytes.byteLength)
+  return (
+    view.getUint32(0, true) === MAGIC &&
+    view.getUint32(4, true) === FORMAT_VERSION
+  )
+}
+
+/**
+ * Returns whether a binary baseline was converted from the given text
+ * baseline, so that binary baselines that are older than their text
+ * baseline are not compared against. Binary baselines of another format
+ * version never match.
+ *
+ * @param {Uint8Array} bytes
+ * @param {string} text
+ */
+export const isConvertedFrom = (bytes, text) => {
+  if (!isCurrentFormat(bytes)) {
+    return false
+  }
+  const view = new DataView(bytes.buffer, bytes.byteOffset, bytes.byteLength)
+  return view.getUint32(8, true) === hashString(text)
+}
+
+/**
+ * @param {Uint8Array} bytes
+ * @returns {BinaryBaseline}
+ */
+export const decodeBinaryBaseline = (bytes) => {
+  if (bytes.byteLength < HEADER_LENGTH) {
+    throw new Error('binary baseline is too short')
+  }
+  const view = new DataView(bytes.buffer, bytes.byteOffset, bytes.byteLength)
+  const tokenCount = view.getUint32(12, true)
+  const nameTableLength = view.getUint32(16, true)
+  if (
+    view.getUint32(0, true) !== MAGIC ||
+    view.getUint32(4, true) !== FORMAT_VERSION ||
+    bytes.byteLength !== HEADER_LENGTH + nameTableLength + tokenCount
+  ) {
+    throw new Error('invalid binary baseline')
+  }
+  const nameTable = decoder.decode(
+    bytes.subarray(HEADER_LENGTH, HEADER_LENGTH + nameTableLength),
+  )
+  return {
+    sourceHash: view.getUint32(8, true),
+    names: nameTable === '' ? [] : nameTable.split('\n'),
+    ids: bytes.subarray(HEADER_LENGTH + nameTableLength),
+  }
+}
+
+/**
+ * Tokenizes the case and compares each token with the binary baseline as it
+ * goes, so that no names are built and tokenizing stops at the first
+ * mismatch. Returns where they first differ, in the form of
+ * `getBaselineDifference`, or undefined when they are equal.
+ *
+ * @param {string} text
+ * @param {Uint8Array} bytes
+ * @param {typeof TokenizeJava} [tokenizer]
+ * @returns {import('./baseline.js').BaselineDifference|undefined}
+ */
+export const getBinaryBaselineDifference = (
+  text,
+  bytes,
+  tokenizer = TokenizeJava,
+) => {
+  const { names, ids } = decodeBinaryBaseline(bytes)
+  const { TokenMap } = tokenizer
+  // the id of each token type in this baseline, -1 when it does not occur
+  /**
+   * @type {Map<number, number>}
+   */
+  const typeIds = new Map()
+  /**
+   * @param {number} type
+   */
+  const getTypeId = (type) => {
+    let id = typeIds.get(type)
+    if (id === undefined) {
+      id = names.indexOf(TokenMap[type])
+      typeIds.set(type, id)
+    }
+    return id
+  }
+  const newLineId = names.indexOf('NewLine')
+  /**
+   * @param {number} index
+   * @param {number} lineIndex
+   * @param {number} tokenIndex
+   * @param {string} actual
+   */
+  const getDifference = (index, lineIndex, tokenIndex, actual) => {
+    return {
+      lineIndex,
+      tokenIndex,
+      actual,
+      expected: index < ids.length ? names[ids[index]] : '<end>',
+    }
+  }
+  let index = 0
+  let tokenCount = 0
+  let lineState = tokenizer.initialLineState
+  const lines = text.split('\n')
+  for (let i = 0; i < lines.length; i++) {
+    if (i > 0) {
+      if (index >= ids.length || ids[index] !== newLineId) {
+        return getDifference(index, i - 1, tokenCount, 'NewLine')
+      }
+      index++
+    }
+    lineState = tokenizer.tokenizeLine(lines[i], lineState)
+    const { tokens } = lineState
+    tokenCount = tokens.length / 2
+    for (let j = 0; j < tokens.length; j += 2) {
+      if (index >= ids.length || ids[index] !== getTypeId(tokens[j])) {
+        return getDifference(index, i, j / 2, TokenMap[tokens[j]])
+      }
+      index++
+    }
+  }
+  if (index < ids.length) {
+    return getDifference(index, lines.length - 1, tokenCount, '<end>')
+  }
+  return undefined
+}
@@ -0,0 +1,413 @@
+import { getLineBrackets } from './getLineBrackets.js'
+
+/**
+ * A node of an implicit treap with one node per line. Every node summarizes
+ * the bracket depth of its subtree, which allows finding the line where the
+ * depth first drops to a given value in logarithmic time.
+ *
+ * @typedef {object} BracketNode
+ * @property {number[]} brackets the brackets of the line, see `getLineBrackets`
+ * @property {number} delta the depth change over the line
+ * @property {number} minDepth the lowest depth within the line, relative to its start
+ * @property {number} priority
+ * @property {BracketNode|undefined} left
+ * @property {BracketNode|undefined} right
+ * @property {number} size the number of lines in the subtree
+ * @property {number} sum the depth change over the subtree
+ * @property {number} min the lowest depth within the subtree, relative to its start
+ */
+
+/**
+ * @typedef {object} BracketPosition
+ * @property {number} lineIndex
+ * @property {number} column
+ */
+
+/**
+ * @typedef {object} BracketPair
+ * @property {BracketPosition} open
+ * @property {BracketPosition|undefined} close undefined when the bracket is not closed
+ * @property {boolean} isMatched whether both brackets are of the same kind
+ */
+
+/**
+ * @param {number[]} brackets
+ * @returns {BracketNode}
+ */
+const createNode = (brackets) => {
+  let depth = 0
+  let minDepth = 0
+  for (let i = 1; i < brackets.length; i += 2) {
+    depth += Math.sign(brackets[i])
+    minDepth = Math.min(minDepth, depth)
+  }
+  return {
+    brackets,
+    delta: depth,
+    minDepth,
+    priority: Math.random(),
+    left: undefined,
+    right: undefined,
+    size: 1,
+    sum: depth,
+    min: minDepth,
+  }
+}
+
+/**
+ * @param {BracketNode} node
+ */
+const update = (node) => {
+  const { left, right } = node
+  const leftSum = left ? left.sum : 0
+  let min = left ? left.min : 0
+  min = Math.min(min, leftSum + node.minDepth)
+  if (right) {
+    min = Math.min(min, leftSum + node.delta + right.min)
+  }
+  node.size = 1 + (left ? left.size : 0) + (right ? right.size : 0)
+  node.sum = leftSum + node.delta + (right ? right.sum : 0)
+  node.min = min
+  return node
+}
+
+/**
+ * @param {BracketNode|undefined} a
+ * @param {BracketNode|undefined} b
+ * @returns {BracketNode|undefined}
+ */
+const merge = (a, b) => {
+  if (!a) {
+    return b
+  }
+  if (!b) {
+    return a
+  }
+  if (a.priority > b.priority) {
+    a.right = merge(a.right, b)
+    return update(a)
+  }
+  b.left = merge(a, b.left)
+  return update(b)
+}
+
+/**
+ * Splits off the first `count` lines.
+ *
+ * @param {BracketNode|undefined} node
+ * @param {number} count
+ * @returns {[BracketNode|undefined, BracketNode|undefined]}
+ */
+const split = (node, count) => {
+  if (!node) {
+    return [undefined, undefined]
+  }
+  const leftSize = node.left ? node.left.size : 0
+  if (count <= leftSize) {
+    const [first, second] = split(node.left, count)
+    node.left = second
+    return [first, update(node)]
+  }
+  const [first, second] = split(node.right, count - leftSize - 1)
+  node.right = first
+  return [update(node), second]
+}
+
+/**
+ * @param {readonly number[][]} linesBrackets
+ */
+const build = (linesBrackets) => {
+  /**
+   * @type {BracketNode|undefined}
+   */
+  let root
+  for (const brackets of linesBrackets) {
+    root = merge(root, createNode(brackets))
+  }
+  return root
+}
+
+/**
+ * Returns the first line at or after `from` whose depth drops to `target` or
+ * below, or -1.
+ *
+ * @param {BracketNode|undefined} node
+ * @param {number} from
+ * @param {number} target
+ * @param {number} baseIndex
+ * @param {number} baseDepth
+ * @returns {number}
+ */
+const findFirst = (node, from, target, baseIndex, baseDepth) => {
+  if (!node || baseIndex + node.size <= from || baseDepth + node.min > target) {
+    return -1
+  }
+  const found = findFirst(node.left, from, target, baseIndex, baseDepth)
+  if (found !== -1) {
+    return found
+  }
+  const index = baseIndex + (node.left ? node.left.size : 0)
+  const depth = baseDepth + (node.left ? node.left.sum : 0)
+  if (index >= from && depth + node.minDepth <= target) {
+    return index
+  }
+  return findFirst(node.right, from, target, index + 1, depth + node.delta)
+}
+
+/**
+ * Returns the last line at or before `to` whose depth drops to `target` or
+ * below, or -1.
+ *
+ * @param {BracketNode|undefined} node
+ * @param {number} to
+ * @param {number} target
+ * @param {number} baseIndex
+ * @param {number} baseDepth
+ * @returns {number}
+ */
+const findLast = (node, to, target, baseIndex, baseDepth) => {
+  if (!node || baseIndex > to || baseDepth + node.min > target) {
+    return -1
+  }
+  const index = baseIndex + (node.left ? node.left.size : 0)
+  const depth = baseDepth + (node.left ? node.left.sum : 0)
+  const found = findLast(node.right, to, target, index + 1, depth + node.delta)
+  if (found !== -1) {
+    return found
+  }
+  if (index <= to && depth + node.minDepth <= target) {
+    return index
+  }
+  return findLast(node.left, to, target, baseIndex, baseDepth)
+}
+
+/**
+ * Returns the node of a line and the depth at the start of that line.
+ *
+ * @param {BracketNode|undefined} root
+ * @param {number} lineIndex
+ */
+const getLine = (root, lineIndex) => {
+  let node = root
+  let depth = 0
+  while (node) {
+    const leftSize = node.left ? node.left.size : 0
+    if (lineIndex < leftSize) {
+      node = node.left
+    } else {
+      depth += node.left ? node.left.sum : 0
+      if (lineIndex === leftSize) {
+        return { node, depth }
+      }
+      depth += node.delta
+      lineIndex -= leftSize + 1
+      node = node.right
+    }
+  }
+  return undefined
+}
+
+/**
+ * Maintains the brackets of a document in a balanced tree and answers
+ * matching bracket and enclosing pair queries in logarithmic time. Brackets
+ * are taken from punctuation tokens, so brackets in strings and comments are
+ * ignored. The tree is updated with the lines that the document tokenizer
+ * re-tokenizes.
+ *
+ * @param {ReturnType<typeof import('./documentTokenizer.js').createDocumentTokenizer>} documentTokenizer
+ */
+export const createBracketIndex = (documentTokenizer) => {
+  /**
+   * @param {number} start
+   * @param {number} end
+   */
+  const getLinesBrackets = (start, end) => {
+    const linesBrackets = []
+    for (let i = start; i < end; i++) {
+      linesBrackets.push(
+        getLineBrackets(
+          documentTokenizer.getLine(i),
+          documentTokenizer.getLineTokens(i),
+        ),
+      )
+    }
+    return linesBrackets
+  }
+
+  let root = build(getLinesBrackets(0, documentTokenizer.getLineCount()))
+
+  const dispose = documentTokenizer.onDidTokenize(
+    ({ startLine, oldEndLine, newEndLine }) => {
+      const [before, rest] = split(root, startLine)
+      const [, after] = split(rest, oldEndLine - startLine)
+      const inserted = build(getLinesBrackets(startLine, newEndLine))
+      root = merge(merge(before, inserted), after)
+    },
+  )
+
+  /**
+   * Finds the closing bracket where the depth first drops to `target` after
+   * the given bracket.
+   *
+   * @param {number} lineIndex
+   * @param {number} bracketIndex
+   * @param {number} target
+   * @returns {BracketPosition|undefined}
+   */
+  const findClose = (lineIndex, bracketIndex, target) => {
+    const line = getLine(root, lineIndex)
+    let depth = line.depth
+    const { brackets } = line.node
+    for (let i = 0; i < brackets.length; i += 2) {
+      depth += Math.sign(brackets[i + 1])
+      if (i > bracketIndex && depth <= target) {
+        return { lineIndex, column: brackets[i] }
+      }
+    }
+    const found = findFirst(root, lineIndex + 1, target, 0, 0)
+    if (found === -1) {
+      return undefined
+    }
+    const next = getLine(root, found)
+    depth = next.depth
+    for (let i = 0; i < next.node.brackets.length; i += 2) {
+      depth += Math.sign(next.node.brackets[i + 1])
+      if (depth <= target) {
+        return { lineIndex: found, column: next.node.brackets[i] }
+      }
+    }
+    return undefined
+  }
+
+  /**
+   * Finds the opening bracket before the given bracket (or before the end of
+   * the line when `bracketIndex` is past the last bracket) where the depth
+   * before the bracket is `target` or below.
+   *
+   * @param {number} lineIndex
+   * @param {number} bracketIndex
+   * @param {number} target
+   * @returns {BracketPosition|undefined}
+   */
+  const findOpen = (lineIndex, bracketIndex, target) => {
+    const line = getLine(root, lineIndex)
+    const { brackets } = line.node
+    let depth = line.depth
+    for (let i = 0; i < bracketIndex; i += 2) {
+      depth += Math.sign(brackets[i + 1])
+    }
+    for (let i = bracketIndex - 2; i >= 0; i -= 2) {
+      depth -= Math.sign(brackets[i + 1])
+      if (depth <= target) {
+        return { lineIndex, column: brackets[i] }
+      }
+    }
+    const found = findLast(root, lineIndex - 1, target, 0, 0)
+    if (found === -1) {
+      return undefined
+    }
+    const previous = getLine(root, found)
+    const previousBrackets = previous.node.brackets
+    depth = previous.depth + previous.node.delta
+    for (let i = previousBrackets.length - 2; i >= 0; i -= 2) {
+      depth -= Math.sign(previousBrackets[i + 1])
+      if (depth <= target) {
+        return { lineIndex: found, column: previousBrackets[i] }
+      }
+    }
+    return undefined
+  }
+
+  /**
+   * @param {BracketPosition} open
+   * @param {BracketPosition|undefined} close
+   * @returns {BracketPair}
+   */
+  const createPair = (open, close) => {
+    if (!close) {
+      return { open, close, isMatched: false }
+    }
+    const openChar = documentTokenizer.getLine(open.lineIndex)[open.column]
+    const closeChar = documentTokenizer.getLine(close.lineIndex)[close.column]
+    return {
+      open,
+      close,
+      isMatched: '([{'.indexOf(openChar) === ')]}'.indexOf(closeChar),
+    }
+  }
+
+  /**
+   * Returns the pair of the bracket at the given position, or undefined when
+   * there is no bracket token at that position.
+   *
+   * @param {number} lineIndex
+   * @param {number} column
+   * @returns {BracketPair|undefined}
+   */
+  const findMatchingBracket = (lineIndex, column) => {
+    const line = getLine(root, lineIndex)
+    if (!line) {
+      return undefined
+    }
+    const { brackets } = line.node
+    let depth = line.depth
+    for (let i = 0; i < brackets.length; i += 2) {
+      if (brackets[i] === column) {
+        const kind = brackets[i + 1]
+        if (kind > 0) {
+          return createPair(
+            { lineIndex, column },
+            findClose(lineIndex, i, depth),
+          )
+        }
+        const open = findOpen(lineIndex, i, depth - 1)
+        if (!open) {
+          return undefined
+        }
+        return createPair(open, { lineIndex, column })
+      }
+      depth += Math.sign(brackets[i + 1])
+    }
+    return undefined
+  }
+
+  /**
+   * Returns the innermost pair that contains the given position.
+   *
+   * @param {number} lineIndex
+   * @param {number} column
+   * @returns {BracketPair|undefined}
+   */
+  const findEnclosingPair = (lineIndex, column) => {
+    const line = getLine(root, lineIndex)
+    if (!line) {
+      return undefined
+    }
+    const { brackets } = line.node
+    let depth = line.depth
+    let bracketIndex = 0
+    while (bracketIndex < brackets.length && brackets[bracketIndex] < column) {
+      depth += Math.sign(brackets[bracketIndex + 1])
+      bracketIndex += 2
+    }
+    const open = findOpen(lineIndex, bracketIndex, depth - 1)
+    if (!open) {
+      return undefined
+    }
+    const openLine = getLine(root, open.lineIndex)
+    const openBrackets = openLine.node.brackets
+    let openDepth = openLine.depth
+    let openIndex = 0
+    while (openBrackets[openIndex] !== open.column) {
+      openDepth += Math.sign(openBrackets[openIndex + 1])
+      openIndex += 2
+    }
+    return createPair(open, findClose(open.lineIndex, openIndex, openDepth))
+  }
+
+  return {
+    findMatchingBracket,
+    findEnclosingPair,
+    dispose,
+  }
+}
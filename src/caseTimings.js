@@ -0,0 +1,95 @@
+/**
+ * @typedef {object} CaseTiming
+ * @property {string} name
+ * @property {number} length the number of characters of the case
+ * @property {number} tokenizeTime in nanoseconds
+ * @property {number} compareTime in nanoseconds
+ */
+
+/**
+ * @typedef {object} CaseRate
+ * @property {number} nsPerChar the tokenize time per character
+ * @property {boolean} rated whether the case is long enough to be compared
+ * with the others
+ * @property {number} score how far the rate is above the usual rate
+ * @property {boolean} outlier
+ *
+ * @typedef {CaseTiming & CaseRate} RatedCaseTiming
+ */
+
+// the time of shorter cases is mostly the overhead of each call
+const MIN_RATED_LENGTH = 1000
+// the usual cutoff for the modified z-score of Iglewicz and Hoaglin
+const OUTLIER_SCORE = 3.5
+
+/**
+ * @param {readonly number[]} sorted
+ */
+const getMedian = (sorted) => {
+  if (sorted.length === 0) {
+    return 0
+  }
+  const middle = sorted.length >> 1
+  return sorted.length % 2 === 1
+    ? sorted[middle]
+    : (sorted[middle - 1] + sorted[middle]) / 2
+}
+
+/**
+ * Rates the tokenize time of each case in nanoseconds per character. Cases
+ * with fewer than 1000 characters are not rated. A rated case is an outlier
+ * when its rate is far above the rate of the others, measured with the median
+ * absolute deviation so that the outliers themselves do not hide each other.
+ * Slow cases like that are candidates for regular expressions that backtrack.
+ * The rates are compared on a log scale, because they are skewed towards slow
+ * cases.
+ *
+ * @param {readonly CaseTiming[]} timings
+ * @returns {RatedCaseTiming[]} sorted by rate, slowest first
+ */
+export const rateCaseTimings = (timings) => {
+  const rated = timings.map((timing) => ({
+    ...timing,
+    nsPerChar: timing.tokenizeTime / Math.max(timing.length, 1),
+    rated: timing.length >= MIN_RATED_LENGTH,
+    score: 0,
+    outlier: false,
+  }))
+  const logs = rated
+    .filter((timing) => timing.rated)
+    .map((timing) => Math.log(timing.nsPerChar))
+    .sort((a, b) => a - b)
+  const median = getMedian(logs)
+  const deviation = getMedian(
+    logs.map((log) => Math.abs(log - median)).sort((a, b) => a - b),
+  )
+  for (const timing of rated) {
+    if (!timing.rated || deviation === 0) {
+      continue
+    }
+    timing.score = (0.6745 * (Math.log(timing.nsPerChar) - median)) / deviation
+    timing.outlier = timing.score > OUTLIER_SCORE
+  }
+  return rated.sort((a, b) => b.nsPerChar - a.nsPerChar)
+}
+
+/**
+ * @param {readonly CaseTiming[]} timings
+ */
+export const getTimingTotals = (timings) => {
+  let length = 0
+  let tokenizeTime = 0
+  let compareTime = 0
+  for (const timing of timings) {
+    length += timing.length
+    tokenizeTime += timing.tokenizeTime
+    compareTime += timing.compareTime
+  }
+  return {
+    cases: timings.length,
+    length,
+    tokenizeTime,
+    compareTime,
+    nsPerChar: tokenizeTime / Math.max(length, 1),
+  }
+}
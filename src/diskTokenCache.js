@@ -0,0 +1,242 @@
+import { hashString } from './hash.js'
+import * as TokenizeJava from './tokenizeJava.js'
+
+/**
+ * The subset of `node:fs/promises` that the disk cache needs.
+ *
+ * @typedef {object} DiskTokenCacheFileSystem
+ * @property {(path: string) => Promise<Uint8Array>} readFile
+ * @property {(path: string, data: Uint8Array) => Promise<void>} writeFile
+ * @property {(path: string, options: { recursive: boolean }) => Promise<any>} mkdir
+ * @property {(oldPath: string, newPath: string) => Promise<void>} rename
+ * @property {(path: string, options: { force: boolean }) => Promise<void>} rm
+ */
+
+/**
+ * @typedef {object} CachedTokens
+ * @property {any[]} states the state at the end of each line
+ * @property {ArrayLike<number>[]} tokens the tokens of each line
+ */
+
+const MAGIC = 0x314b544a
+const FORMAT_VERSION = 2
+const HEADER_LENGTH = 8
+const CONTENT_HASH_SEED = 0x9747b28c
+
+/**
+ * Counts the temporary files written by this module, so that saves of the
+ * same text in the same millisecond do not write to the same file.
+ */
+let tmpCount = 0
+
+/**
+ * @param {string} text
+ */
+const getContentHashes = (text) => {
+  return [hashString(text), hashString(text, CONTENT_HASH_SEED), text.length]
+}
+
+/**
+ * Hashes the source of the tokenizer, so that cache entries written by an
+ * older tokenizer are not reused.
+ *
+ * @param {string} source
+ */
+export const getTokenizerHash = (source) => {
+  return hashString(source)
+}
+
+/**
+ * Layout, in native-endian uint32 values:
+ *
+ * - header: magic, format version, tokenizer hash, two content hashes,
+ *   content length, line count, token data length
+ * - the end state of each line
+ * - the end offset of each line in the token data
+ * - the token data, as type and length pairs
+ *
+ * @param {string} text
+ * @param {number} tokenizerHash
+ * @param {CachedTokens} cachedTokens
+ */
+export const serializeTokens = (text, tokenizerHash, { states, tokens }) => {
+  const lineCount = states.length
+  let tokenDataLength = 0
+  for (const lineTokens of tokens) {
+    tokenDataLength += lineTokens.length
+  }
+  const data = new Uint32Array(HEADER_LENGTH + lineCount * 2 + tokenDataLength)
+  const [hash1, hash2, length] = getContentHashes(text)
+  data[0] = MAGIC
+  data[1] = FORMAT_VERSION
+  data[2] = tokenizerHash
+  data[3] = hash1
+  data[4] = hash2
+  data[5] = length
+  data[6] = lineCount
+  data[7] = tokenDataLength
+  const lineEndsOffset = HEADER_LENGTH + lineCount
+  let offset = HEADER_LENGTH + lineCount * 2
+  for (let i = 0; i < lineCount; i++) {
+    data[HEADER_LENGTH + i] = TokenizeJava.getPackedLineState(states[i])
+    const lineTokens = tokens[i]
+    for (let j = 0; j < lineTokens.length; j++) {
+      data[offset++] = lineTokens[j]
+    }
+    data[lineEndsOffset + i] = offset
+  }
+  return new Uint8Array(data.buffer)
+}
+
+/**
+ * Returns undefined when the data does not belong to the given text and
+ * tokenizer, or when it is truncated or corrupt, so that it is tokenized
+ * again. Data written on a machine with a different byte order has a
+ * different magic number. Token arrays are views into the given buffer.
+ *
+ * @param {Uint8Array} bytes
+ * @param {string} text
+ * @param {number} tokenizerHash
+ * @returns {CachedTokens|undefined}
+ */
+export const deserializeTokens = (bytes, text, tokenizerHash) => {
+  if (bytes.byteLength < HEADER_LENGTH * 4 || bytes.byteLength % 4 !== 0) {
+    return undefined
+  }
+  const data =
+    bytes.byteOffset % 4 === 0
+      ? new Uint32Array(bytes.buffer, bytes.byteOffset, bytes.byteLength / 4)
+      : new Uint32Array(bytes.slice().buffer)
+  const [hash1, hash2, length] = getContentHashes(text)
+  const lineCount = data[6]
+  if (
+    data[0] !== MAGIC ||
+    data[1] !== FORMAT_VERSION ||
+    data[2] !== tokenizerHash ||
+    data[3] !== hash1 ||
+    data[4] !== hash2 ||
+    data[5] !== length ||
+    data.length !== HEADER_LENGTH + lineCount * 2 + data[7]
+  ) {
+    return undefined
+  }
+  const states = []
+  const tokens = []
+  const lineEndsOffset = HEADER_LENGTH + lineCount
+  let start = HEADER_LENGTH + lineCount * 2
+  for (let i = 0; i < lineCount; i++) {
+    const end = data[lineEndsOffset + i]
+    if (end < start || end > data.length || (end - start) % 2 !== 0) {
+      return undefined
+    }
+    states.push(TokenizeJava.getLineState(data[HEADER_LENGTH + i]))
+    tokens.push(data.subarray(start, end))
+    start = end
+  }
+  if (start !== data.length) {
+    return undefined
+  }
+  return {
+    states,
+    tokens,
+  }
+}
+
+/**
+ * @param {string} text
+ * @returns {CachedTokens}
+ */
+export const tokenizeText = (text) => {
+  const states = []
+  const tokens = []
+  let lineState = TokenizeJava.initialLineState
+  for (const line of text.split('\n')) {
+    lineState = TokenizeJava.tokenizeLine(line, lineState)
+    states.push(lineState)
+    tokens.push(lineState.tokens)
+  }
+  return {
+    states,
+    tokens,
+  }
+}
+
+/**
+ * Creates a cache that persists tokenization results in `cacheDir`, keyed by
+ * the content of the file and the tokenizer hash. Loading a cached file is a
+ * single sequential read.
+ *
+ * @param {{cacheDir: string, tokenizerHash: number, fs: DiskTokenCacheFileSystem}} options
+ */
+export const createDiskTokenCache = ({ cacheDir, tokenizerHash, fs }) => {
+  /**
+   * @param {string} text
+   */
+  const getCachePath = (text) => {
+    const [hash1, hash2] = getContentHashes(text)
+    const name = [hash1, hash2, tokenizerHash]
+      .map((hash) => hash.toString(16).padStart(8, '0'))
+      .join('-')
+    return `${cacheDir}/${name}.bin`
+  }
+
+  /**
+   * @param {string} text
+   */
+  const load = async (text) => {
+    try {
+      const bytes = await fs.readFile(getCachePath(text))
+      return deserializeTokens(bytes, text, tokenizerHash)
+    } catch (error) {
+      if (error && error.code === 'ENOENT') {
+        return undefined
+      }
+      throw error
+    }
+  }
+
+  /**
+   * @param {string} text
+   * @param {CachedTokens} cachedTokens
+   */
+  const save = async (text, cachedTokens) => {
+    const cachePath = getCachePath(text)
+    // the random part keeps the saves of other processes apart
+    const suffix = Math.random().toString(36).slice(2, 10)
+    const tmpPath = `${cachePath}.${Date.now()}.${tmpCount++}.${suffix}.tmp`
+    await fs.mkdir(cacheDir, { recursive: true })
+    try {
+      await fs.writeFile(
+        tmpPath,
+        serializeTokens(text, tokenizerHash, cachedTokens),
+      )
+      await fs.rename(tmpPath, cachePath)
+    } catch (error) {
+      // a full disk or a failed rename would otherwise leave partial files
+      await fs.rm(tmpPath, { force: true })
+      throw error
+    }
+  }
+
+  /**
+   * Loads the tokens of the text from disk, tokenizing and saving them when
+   * they are not cached yet.
+   *
+   * @param {string} text
+   */
+  const getTokens = async (text) => {
+    const cached = await load(text)
+    if (cached) {
+      return cached
+    }
+    const cachedTokens = tokenizeText(text)
+    await save(text, cachedTokens)
+    return cachedTokens
+  }
+
+  return {
+    load,
+    save,
+    getTokens,
+  }
+}
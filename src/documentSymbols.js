@@ -0,0 +1,582 @@
+import {
+  getIdentifierEnd,
+  isName,
+  RE_TEXT_PART,
+} from './getLineIdentifiers.js'
+import { spliceArray } from './spliceArray.js'
+import * as TokenizeJava from './tokenizeJava.js'
+
+const { TokenType } = TokenizeJava
+
+/**
+ * The values match the symbol kinds of the language server protocol.
+ *
+ * @enum number
+ */
+export const SymbolKind = {
+  Class: 5,
+  Method: 6,
+  Field: 8,
+  Constructor: 9,
+  Enum: 10,
+  Interface: 11,
+  EnumMember: 22,
+}
+
+/**
+ * @typedef {object} DocumentSymbol
+ * @property {string} name
+ * @property {number} kind
+ * @property {number} startLine the line of the name
+ * @property {number} column the column of the name
+ * @property {number} endLine the line of the closing brace or semicolon
+ * @property {DocumentSymbol[]} children
+ */
+
+/**
+ * Every line is reduced to a list of events, stored as `[code, column,
+ * length, ...]`. Punctuation uses its character code, everything else one of
+ * these negative codes.
+ */
+const EventCode = {
+  Identifier: -1,
+  Class: -2,
+  Interface: -3,
+  Enum: -4,
+  Annotation: -5,
+}
+
+/**
+ * @param {number} charCode
+ */
+const isEventPunctuation = (charCode) => {
+  switch (charCode) {
+    case 40: // (
+    case 41: // )
+    case 44: // ,
+    case 59: // ;
+    case 60: // <
+    case 61: // =
+    case 62: // >
+    case 123: // {
+    case 125: // }
+      return true
+    default:
+      return false
+  }
+}
+
+/**
+ * @param {string} word
+ */
+const getWordEventCode = (word) => {
+  switch (word) {
+    case 'class':
+      return EventCode.Class
+    case 'interface':
+    case '@interface':
+      return EventCode.Interface
+    case 'enum':
+      return EventCode.Enum
+    default:
+      return word.startsWith('@') ? EventCode.Annotation : EventCode.Identifier
+  }
+}
+
+/**
+ * @param {number[]} events
+ * @param {string} line
+ * @param {number} start
+ * @param {number} end
+ */
+const addTextEvents = (events, line, start, end) => {
+  RE_TEXT_PART.lastIndex = start
+  let match
+  while (RE_TEXT_PART.lastIndex < end && (match = RE_TEXT_PART.exec(line))) {
+    const text = match[0]
+    const charCode = text.charCodeAt(0)
+    if (text.length === 1 && isEventPunctuation(charCode)) {
+      events.push(charCode, match.index, 1)
+    } else if (charCode === 64 || isName(text)) {
+      events.push(getWordEventCode(text), match.index, text.length)
+    }
+  }
+}
+
+/**
+ * Returns the events of a line that matter for document symbols.
+ *
+ * @param {string} line
+ * @param {ArrayLike<number>} tokens
+ * @returns {number[]}
+ */
+export const getLineSymbolEvents = (line, tokens) => {
+  /**
+   * @type {number[]}
+   */
+  const events = []
+  let offset = 0
+  let identifierEnd = 0
+  for (let i = 0; i < tokens.length; i += 2) {
+    const type = tokens[i]
+    const length = tokens[i + 1]
+    switch (type) {
+      case TokenType.Punctuation:
+      case TokenType.BracketColor1:
+      case TokenType.BracketColor2:
+      case TokenType.BracketColor3:
+      case TokenType.BracketColor4:
+      case TokenType.BracketColor5:
+      case TokenType.BracketColor6:
+        if (length === 1 && isEventPunctuation(line.charCodeAt(offset))) {
+          events.push(line.charCodeAt(offset), offset, 1)
+        }
+        break
+      case TokenType.Class:
+      case TokenType.VariableName:
+      case TokenType.FunctionName:
+        if (offset >= identifierEnd) {
+          identifierEnd = getIdentifierEnd(line, offset + length)
+          events.push(EventCode.Identifier, offset, identifierEnd - offset)
+        }
+        break
+      case TokenType.Keyword:
+      case TokenType.KeywordImport:
+      case TokenType.Attribute: {
+        const code = getWordEventCode(line.slice(offset, offset + length))
+        if (code !== EventCode.Identifier) {
+          events.push(code, offset, length)
+        }
+        break
+      }
+      case TokenType.Text:
+        addTextEvents(events, line, offset, offset + length)
+        break
+      default:
+        break
+    }
+    offset += length
+  }
+  return events
+}
+
+/**
+ * Builds the outline from the events of each line in a single pass. Members
+ * are only collected directly inside type bodies, and the bodies of methods,
+ * initializers and field initializers are skipped by counting braces.
+ *
+ * @param {(lineIndex: number) => string} getLine
+ */
+export const createSymbolParser = (getLine) => {
+  /**
+   * @type {DocumentSymbol[]}
+   */
+  const symbols = []
+  /**
+   * @type {{symbol: DocumentSymbol, isInEnumConstants: boolean}[]}
+   */
+  const stack = []
+  let skipDepth = 0
+  let parenDepth = 0
+  let angleDepth = 0
+  let isAfterEquals = false
+  let lastCode = 0
+  // pending type declaration
+  let typeKind = 0
+  let typeLine = -1
+  let typeColumn = 0
+  let typeLength = 0
+  // last identifier
+  let identifierLine = -1
+  let identifierColumn = 0
+  let identifierLength = 0
+  // identifier before `=`
+  let declaratorLine = -1
+  let declaratorColumn = 0
+  let declaratorLength = 0
+  // method name, or enum constant name
+  let nameLine = -1
+  let nameColumn = 0
+  let nameLength = 0
+
+  const resetMember = () => {
+    parenDepth = 0
+    angleDepth = 0
+    isAfterEquals = false
+    typeKind = 0
+    typeLine = -1
+    identifierLine = -1
+    declaratorLine = -1
+    nameLine = -1
+  }
+
+  /**
+   * @param {number} kind
+   * @param {number} lineIndex
+   * @param {number} column
+   * @param {number} length
+   * @param {number} endLine
+   * @returns {DocumentSymbol}
+   */
+  const addSymbol = (kind, lineIndex, column, length, endLine) => {
+    const symbol = {
+      name: getLine(lineIndex).slice(column, column + length),
+      kind,
+      startLine: lineIndex,
+      column,
+      endLine,
+      children: [],
+    }
+    const parent = stack.length === 0 ? symbols : stack.at(-1).symbol.children
+    parent.push(symbol)
+    return symbol
+  }
+
+  /**
+   * @param {number} endLine
+   */
+  const addMethod = (endLine) => {
+    const name = getLine(nameLine).slice(nameColumn, nameColumn + nameLength)
+    const kind =
+      name === stack.at(-1).symbol.name
+        ? SymbolKind.Constructor
+        : SymbolKind.Method
+    addSymbol(kind, nameLine, nameColumn, nameLength, endLine)
+  }
+
+  /**
+   * @param {number} endLine
+   */
+  const addField = (endLine) => {
+    if (declaratorLine !== -1) {
+      addSymbol(
+        SymbolKind.Field,
+        declaratorLine,
+        declaratorColumn,
+        declaratorLength,
+        endLine,
+      )
+    } else if (identifierLine !== -1) {
+      addSymbol(
+        SymbolKind.Field,
+        identifierLine,
+        identifierColumn,
+        identifierLength,
+        endLine,
+      )
+    }
+  }
+
+  /**
+   * @param {number} endLine
+   */
+  const addEnumConstant = (endLine) => {
+    if (nameLine !== -1) {
+      addSymbol(
+        SymbolKind.EnumMember,
+        nameLine,
+        nameColumn,
+        nameLength,
+        endLine,
+      )
+      nameLine = -1
+    }
+  }
+
+  const handleOpenCurly = () => {
+    if (parenDepth > 0) {
+      skipDepth = 1
+      return
+    }
+    if (typeKind !== 0) {
+      if (typeLine === -1) {
+        skipDepth = 1
+        return
+      }
+      const symbol = addSymbol(typeKind, typeLine, typeColumn, typeLength, -1)
+      stack.push({ symbol, isInEnumConstants: typeKind === SymbolKind.Enum })
+      resetMember()
+      return
+    }
+    skipDepth = 1
+  }
+
+  /**
+   * @param {number} lineIndex
+   */
+  const handleCloseCurly = (lineIndex) => {
+    if (skipDepth > 0) {
+      skipDepth--
+      if (skipDepth === 0 && parenDepth === 0 && stack.length > 0) {
+        const frame = stack.at(-1)
+        if (nameLine !== -1 && !frame.isInEnumConstants) {
+          addMethod(lineIndex)
+          resetMember()
+        } else if (!isAfterEquals && !frame.isInEnumConstants) {
+          // an initializer block
+          resetMember()
+        }
+      }
+      return
+    }
+    const frame = stack.at(-1)
+    if (frame) {
+      if (frame.isInEnumConstants) {
+        addEnumConstant(lineIndex)
+      }
+      frame.symbol.endLine = lineIndex
+      stack.pop()
+    }
+    resetMember()
+  }
+
+  /**
+   * @param {number} lineIndex
+   */
+  const handleSeparator = (lineIndex) => {
+    const frame = stack.at(-1)
+    if (!frame || typeKind !== 0) {
+      return
+    }
+    if (frame.isInEnumConstants) {
+      addEnumConstant(lineIndex)
+    } else if (nameLine === -1) {
+      addField(lineIndex)
+      isAfterEquals = false
+      identifierLine = -1
+      declaratorLine = -1
+    }
+  }
+
+  /**
+   * @param {number} lineIndex
+   */
+  const handleSemicolon = (lineIndex) => {
+    const frame = stack.at(-1)
+    if (frame && typeKind === 0) {
+      if (frame.isInEnumConstants) {
+        addEnumConstant(lineIndex)
+        frame.isInEnumConstants = false
+      } else if (nameLine !== -1) {
+        addMethod(lineIndex)
+      } else {
+        addField(lineIndex)
+      }
+    }
+    resetMember()
+  }
+
+  /**
+   * @param {number} lineIndex
+   * @param {number} code
+   * @param {number} column
+   * @param {number} length
+   */
+  const handleEvent = (lineIndex, code, column, length) => {
+    if (skipDepth > 0) {
+      if (code === 123) {
+        skipDepth++
+      } else if (code === 125) {
+        handleCloseCurly(lineIndex)
+      }
+      return
+    }
+    switch (code) {
+      case EventCode.Identifier: {
+        if (typeKind !== 0 && typeLine === -1) {
+          typeLine = lineIndex
+          typeColumn = column
+          typeLength = length
+        }
+        const frame = stack.at(-1)
+        if (
+          frame &&
+          frame.isInEnumConstants &&
+          nameLine === -1 &&
+          parenDepth === 0
+        ) {
+          nameLine = lineIndex
+          nameColumn = column
+          nameLength = length
+        }
+        identifierLine = lineIndex
+        identifierColumn = column
+        identifierLength = length
+        break
+      }
+      case EventCode.Class:
+      case EventCode.Interface:
+      case EventCode.Enum:
+        if (parenDepth === 0 && !isAfterEquals) {
+          typeKind =
+            code === EventCode.Class
+              ? SymbolKind.Class
+              : code === EventCode.Interface
+                ? SymbolKind.Interface
+                : SymbolKind.Enum
+          typeLine = -1
+        }
+        break
+      case 40: // (
+        if (
+          parenDepth === 0 &&
+          !isAfterEquals &&
+          typeKind === 0 &&
+          lastCode === EventCode.Identifier &&
+          stack.length > 0 &&
+          !stack.at(-1).isInEnumConstants
+        ) {
+          nameLine = identifierLine
+          nameColumn = identifierColumn
+          nameLength = identifierLength
+        }
+        parenDepth++
+        break
+      case 41: // )
+        parenDepth = Math.max(parenDepth - 1, 0)
+        break
+      case 60: // <
+        // also counted after `=`, for generic types in field initializers
+        if (parenDepth === 0) {
+          angleDepth++
+        }
+        break
+      case 62: // >
+        if (angleDepth > 0) {
+          angleDepth--
+        }
+        break
+      case 61: // =
+        if (parenDepth === 0 && !isAfterEquals) {
+          isAfterEquals = true
+          declaratorLine = identifierLine
+          declaratorColumn = identifierColumn
+          declaratorLength = identifierLength
+        }
+        break
+      case 44: // ,
+        if (parenDepth === 0 && angleDepth === 0) {
+          handleSeparator(lineIndex)
+        }
+        break
+      case 59: // ;
+        handleSemicolon(lineIndex)
+        break
+      case 123: // {
+        handleOpenCurly()
+        break
+      case 125: // }
+        handleCloseCurly(lineIndex)
+        break
+      default:
+        break
+    }
+    lastCode = code
+  }
+
+  /**
+   * @param {number} lineIndex
+   * @param {readonly number[]} events
+   */
+  const pushLine = (lineIndex, events) => {
+    for (let i = 0; i < events.length; i += 3) {
+      handleEvent(lineIndex, events[i], events[i + 1], events[i + 2])
+    }
+  }
+
+  /**
+   * Returns the outline. Types that are not closed end at the last line.
+   *
+   * @param {number} lineCount
+   */
+  const getSymbols = (lineCount) => {
+    for (const frame of stack) {
+      frame.symbol.endLine = lineCount - 1
+    }
+    return symbols
+  }
+
+  return {
+    pushLine,
+    getSymbols,
+  }
+}
+
+/**
+ * Returns the outline of a document, tokenizing it line by line.
+ *
+ * @param {string} text
+ * @returns {DocumentSymbol[]}
+ */
+export const getDocumentSymbols = (text) => {
+  const lines = text.split('\n')
+  const parser = createSymbolParser((lineIndex) => lines[lineIndex])
+  let lineState = TokenizeJava.initialLineState
+  for (let i = 0; i < lines.length; i++) {
+    lineState = TokenizeJava.tokenizeLine(lines[i], lineState)
+    parser.pushLine(i, getLineSymbolEvents(lines[i], lineState.tokens))
+  }
+  return parser.getSymbols(lines.length)
+}
+
+/**
+ * Keeps the symbol events of each line up to date with the lines that the
+ * document tokenizer re-tokenizes, and rebuilds the outline from the events
+ * when it is requested, without looking at the tokens of unchanged lines.
+ *
+ * @param {ReturnType<typeof import('./documentTokenizer.js').createDocumentTokenizer>} documentTokenizer
+ */
+export const createDocumentSymbolProvider = (documentTokenizer) => {
+  /**
+   * @param {number} start
+   * @param {number} end
+   */
+  const getLinesEvents = (start, end) => {
+    const linesEvents = []
+    for (let i = start; i < end; i++) {
+      linesEvents.push(
+        getLineSymbolEvents(
+          documentTokenizer.getLine(i),
+          documentTokenizer.getLineTokens(i),
+        ),
+      )
+    }
+    return linesEvents
+  }
+
+  const linesEvents = getLinesEvents(0, documentTokenizer.getLineCount())
+  /**
+   * @type {DocumentSymbol[]|undefined}
+   */
+  let symbols
+
+  const dispose = documentTokenizer.onDidTokenize(
+    ({ startLine, oldEndLine, newEndLine }) => {
+      spliceArray(
+        linesEvents,
+        startLine,
+        oldEndLine - startLine,
+        getLinesEvents(startLine, newEndLine),
+      )
+      symbols = undefined
+    },
+  )
+
+  const computeSymbols = () => {
+    const parser = createSymbolParser(documentTokenizer.getLine)
+    for (let i = 0; i < linesEvents.length; i++) {
+      parser.pushLine(i, linesEvents[i])
+    }
+    return parser.getSymbols(linesEvents.length)
+  }
+
+  const getSymbols = () => {
+    symbols ||= computeSymbols()
+    return symbols
+  }
+
+  return {
+    getDocumentSymbols: getSymbols,
+    dispose,
+  }
+}
@@ -0,0 +1,218 @@
+import { spliceArray } from './spliceArray.js'
+import * as TokenizeJava from './tokenizeJava.js'
+
+/**
+ * Describes which lines were re-tokenized. Lines `[startLine, oldEndLine)` of
+ * the previous document were replaced by lines `[startLine, newEndLine)`, and
+ * lines after that only moved by `newEndLine - oldEndLine`.
+ *
+ * @typedef {object} TokenizeChange
+ * @property {number} startLine
+ * @property {number} oldEndLine
+ * @property {number} newEndLine
+ */
+
+/**
+ * @typedef {(change: TokenizeChange) => void} TokenizeListener
+ */
+
+/**
+ * @param {any} a
+ * @param {any} b
+ */
+export const isEqualLineState = (a, b) => {
+  return (
+    a === b ||
+    TokenizeJava.getPackedLineState(a) === TokenizeJava.getPackedLineState(b)
+  )
+}
+
+/**
+ * @typedef {object} DocumentTokenizerOptions
+ * @property {(line: string, lineState: any, tokenStates?: number[]) => any} [tokenizeLine]
+ * @property {boolean} [recordTokenStates] keep the state before each token of
+ * every line, see `getLineTokenStates`; `tokenizeLine` must then fill its
+ * third argument like the Java tokenizer does
+ */
+
+/**
+ * Keeps the lines, end states and tokens of a document and re-tokenizes only
+ * the lines affected by an edit: tokenization continues after the edited
+ * lines until a line ends in the same state as before.
+ *
+ * @param {string} text
+ * @param {DocumentTokenizerOptions} [options]
+ */
+export const createDocumentTokenizer = (
+  text,
+  { tokenizeLine = TokenizeJava.tokenizeLine, recordTokenStates = false } = {},
+) => {
+  /**
+   * @type {string[]}
+   */
+  const lines = text.split('\n')
+  /**
+   * @type {any[]}
+   */
+  const states = []
+  /**
+   * The state before each token of each line, followed by the state at the
+   * end of the line, only filled when `recordTokenStates` is set.
+   *
+   * @type {Uint8Array[]}
+   */
+  const tokenStates = []
+  /**
+   * @type {TokenizeListener[]}
+   */
+  const listeners = []
+
+  /**
+   * @type {Uint8Array|undefined}
+   */
+  let lastTokenStates
+
+  /**
+   * Tokenizes a line, and leaves its token states in `lastTokenStates` when
+   * they are recorded.
+   *
+   * @param {string} line
+   * @param {any} lineState
+   */
+  const tokenize = (line, lineState) => {
+    if (!recordTokenStates) {
+      return tokenizeLine(line, lineState)
+    }
+    /**
+     * @type {number[]}
+     */
+    const lineTokenStates = []
+    const next = tokenizeLine(line, lineState, lineTokenStates)
+    lineTokenStates.push(next.state)
+    lastTokenStates = Uint8Array.from(lineTokenStates)
+    return next
+  }
+
+  let lineState = TokenizeJava.initialLineState
+  for (const line of lines) {
+    lineState = tokenize(line, lineState)
+    states.push(lineState)
+    if (recordTokenStates) {
+      tokenStates.push(lastTokenStates)
+    }
+  }
+
+  /**
+   * @param {number} lineIndex
+   */
+  const getStartState = (lineIndex) => {
+    return lineIndex === 0
+      ? TokenizeJava.initialLineState
+      : states[lineIndex - 1]
+  }
+
+  /**
+   * Replaces `deleteCount` lines at `startLine` with `newLines`.
+   *
+   * @param {number} startLine
+   * @param {number} deleteCount
+   * @param {readonly string[]} newLines
+   * @returns {TokenizeChange}
+   */
+  const applyEdit = (startLine, deleteCount, newLines) => {
+    const startState = getStartState(startLine)
+    const oldStates = states.splice(startLine, deleteCount)
+    const oldEndState = deleteCount === 0 ? startState : oldStates.at(-1)
+    spliceArray(lines, startLine, deleteCount, newLines)
+    const newStates = []
+    const newTokenStates = []
+    let lineState = startState
+    for (const line of newLines) {
+      lineState = tokenize(line, lineState)
+      newStates.push(lineState)
+      newTokenStates.push(lastTokenStates)
+    }
+    spliceArray(states, startLine, 0, newStates)
+    if (recordTokenStates) {
+      spliceArray(tokenStates, startLine, deleteCount, newTokenStates)
+    }
+    let newEndLine = startLine + newLines.length
+    if (!isEqualLineState(oldEndState, lineState)) {
+      while (newEndLine < lines.length) {
+        const previous = states[newEndLine]
+        lineState = tokenize(lines[newEndLine], lineState)
+        states[newEndLine] = lineState
+        if (recordTokenStates) {
+          tokenStates[newEndLine] = lastTokenStates
+        }
+        newEndLine++
+        if (isEqualLineState(previous, lineState)) {
+          break
+        }
+      }
+    }
+    const change = {
+      startLine,
+      oldEndLine: newEndLine - newLines.length + deleteCount,
+      newEndLine,
+    }
+    for (const listener of listeners) {
+      listener(change)
+    }
+    return change
+  }
+
+  /**
+   * @param {TokenizeListener} listener
+   */
+  const onDidTokenize = (listener) => {
+    listeners.push(listener)
+    return () => {
+      const index = listeners.indexOf(listener)
+      if (index !== -1) {
+        listeners.splice(index, 1)
+      }
+    }
+  }
+
+  return {
+    applyEdit,
+    onDidTokenize,
+    getStartState,
+    getLineCount() {
+      return lines.length
+    },
+    /**
+     * @param {number} lineIndex
+     */
+    getLine(lineIndex) {
+      return lines[lineIndex]
+    },
+    /**
+     * @param {number} lineIndex
+     * @returns {readonly number[]}
+     */
+    getLineTokens(lineIndex) {
+      return states[lineIndex].tokens
+    },
+    /**
+     * Returns the state at the end of the given line.
+     *
+     * @param {number} lineIndex
+     */
+    getLineState(lineIndex) {
+      return states[lineIndex]
+    },
+    /**
+     * Returns the state before each token of the given line, followed by the
+     * state at the end of the line, or undefined when token states are not
+     * recorded.
+     *
+     * @param {number} lineIndex
+     * @returns {Uint8Array|undefined}
+     */
+    getLineTokenStates(lineIndex) {
+      return tokenStates[lineIndex]
+    },
+  }
+}
@@ -0,0 +1,167 @@
+import {
+  ESCAPE_TYPE_INDEX,
+  TYPE_INDEX_BITS,
+  tokenTypeIndices,
+  tokenTypes,
+} from './tokenTypeIndex.js'
+
+/**
+ * @typedef {object} EncodedTokens
+ * @property {Uint8Array} bytes
+ * @property {Uint32Array} lineOffsets the byte offset where each line starts, followed by the total length
+ */
+
+const TYPE_BITS = TYPE_INDEX_BITS
+
+const TYPE_INDEX_MASK = (1 << TYPE_BITS) - 1
+
+const LENGTH_MULTIPLIER = 1 << (TYPE_BITS + 1)
+
+/**
+ * Growable byte buffer used while encoding.
+ */
+const createWriter = (initialCapacity = 1024) => {
+  let bytes = new Uint8Array(initialCapacity)
+  let length = 0
+
+  /**
+   * @param {number} value a non-negative integer below 2^53
+   */
+  const writeVarint = (value) => {
+    if (length + 8 > bytes.length) {
+      const grown = new Uint8Array(bytes.length * 2)
+      grown.set(bytes)
+      bytes = grown
+    }
+    while (value >= 0x80) {
+      bytes[length++] = (value % 0x80) | 0x80
+      value = Math.floor(value / 0x80)
+    }
+    bytes[length++] = value
+  }
+
+  return {
+    writeVarint,
+    getLength() {
+      return length
+    },
+    getBytes() {
+      return bytes.slice(0, length)
+    },
+  }
+}
+
+/**
+ * Encodes the tokens of each line. Every record starts with a varint holding
+ * `length * 64 + typeIndex * 2 + isRun`, so that short tokens of a known type
+ * take a single byte. Types that are not in `TokenType` use an escape index
+ * followed by the raw type. Runs of identical type and length pairs, like
+ * `)));` or repeated whitespace and punctuation, are followed by a varint
+ * holding the number of repetitions minus two.
+ *
+ * @param {readonly ArrayLike<number>[]} linesTokens
+ * @returns {EncodedTokens}
+ */
+export const encodeTokens = (linesTokens) => {
+  const writer = createWriter()
+  const lineOffsets = new Uint32Array(linesTokens.length + 1)
+  for (let lineIndex = 0; lineIndex < linesTokens.length; lineIndex++) {
+    lineOffsets[lineIndex] = writer.getLength()
+    const tokens = linesTokens[lineIndex]
+    let i = 0
+    while (i < tokens.length) {
+      const type = tokens[i]
+      const length = tokens[i + 1]
+      let count = 1
+      while (
+        i + count * 2 < tokens.length &&
+        tokens[i + count * 2] === type &&
+        tokens[i + count * 2 + 1] === length
+      ) {
+        count++
+      }
+      const typeIndex = tokenTypeIndices.get(type) ?? ESCAPE_TYPE_INDEX
+      const isRun = count > 1 ? 1 : 0
+      writer.writeVarint(length * LENGTH_MULTIPLIER + typeIndex * 2 + isRun)
+      if (typeIndex === ESCAPE_TYPE_INDEX) {
+        writer.writeVarint(type)
+      }
+      if (isRun) {
+        writer.writeVarint(count - 2)
+      }
+      i += count * 2
+    }
+  }
+  lineOffsets[linesTokens.length] = writer.getLength()
+  return {
+    bytes: writer.getBytes(),
+    lineOffsets,
+  }
+}
+
+/**
+ * Decodes the tokens of one line into `tokens`, which is cleared first.
+ *
+ * @param {EncodedTokens} encoded
+ * @param {number} lineIndex
+ * @param {number[]} [tokens]
+ */
+export const decodeLine = (encoded, lineIndex, tokens = []) => {
+  const { bytes, lineOffsets } = encoded
+  const end = lineOffsets[lineIndex + 1]
+  let offset = lineOffsets[lineIndex]
+  tokens.length = 0
+  while (offset < end) {
+    let header = bytes[offset++]
+    if (header >= 0x80) {
+      header &= 0x7f
+      let multiplier = 0x80
+      let byte = 0
+      do {
+        byte = bytes[offset++]
+        header += (byte & 0x7f) * multiplier
+        multiplier *= 0x80
+      } while (byte >= 0x80)
+    }
+    const isRun = header & 1
+    const typeIndex = (header >> 1) & TYPE_INDEX_MASK
+    const length = Math.floor(header / LENGTH_MULTIPLIER)
+    let type = tokenTypes[typeIndex]
+    if (typeIndex === ESCAPE_TYPE_INDEX) {
+      type = 0
+      let multiplier = 1
+      let byte = 0
+      do {
+        byte = bytes[offset++]
+        type += (byte & 0x7f) * multiplier
+        multiplier *= 0x80
+      } while (byte >= 0x80)
+    }
+    let count = 1
+    if (isRun) {
+      let multiplier = 1
+      let byte = 0
+      count = 2
+      do {
+        byte = bytes[offset++]
+        count += (byte & 0x7f) * multiplier
+        multiplier *= 0x80
+      } while (byte >= 0x80)
+    }
+    for (let i = 0; i < count; i++) {
+      tokens.push(type, length)
+    }
+  }
+  return tokens
+}
+
+/**
+ * @param {EncodedTokens} encoded
+ */
+export const decodeTokens = (encoded) => {
+  const linesTokens = []
+  for (let i = 0; i < encoded.lineOffsets.length - 1; i++) {
+    linesTokens.push(decodeLine(encoded, i))
+  }
+  return linesTokens
+}
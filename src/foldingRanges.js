@@ -0,0 +1,223 @@
+import { BracketKind, getLineBrackets } from './getLineBrackets.js'
+import { spliceArray } from './spliceArray.js'
+import { State, TokenType } from './tokenizeJava.js'
+
+/**
+ * @enum string
+ */
+export const FoldingRangeKind = {
+  Comment: 'comment',
+  Imports: 'imports',
+  Region: 'region',
+}
+
+/**
+ * @typedef {object} FoldingRange
+ * @property {number} startLine
+ * @property {number} endLine
+ * @property {string} kind
+ */
+
+const LineFlag = {
+  StartsComment: 1,
+  EndsComment: 2,
+  Import: 4,
+  Blank: 8,
+}
+
+/**
+ * @type {readonly number[]}
+ */
+const NO_CURLY_BRACKETS = []
+
+/**
+ * @param {string} line
+ * @param {ArrayLike<number>} tokens
+ */
+const getCurlyBrackets = (line, tokens) => {
+  const brackets = getLineBrackets(line, tokens)
+  /**
+   * @type {number[]|undefined}
+   */
+  let curly
+  for (let i = 1; i < brackets.length; i += 2) {
+    const kind = brackets[i]
+    if (kind === BracketKind.Curly || kind === -BracketKind.Curly) {
+      curly ||= []
+      curly.push(Math.sign(kind))
+    }
+  }
+  return curly || NO_CURLY_BRACKETS
+}
+
+/**
+ * @param {string} line
+ * @param {ArrayLike<number>} tokens
+ * @param {number} startState
+ * @param {number} endState
+ */
+const getLineFlags = (line, tokens, startState, endState) => {
+  let flags = 0
+  const isInsideCommentAtStart = startState === State.InsideBlockComment
+  const isInsideCommentAtEnd = endState === State.InsideBlockComment
+  // the first `*/` of a line that starts inside a comment always ends that
+  // comment, and a line like `*/ x = 1; /*` also starts the next one
+  const endsComment = isInsideCommentAtStart && line.includes('*/')
+  if (endsComment) {
+    flags |= LineFlag.EndsComment
+  }
+  if (isInsideCommentAtEnd && (!isInsideCommentAtStart || endsComment)) {
+    flags |= LineFlag.StartsComment
+  }
+  if (
+    tokens.length === 0 ||
+    (tokens.length === 2 && tokens[0] === TokenType.Whitespace)
+  ) {
+    flags |= LineFlag.Blank
+  } else {
+    const first = tokens[0] === TokenType.Whitespace ? 2 : 0
+    const offset = first === 0 ? 0 : tokens[1]
+    // `class` is also emitted as KeywordImport, so check the text as well
+    if (
+      tokens[first] === TokenType.KeywordImport &&
+      line.startsWith('import', offset)
+    ) {
+      flags |= LineFlag.Import
+    }
+  }
+  return flags
+}
+
+/**
+ * Computes folding ranges for braces, block comments and groups of import
+ * lines. Only the per-line summaries, the curly brackets and flags of each
+ * line, are maintained incrementally: they are updated for the lines that the
+ * document tokenizer re-tokenizes. The ranges themselves are not; the first
+ * query after an edit recomputes all of them with one pass over the summaries
+ * of every line, which is linear in the line count but does not look at the
+ * text or tokens of unchanged lines.
+ *
+ * @param {ReturnType<typeof import('./documentTokenizer.js').createDocumentTokenizer>} documentTokenizer
+ */
+export const createFoldingRangeProvider = (documentTokenizer) => {
+  /**
+   * @param {number} start
+   * @param {number} end
+   */
+  const getSummaries = (start, end) => {
+    const curlyBrackets = []
+    const flags = []
+    for (let i = start; i < end; i++) {
+      const line = documentTokenizer.getLine(i)
+      const tokens = documentTokenizer.getLineTokens(i)
+      curlyBrackets.push(getCurlyBrackets(line, tokens))
+      flags.push(
+        getLineFlags(
+          line,
+          tokens,
+          documentTokenizer.getStartState(i).state,
+          documentTokenizer.getLineState(i).state,
+        ),
+      )
+    }
+    return { curlyBrackets, flags }
+  }
+
+  const initial = getSummaries(0, documentTokenizer.getLineCount())
+  const lineCurlyBrackets = initial.curlyBrackets
+  const lineFlags = initial.flags
+  /**
+   * @type {FoldingRange[]|undefined}
+   */
+  let ranges
+
+  const dispose = documentTokenizer.onDidTokenize(
+    ({ startLine, oldEndLine, newEndLine }) => {
+      const { curlyBrackets, flags } = getSummaries(startLine, newEndLine)
+      const deleteCount = oldEndLine - startLine
+      spliceArray(lineCurlyBrackets, startLine, deleteCount, curlyBrackets)
+      spliceArray(lineFlags, startLine, deleteCount, flags)
+      ranges = undefined
+    },
+  )
+
+  /**
+   * @returns {FoldingRange[]}
+   */
+  const computeRanges = () => {
+    /**
+     * @type {FoldingRange[]}
+     */
+    const result = []
+    /**
+     * @type {number[]}
+     */
+    const stack = []
+    let commentStart = -1
+    let importStart = -1
+    let lastImport = -1
+    const addImports = () => {
+      if (lastImport > importStart) {
+        result.push({
+          startLine: importStart,
+          endLine: lastImport,
+          kind: FoldingRangeKind.Imports,
+        })
+      }
+      importStart = -1
+    }
+    for (let i = 0; i < lineFlags.length; i++) {
+      const flags = lineFlags[i]
+      if (flags & LineFlag.EndsComment && commentStart !== -1) {
+        if (i > commentStart) {
+          result.push({
+            startLine: commentStart,
+            endLine: i,
+            kind: FoldingRangeKind.Comment,
+          })
+        }
+        commentStart = -1
+      }
+      if (flags & LineFlag.StartsComment) {
+        commentStart = i
+      }
+      if (flags & LineFlag.Import) {
+        if (importStart === -1) {
+          importStart = i
+        }
+        lastImport = i
+      } else if (!(flags & LineFlag.Blank) && importStart !== -1) {
+        addImports()
+      }
+      for (const bracket of lineCurlyBrackets[i]) {
+        if (bracket > 0) {
+          stack.push(i)
+        } else if (stack.length > 0) {
+          const start = stack.pop()
+          if (i - 1 > start) {
+            result.push({
+              startLine: start,
+              endLine: i - 1,
+              kind: FoldingRangeKind.Region,
+            })
+          }
+        }
+      }
+    }
+    if (importStart !== -1) {
+      addImports()
+    }
+    result.sort((a, b) => a.startLine - b.startLine || b.endLine - a.endLine)
+    return result
+  }
+
+  const getFoldingRanges = () => {
+    ranges ||= computeRanges()
+    return ranges
+  }
+
+  return {
+    getFoldingRanges,
+    dispose,
+  }
+}
@@ -0,0 +1,65 @@
+import { TokenType } from './tokenizeJava.js'
+
+/**
+ * @enum number
+ */
+export const BracketKind = {
+  Paren: 1,
+  Square: 2,
+  Curly: 3,
+}
+
+/**
+ * @param {number} charCode
+ */
+const getBracketKind = (charCode) => {
+  switch (charCode) {
+    case 40: // (
+      return BracketKind.Paren
+    case 41: // )
+      return -BracketKind.Paren
+    case 91: // [
+      return BracketKind.Square
+    case 93: // ]
+      return -BracketKind.Square
+    case 123: // {
+      return BracketKind.Curly
+    case 125: // }
+      return -BracketKind.Curly
+    default:
+      return 0
+  }
+}
+
+/**
+ * Returns the brackets of a line as `[column, kind, column, kind, ...]`,
+ * where kind is positive for opening and negative for closing brackets. Only
+ * punctuation and bracket color tokens are considered, so brackets in strings
+ * and comments are skipped.
+ *
+ * @param {string} line
+ * @param {ArrayLike<number>} tokens
+ */
+export const getLineBrackets = (line, tokens) => {
+  /**
+   * @type {number[]}
+   */
+  const brackets = []
+  let offset = 0
+  for (let i = 0; i < tokens.length; i += 2) {
+    const length = tokens[i + 1]
+    const type = tokens[i]
+    if (
+      length === 1 &&
+      (type === TokenType.Punctuation ||
+        (type >= TokenType.BracketColor1 && type <= TokenType.BracketColor6))
+    ) {
+      const kind = getBracketKind(line.charCodeAt(offset))
+      if (kind !== 0) {
+        brackets.push(offset, kind)
+      }
+    }
+    offset += length
+  }
+  return brackets
+}
@@ -0,0 +1,161 @@
+import { TokenType } from './tokenizeJava.js'
+
+/**
+ * Splits text that the tokenizer could not classify into whitespace, strings,
+ * line comments, annotations, names, numbers and single characters. Names
+ * that are followed by `(` are captured.
+ */
+export const RE_TEXT_PART =
+  /\s+|"(?:[^"\\]|\\.)*"?|'(?:[^'\\]|\\.)*'?|\/\/.*|@\w+|([A-Za-z_$][\w$]*)(?=\s*\()|[A-Za-z_$][\w$]*|\d[\w.]*|./y
+
+const RE_IDENTIFIER_PART = /[\w$]*/y
+
+const RE_NAME_START = /^[A-Za-z_$]/
+
+/**
+ * The reserved words of Java, including the literals `true`, `false` and
+ * `null`. Contextual keywords like `var`, `record` or `yield` are valid
+ * identifiers and not included.
+ */
+const KEYWORDS = new Set([
+  '_',
+  'abstract',
+  'assert',
+  'boolean',
+  'break',
+  'byte',
+  'case',
+  'catch',
+  'char',
+  'class',
+  'const',
+  'continue',
+  'default',
+  'do',
+  'double',
+  'else',
+  'enum',
+  'extends',
+  'false',
+  'final',
+  'finally',
+  'float',
+  'for',
+  'goto',
+  'if',
+  'implements',
+  'import',
+  'instanceof',
+  'int',
+  'interface',
+  'long',
+  'native',
+  'new',
+  'null',
+  'package',
+  'private',
+  'protected',
+  'public',
+  'return',
+  'short',
+  'static',
+  'strictfp',
+  'super',
+  'switch',
+  'synchronized',
+  'this',
+  'throw',
+  'throws',
+  'transient',
+  'true',
+  'try',
+  'void',
+  'volatile',
+  'while',
+])
+
+/**
+ * @param {string} text a part matched by `RE_TEXT_PART`
+ */
+export const isName = (text) => {
+  return RE_NAME_START.test(text)
+}
+
+/**
+ * @param {number} type
+ */
+export const isIdentifierToken = (type) => {
+  return (
+    type === TokenType.VariableName ||
+    type === TokenType.FunctionName ||
+    type === TokenType.Class
+  )
+}
+
+/**
+ * Identifiers with digits are split into several tokens, for example `a1b`
+ * into a variable name, a number and another variable name. Returns the end
+ * of the whole identifier, given the end of its first token.
+ *
+ * @param {string} line
+ * @param {number} tokenEnd
+ */
+export const getIdentifierEnd = (line, tokenEnd) => {
+  RE_IDENTIFIER_PART.lastIndex = tokenEnd
+  RE_IDENTIFIER_PART.test(line)
+  return RE_IDENTIFIER_PART.lastIndex
+}
+
+/**
+ * @param {number[]} identifiers
+ * @param {string} line
+ * @param {number} start
+ * @param {number} end
+ */
+const addTextIdentifiers = (identifiers, line, start, end) => {
+  // skip the rest of an identifier that continues into the text
+  const last = identifiers.length - 2
+  RE_TEXT_PART.lastIndex = Math.max(
+    start,
+    last >= 0 ? identifiers[last] + identifiers[last + 1] : 0,
+  )
+  let match
+  while (RE_TEXT_PART.lastIndex < end && (match = RE_TEXT_PART.exec(line))) {
+    const text = match[0]
+    if (isName(text) && !KEYWORDS.has(text)) {
+      identifiers.push(match.index, text.length)
+    }
+  }
+}
+
+/**
+ * Returns the identifiers of a line as `[column, length, column, length,
+ * ...]`. Identifiers are taken from variable, function and class name tokens
+ * and from the names in text tokens that are not keywords, so identifiers in
+ * strings and comments are skipped.
+ *
+ * @param {string} line
+ * @param {ArrayLike<number>} tokens
+ */
+export const getLineIdentifiers = (line, tokens) => {
+  /**
+   * @type {number[]}
+   */
+  const identifiers = []
+  let offset = 0
+  let identifierEnd = 0
+  for (let i = 0; i < tokens.length; i += 2) {
+    const type = tokens[i]
+    const length = tokens[i + 1]
+    if (isIdentifierToken(type)) {
+      if (offset >= identifierEnd) {
+        identifierEnd = getIdentifierEnd(line, offset + length)
+        identifiers.push(offset, identifierEnd - offset)
+      }
+    } else if (type === TokenType.Text) {
+      addTextIdentifiers(identifiers, line, offset, offset + length)
+    }
+    offset += length
+  }
+  return identifiers
+}
@@ -0,0 +1,34 @@
+const FNV_OFFSET = 0x811c9dc5
+const FNV_PRIME = 0x01000193
+
+/**
+ * FNV-1a over the utf-16 code units of the string.
+ *
+ * @param {string} value
+ * @param {number} [seed]
+ */
+export const hashString = (value, seed = FNV_OFFSET) => {
+  let hash = seed
+  for (let i = 0; i < value.length; i++) {
+    hash ^= value.charCodeAt(i)
+    hash = Math.imul(hash, FNV_PRIME)
+  }
+  return hash >>> 0
+}
+
+/**
+ * @param {number} hash
+ * @param {number} value
+ */
+export const combineHash = (hash, value) => {
+  return Math.imul(hash ^ value, FNV_PRIME) >>> 0
+}
+
+/**
+ * Reduces a hash so that it stays a small integer when used as a map key.
+ *
+ * @param {number} hash
+ */
+export const toSmallHash = (hash) => {
+  return hash & 0x3fffffff
+}
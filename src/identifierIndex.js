@@ -0,0 +1,316 @@
+import { getLineIdentifiers } from './getLineIdentifiers.js'
+import { spliceArray } from './spliceArray.js'
+
+/**
+ * @typedef {object} LineBlock
+ * @property {number} start the index of the first line of the block
+ * @property {LineIdentifiers[]} lines
+ */
+
+/**
+ * @typedef {object} LineIdentifiers
+ * @property {LineBlock} block
+ * @property {number} offset the index of the line in its block
+ * @property {number[]} identifiers `[id, column, length, ...]`
+ */
+
+/**
+ * @typedef {object} Occurrence
+ * @property {number} lineIndex
+ * @property {number} column
+ * @property {number} length
+ */
+
+/**
+ * Lines are kept in blocks of about this many lines, so that inserting or
+ * removing lines only renumbers the lines of one block and moves the start of
+ * the following blocks.
+ */
+const BLOCK_SIZE = 256
+
+/**
+ * @param {readonly LineBlock[]} blocks
+ * @param {number} lineIndex
+ */
+const findBlock = (blocks, lineIndex) => {
+  let low = 0
+  let high = blocks.length - 1
+  while (low < high) {
+    const middle = (low + high + 1) >> 1
+    if (blocks[middle].start <= lineIndex) {
+      low = middle
+    } else {
+      high = middle - 1
+    }
+  }
+  return low
+}
+
+/**
+ * Splits lines into blocks of between `BLOCK_SIZE / 2` and `BLOCK_SIZE`
+ * lines, unless there are fewer lines than that.
+ *
+ * @param {readonly LineIdentifiers[]} lines
+ * @param {number} start the index of the first line
+ * @returns {LineBlock[]}
+ */
+const createBlocks = (lines, start) => {
+  const count = Math.max(Math.ceil(lines.length / BLOCK_SIZE), 1)
+  /**
+   * @type {LineBlock[]}
+   */
+  const blocks = []
+  let end = 0
+  for (let i = 0; i < count; i++) {
+    const blockStart = end
+    end = Math.round(((i + 1) * lines.length) / count)
+    const block = {
+      start: start + blockStart,
+      lines: lines.slice(blockStart, end),
+    }
+    for (let j = 0; j < block.lines.length; j++) {
+      block.lines[j].block = block
+      block.lines[j].offset = j
+    }
+    blocks.push(block)
+  }
+  return blocks
+}
+
+/**
+ * @param {LineIdentifiers} record
+ */
+const getLineIndex = (record) => {
+  return record.block.start + record.offset
+}
+
+/**
+ * @type {LineBlock}
+ */
+const NO_BLOCK = { start: 0, lines: [] }
+
+/**
+ * Maintains an inverted index from the text of identifier tokens to the lines
+ * that contain them. Identifier strings are interned while they occur in the
+ * document, and every line keeps the ids and columns of its identifiers, so
+ * finding all occurrences of an identifier only visits lines that contain it.
+ * Identifiers in strings and comments are not indexed. Lines are grouped into
+ * blocks that know their first line, so an edit that inserts or removes lines
+ * renumbers one block of lines and moves the start of the blocks after it,
+ * instead of renumbering every following line.
+ *
+ * @param {ReturnType<typeof import('./documentTokenizer.js').createDocumentTokenizer>} documentTokenizer
+ */
+export const createIdentifierIndex = (documentTokenizer) => {
+  /**
+   * @type {Map<string, number>}
+   */
+  const ids = new Map()
+  /**
+   * @type {Map<number, string>}
+   */
+  const names = new Map()
+  /**
+   * @type {Map<number, Set<LineIdentifiers>>}
+   */
+  const postings = new Map()
+  /**
+   * @type {LineBlock[]}
+   */
+  let blocks = []
+  let nextId = 0
+
+  /**
+   * @param {string} name
+   */
+  const intern = (name) => {
+    let id = ids.get(name)
+    if (id === undefined) {
+      id = nextId++
+      ids.set(name, id)
+      names.set(id, name)
+    }
+    return id
+  }
+
+  /**
+   * @param {number} lineIndex
+   * @returns {LineIdentifiers}
+   */
+  const indexLine = (lineIndex) => {
+    const line = documentTokenizer.getLine(lineIndex)
+    const tokens = documentTokenizer.getLineTokens(lineIndex)
+    const columns = getLineIdentifiers(line, tokens)
+    /**
+     * @type {number[]}
+     */
+    const identifiers = []
+    for (let i = 0; i < columns.length; i += 2) {
+      const column = columns[i]
+      const length = columns[i + 1]
+      const id = intern(line.slice(column, column + length))
+      identifiers.push(id, column, length)
+    }
+    /**
+     * @type {LineIdentifiers}
+     */
+    const record = { block: NO_BLOCK, offset: 0, identifiers }
+    for (let i = 0; i < identifiers.length; i += 3) {
+      let records = postings.get(identifiers[i])
+      if (!records) {
+        records = new Set()
+        postings.set(identifiers[i], records)
+      }
+      records.add(record)
+    }
+    return record
+  }
+
+  /**
+   * @param {LineIdentifiers} record
+   */
+  const removeLine = (record) => {
+    const { identifiers } = record
+    for (let i = 0; i < identifiers.length; i += 3) {
+      const records = postings.get(identifiers[i])
+      if (records && records.delete(record) && records.size === 0) {
+        // forget identifiers that no longer occur, or typing grows the index
+        postings.delete(identifiers[i])
+        ids.delete(names.get(identifiers[i]))
+        names.delete(identifiers[i])
+      }
+    }
+  }
+
+  /**
+   * @param {number} lineIndex
+   */
+  const getRecord = (lineIndex) => {
+    const block = blocks[findBlock(blocks, lineIndex)]
+    return block && block.lines[lineIndex - block.start]
+  }
+
+  /**
+   * @type {LineIdentifiers[]}
+   */
+  const initialLines = []
+  for (let i = 0; i < documentTokenizer.getLineCount(); i++) {
+    initialLines.push(indexLine(i))
+  }
+  blocks = createBlocks(initialLines, 0)
+
+  const dispose = documentTokenizer.onDidTokenize(
+    ({ startLine, oldEndLine, newEndLine }) => {
+      // the blocks that contain the changed lines, and the block after them
+      // when the last of them would be small
+      const first = findBlock(blocks, startLine)
+      let last = findBlock(blocks, Math.max(oldEndLine - 1, startLine))
+      let lineCount = 0
+      for (let i = first; i <= last; i++) {
+        lineCount += blocks[i].lines.length
+      }
+      lineCount += newEndLine - oldEndLine
+      if (lineCount < BLOCK_SIZE / 2 && last + 1 < blocks.length) {
+        last++
+      }
+      const start = blocks[first].start
+      const lines = blocks
+        .slice(first, last + 1)
+        .flatMap((block) => block.lines)
+      for (let i = startLine; i < oldEndLine; i++) {
+        removeLine(lines[i - start])
+      }
+      const records = []
+      for (let i = startLine; i < newEndLine; i++) {
+        records.push(indexLine(i))
+      }
+      spliceArray(lines, startLine - start, oldEndLine - startLine, records)
+      const newBlocks = createBlocks(lines, start)
+      const delta = newEndLine - oldEndLine
+      if (delta !== 0) {
+        for (let i = last + 1; i < blocks.length; i++) {
+          blocks[i].start += delta
+        }
+      }
+      spliceArray(blocks, first, last - first + 1, newBlocks)
+    },
+  )
+
+  /**
+   * Returns all occurrences of an identifier in code, sorted by position.
+   *
+   * @param {string} name
+   * @returns {Occurrence[]}
+   */
+  const getOccurrences = (name) => {
+    const id = ids.get(name)
+    const records = id === undefined ? undefined : postings.get(id)
+    if (!records) {
+      return []
+    }
+    const sorted = [...records].sort(
+      (a, b) => getLineIndex(a) - getLineIndex(b),
+    )
+    /**
+     * @type {Occurrence[]}
+     */
+    const occurrences = []
+    for (const record of sorted) {
+      const lineIndex = getLineIndex(record)
+      const { identifiers } = record
+      for (let i = 0; i < identifiers.length; i += 3) {
+        if (identifiers[i] === id) {
+          occurrences.push({
+            lineIndex,
+            column: identifiers[i + 1],
+            length: identifiers[i + 2],
+          })
+        }
+      }
+    }
+    return occurrences
+  }
+
+  /**
+   * Returns the name of the identifier at the given position, or an empty
+   * string when there is none.
+   *
+   * @param {number} lineIndex
+   * @param {number} column
+   */
+  const getIdentifierAt = (lineIndex, column) => {
+    const record = getRecord(lineIndex)
+    if (!record) {
+      return ''
+    }
+    const { identifiers } = record
+    for (let i = 0; i < identifiers.length; i += 3) {
+      const start = identifiers[i + 1]
+      if (column >= start && column <= start + identifiers[i + 2]) {
+        return documentTokenizer
+          .getLine(lineIndex)
+          .slice(start, start + identifiers[i + 2])
+      }
+    }
+    return ''
+  }
+
+  /**
+   * Returns all occurrences of the identifier at the given position, for
+   * highlighting them.
+   *
+   * @param {number} lineIndex
+   * @param {number} column
+   */
+  const getOccurrencesAt = (lineIndex, column) => {
+    const name = getIdentifierAt(lineIndex, column)
+    return name ? getOccurrences(name) : []
+  }
+
+  return {
+    getIdentifierAt,
+    getOccurrences,
+    getOccurrencesAt,
+    dispose,
+  }
+}
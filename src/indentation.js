@@ -0,0 +1,135 @@
+import { State, TokenType } from './tokenizeJava.js'
+
+/**
+ * Indentation rules that work on the tokens of a line instead of matching
+ * `indentationRules` from languageConfiguration.json. The tokens are already
+ * computed for highlighting, so the rules only walk the tokens of one line,
+ * never backtrack and ignore brackets, quotes and comment markers inside
+ * strings and comments.
+ *
+ * The editor only reads `indentationRules` as regular expressions from
+ * languageConfiguration.json, and extension.json has no entry for an
+ * indentation module, so these rules are not wired into the editor yet.
+ * scripts/check-indentation-rules.js keeps them equal to the regexes.
+ */
+
+/**
+ * @param {number} type
+ */
+const isBracketToken = (type) => {
+  return (
+    type === TokenType.Punctuation ||
+    (type >= TokenType.BracketColor1 && type <= TokenType.BracketColor6)
+  )
+}
+
+/**
+ * @param {number} charCode
+ */
+const isClosingBracket = (charCode) => {
+  return charCode === 41 || charCode === 93 || charCode === 125 // ) ] }
+}
+
+/**
+ * Returns whether the line after this line should be indented further, which
+ * is the case when an opening bracket is not followed by a closing bracket of
+ * the same kind on this line. Text tokens, which hold the rest of a line that
+ * the tokenizer could not classify, are scanned for brackets outside of
+ * quotes as well.
+ *
+ * @param {string} line
+ * @param {ArrayLike<number>} tokens
+ */
+export const shouldIncreaseIndent = (line, tokens) => {
+  // the offset of the last opening and closing bracket of each kind
+  let lastOpenParen = -1
+  let lastCloseParen = -1
+  let lastOpenSquare = -1
+  let lastCloseSquare = -1
+  let lastOpenCurly = -1
+  let lastCloseCurly = -1
+  let offset = 0
+  for (let i = 0; i < tokens.length; i += 2) {
+    const type = tokens[i]
+    const length = tokens[i + 1]
+    if ((length === 1 && isBracketToken(type)) || type === TokenType.Text) {
+      let quote = 0
+      for (let j = offset; j < offset + length; j++) {
+        const charCode = line.charCodeAt(j)
+        if (quote !== 0) {
+          if (charCode === 92) {
+            // skip the character after a backslash
+            j++
+          } else if (charCode === quote) {
+            quote = 0
+          }
+          continue
+        }
+        switch (charCode) {
+          case 34: // "
+          case 39: // '
+            quote = charCode
+            break
+          case 40: // (
+            lastOpenParen = j
+            break
+          case 41: // )
+            lastCloseParen = j
+            break
+          case 91: // [
+            lastOpenSquare = j
+            break
+          case 93: // ]
+            lastCloseSquare = j
+            break
+          case 123: // {
+            lastOpenCurly = j
+            break
+          case 125: // }
+            lastCloseCurly = j
+            break
+          default:
+            break
+        }
+      }
+    }
+    offset += length
+  }
+  return (
+    lastOpenParen > lastCloseParen ||
+    lastOpenSquare > lastCloseSquare ||
+    lastOpenCurly > lastCloseCurly
+  )
+}
+
+/**
+ * Returns whether this line should be indented less than the previous line,
+ * which is the case when its first token is a closing bracket. When the line
+ * starts inside a block comment, the rest of that comment is skipped first.
+ *
+ * @param {string} line
+ * @param {ArrayLike<number>} tokens
+ * @param {any} startLineState the state at the end of the previous line
+ */
+export const shouldDecreaseIndent = (line, tokens, startLineState) => {
+  let isInsideComment = startLineState.state === State.InsideBlockComment
+  let offset = 0
+  for (let i = 0; i < tokens.length; i += 2) {
+    const type = tokens[i]
+    const length = tokens[i + 1]
+    if (isInsideComment) {
+      if (type !== TokenType.Comment) {
+        return false
+      }
+      isInsideComment = length !== 2 || !line.startsWith('*/', offset)
+    } else if (type !== TokenType.Whitespace) {
+      return (
+        length === 1 &&
+        isBracketToken(type) &&
+        isClosingBracket(line.charCodeAt(offset))
+      )
+    }
+    offset += length
+  }
+  return false
+}
@@ -0,0 +1,235 @@
+import { spliceArray } from './spliceArray.js'
+import { readLineTokens } from './tokenBuffer.js'
+import { TokenType } from './tokenizeJava.js'
+import { tokenTypeIndices, tokenTypes } from './tokenTypeIndex.js'
+
+/**
+ * A minimap line is a `Uint8Array` of cells that each cover `columnsPerCell`
+ * columns. A cell holds the index in `tokenTypes` plus one of the token type
+ * that covers most of its columns, or 0 when it only covers whitespace or
+ * nothing.
+ *
+ * @typedef {object} MinimapOptions
+ * @property {number} [columnsPerCell]
+ * @property {number} [cellCount]
+ */
+
+const EMPTY = 0
+
+/**
+ * The minimap color of each token type index, 0 for token types that are
+ * not drawn.
+ */
+const colors = tokenTypes.map((type) =>
+  type === TokenType.Whitespace ||
+  type === TokenType.None ||
+  type === TokenType.NewLine
+    ? EMPTY
+    : tokenTypeIndices.get(type) + 1,
+)
+
+/**
+ * Scratch space for the number of columns, or of lines, of each color in the
+ * current cell, and the colors that were counted. Each provider has its own.
+ *
+ * @typedef {object} CellCounts
+ * @property {Uint16Array} counts
+ * @property {number[]} touched
+ */
+
+/**
+ * @returns {CellCounts}
+ */
+const createCellCounts = () => {
+  return {
+    counts: new Uint16Array(tokenTypes.length + 1),
+    touched: [],
+  }
+}
+
+/**
+ * @param {CellCounts} cellCounts
+ * @param {number} color
+ * @param {number} count
+ */
+const addToCell = ({ counts, touched }, color, count) => {
+  if (counts[color] === 0) {
+    touched.push(color)
+  }
+  counts[color] += count
+}
+
+/**
+ * Sets the cell to the color with the highest count and clears the counts.
+ *
+ * @param {CellCounts} cellCounts
+ * @param {Uint8Array} cells
+ * @param {number} cell
+ */
+const flushCell = ({ counts, touched }, cells, cell) => {
+  let best = EMPTY
+  let bestCount = 0
+  for (const color of touched) {
+    if (counts[color] > bestCount) {
+      best = color
+      bestCount = counts[color]
+    }
+    counts[color] = 0
+  }
+  touched.length = 0
+  cells[cell] = best
+}
+
+/**
+ * @param {CellCounts} cellCounts
+ * @param {ArrayLike<number>} tokens
+ * @param {MinimapOptions} options
+ */
+const computeCells = (
+  cellCounts,
+  tokens,
+  { columnsPerCell = 4, cellCount = 32 },
+) => {
+  const cells = new Uint8Array(cellCount)
+  const maxColumn = columnsPerCell * cellCount
+  let cell = 0
+  let offset = 0
+  for (let i = 0; i < tokens.length && offset < maxColumn; i += 2) {
+    const end = Math.min(offset + tokens[i + 1], maxColumn)
+    const typeIndex = tokenTypeIndices.get(tokens[i])
+    const color = typeIndex === undefined ? EMPTY : colors[typeIndex]
+    while (offset < end) {
+      const tokenCell = Math.floor(offset / columnsPerCell)
+      const take = Math.min(end, (tokenCell + 1) * columnsPerCell) - offset
+      if (tokenCell !== cell) {
+        flushCell(cellCounts, cells, cell)
+        cell = tokenCell
+      }
+      if (color !== EMPTY) {
+        addToCell(cellCounts, color, take)
+      }
+      offset += take
+    }
+  }
+  flushCell(cellCounts, cells, cell)
+  return cells
+}
+
+/**
+ * Returns the minimap cells of one line.
+ *
+ * @param {ArrayLike<number>} tokens
+ * @param {MinimapOptions} [options]
+ */
+export const getMinimapCells = (tokens, options = {}) => {
+  return computeCells(createCellCounts(), tokens, options)
+}
+
+/**
+ * Returns the minimap cells of all published lines of a token buffer, one row
+ * of `cellCount` cells per line.
+ *
+ * @param {ArrayBuffer|SharedArrayBuffer} buffer
+ * @param {number} lineCount
+ * @param {MinimapOptions} [options]
+ */
+export const getTokenBufferMinimap = (buffer, lineCount, options = {}) => {
+  const { cellCount = 32 } = options
+  const rows = new Uint8Array(lineCount * cellCount)
+  const cellCounts = createCellCounts()
+  /**
+   * @type {number[]}
+   */
+  const tokens = []
+  for (let i = 0; i < lineCount; i++) {
+    readLineTokens(buffer, i, tokens)
+    rows.set(computeCells(cellCounts, tokens, options), i * cellCount)
+  }
+  return rows
+}
+
+/**
+ * Caches the minimap cells of each line of a document. Lines that the
+ * document tokenizer re-tokenizes are invalidated and computed again when
+ * they are requested.
+ *
+ * @param {ReturnType<typeof import('./documentTokenizer.js').createDocumentTokenizer>} documentTokenizer
+ * @param {MinimapOptions} [options]
+ */
+export const createMinimapProvider = (documentTokenizer, options = {}) => {
+  const { cellCount = 32 } = options
+  const cellCounts = createCellCounts()
+  /**
+   * @type {(Uint8Array|undefined)[]}
+   */
+  const lineCells = new Array(documentTokenizer.getLineCount()).fill(undefined)
+
+  const dispose = documentTokenizer.onDidTokenize(
+    ({ startLine, oldEndLine, newEndLine }) => {
+      spliceArray(
+        lineCells,
+        startLine,
+        oldEndLine - startLine,
+        new Array(newEndLine - startLine).fill(undefined),
+      )
+    },
+  )
+
+  /**
+   * @param {number} lineIndex
+   */
+  const getLineCells = (lineIndex) => {
+    let cells = lineCells[lineIndex]
+    if (!cells) {
+      const tokens = documentTokenizer.getLineTokens(lineIndex)
+      cells = computeCells(cellCounts, tokens, options)
+      lineCells[lineIndex] = cells
+    }
+    return cells
+  }
+
+  /**
+   * Returns the cells of the lines from `startLine` to `endLine`, one row per
+   * `linesPerRow` lines. Each cell of a row has the color that most of the
+   * lines of the row have in that cell.
+   *
+   * @param {number} startLine
+   * @param {number} endLine
+   * @param {number} [linesPerRow]
+   */
+  const getRows = (startLine, endLine, linesPerRow = 1) => {
+    endLine = Math.min(endLine, documentTokenizer.getLineCount())
+    const rowCount = Math.max(Math.ceil((endLine - startLine) / linesPerRow), 0)
+    const rows = new Uint8Array(rowCount * cellCount)
+    for (let row = 0; row < rowCount; row++) {
+      const rowStart = startLine + row * linesPerRow
+      const rowEnd = Math.min(rowStart + linesPerRow, endLine)
+      if (rowEnd - rowStart === 1) {
+        rows.set(getLineCells(rowStart), row * cellCount)
+        continue
+      }
+      // computed first, because computing cells uses the same scratch space
+      const linesCells = []
+      for (let i = rowStart; i < rowEnd; i++) {
+        linesCells.push(getLineCells(i))
+      }
+      const rowCells = rows.subarray(row * cellCount, (row + 1) * cellCount)
+      for (let cell = 0; cell < cellCount; cell++) {
+        for (const cells of linesCells) {
+          const color = cells[cell]
+          if (color !== EMPTY) {
+            addToCell(cellCounts, color, 1)
+          }
+        }
+        flushCell(cellCounts, rowCells, cell)
+      }
+    }
+    return rows
+  }
+
+  return {
+    getLineCells,
+    getRows,
+    dispose,
+  }
+}
@@ -0,0 +1,172 @@
+import * as TokenizeJava from './tokenizeJava.js'
+
+const { State, TokenType } = TokenizeJava
+
+/**
+ * Flags that select where matches are reported.
+ *
+ * @enum number
+ */
+export const TokenClass = {
+  Code: 1,
+  String: 2,
+  Comment: 4,
+}
+
+export const allTokenClasses =
+  TokenClass.Code | TokenClass.String | TokenClass.Comment
+
+/**
+ * @typedef {object} SearchMatch
+ * @property {number} lineIndex
+ * @property {number} column
+ * @property {number} tokenClass
+ */
+
+/**
+ * Returns the class of the token at the column. Quotes belong to strings.
+ *
+ * @param {string} line
+ * @param {ArrayLike<number>} tokens
+ * @param {number} column
+ */
+const getTokenClass = (line, tokens, column) => {
+  let offset = 0
+  for (let i = 0; i < tokens.length; i += 2) {
+    const length = tokens[i + 1]
+    if (column < offset + length) {
+      const type = tokens[i]
+      if (type === TokenType.Comment) {
+        return TokenClass.Comment
+      }
+      if (type === TokenType.String) {
+        return TokenClass.String
+      }
+      const charCode = line.charCodeAt(offset)
+      if (
+        type === TokenType.Punctuation &&
+        length === 1 &&
+        (charCode === 34 || charCode === 39) // " '
+      ) {
+        return TokenClass.String
+      }
+      return TokenClass.Code
+    }
+    offset += length
+  }
+  return TokenClass.Code
+}
+
+/**
+ * Returns the next index of `value` at or after `position`, remembering the
+ * previous result so that repeated lookups while walking forward through the
+ * text stay linear.
+ *
+ * @param {string} text
+ * @param {string} value
+ */
+const createNextIndex = (text, value) => {
+  let next = -2
+  /**
+   * @param {number} position
+   */
+  return (position) => {
+    if (next !== -1 && next < position) {
+      next = text.indexOf(value, position)
+    }
+    return next === -1 ? Infinity : next
+  }
+}
+
+/**
+ * Finds all occurrences of `query` in Java source and reports them with the
+ * class of the token they start in. Files without occurrences are not
+ * tokenized. Otherwise lines are only tokenized when they contain an
+ * occurrence or when they could change the state; block comments and strings
+ * are skipped with `indexOf`, as long as they do not contain the end marker.
+ *
+ * @param {string} text
+ * @param {string} query
+ * @param {number} [tokenClasses] the classes to report, see `TokenClass`
+ * @returns {SearchMatch[]}
+ */
+export const searchTokens = (text, query, tokenClasses = allTokenClasses) => {
+  /**
+   * @type {SearchMatch[]}
+   */
+  const matches = []
+  if (!query) {
+    return matches
+  }
+  let hit = text.indexOf(query)
+  if (hit === -1) {
+    return matches
+  }
+  const nextBlockCommentEnd = createNextIndex(text, '*/')
+  const nextDoubleQuote = createNextIndex(text, '"')
+  const nextSingleQuote = createNextIndex(text, "'")
+  const nextSlash = createNextIndex(text, '/')
+  const nextClass = createNextIndex(text, 'class')
+  const nextExtends = createNextIndex(text, 'extends')
+  let lineState = TokenizeJava.initialLineState
+  let lineIndex = 0
+  let lineStart = 0
+  while (hit !== -1) {
+    let lineEnd = text.indexOf('\n', lineStart)
+    if (lineEnd === -1) {
+      lineEnd = text.length
+    }
+    const { state } = lineState
+    // a query that starts with a newline matches at the end of the line
+    if (hit <= lineEnd) {
+      const line = text.slice(lineStart, lineEnd)
+      lineState = TokenizeJava.tokenizeLine(line, lineState)
+      const { tokens } = lineState
+      while (hit !== -1 && hit <= lineEnd) {
+        const column = hit - lineStart
+        const tokenClass = getTokenClass(line, tokens, column)
+        if (tokenClass & tokenClasses) {
+          matches.push({ lineIndex, column, tokenClass })
+        }
+        hit = text.indexOf(query, hit + query.length)
+      }
+    } else if (state === State.InsideBlockComment) {
+      // the whole line stays in the comment unless it contains `*/`
+      if (nextBlockCommentEnd(lineStart) < lineEnd) {
+        lineState = TokenizeJava.tokenizeLine(
+          text.slice(lineStart, lineEnd),
+          lineState,
+        )
+      }
+    } else if (state === State.InsideDoubleQuoteString) {
+      if (nextDoubleQuote(lineStart) < lineEnd) {
+        lineState = TokenizeJava.tokenizeLine(
+          text.slice(lineStart, lineEnd),
+          lineState,
+        )
+      }
+    } else if (state === State.InsideSingleQuoteString) {
+      if (nextSingleQuote(lineStart) < lineEnd) {
+        lineState = TokenizeJava.tokenizeLine(
+          text.slice(lineStart, lineEnd),
+          lineState,
+        )
+      }
+    } else if (
+      state !== State.TopLevelContent ||
+      nextDoubleQuote(lineStart) < lineEnd ||
+      nextSingleQuote(lineStart) < lineEnd ||
+      nextSlash(lineStart) < lineEnd ||
+      nextClass(lineStart) < lineEnd ||
+      nextExtends(lineStart) < lineEnd
+    ) {
+      lineState = TokenizeJava.tokenizeLine(
+        text.slice(lineStart, lineEnd),
+        lineState,
+      )
+    }
+    lineIndex++
+    lineStart = lineEnd + 1
+  }
+  return matches
+}
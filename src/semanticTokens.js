@@ -0,0 +1,268 @@
+import { spliceArray } from './spliceArray.js'
+import { TokenMap, TokenType } from './tokenizeJava.js'
+
+/**
+ * @typedef {object} SemanticTokensEdit
+ * @property {number} start
+ * @property {number} deleteCount
+ * @property {Uint32Array} data
+ */
+
+/**
+ * @typedef {import('./documentTokenizer.js').TokenizeChange} TokenizeChange
+ */
+
+const INTS_PER_TOKEN = 5
+
+const SKIPPED_TOKEN_TYPES = new Set([
+  TokenType.Whitespace,
+  TokenType.None,
+  TokenType.NewLine,
+])
+
+const legendTypes = Object.values(TokenType).filter(
+  (type) => !SKIPPED_TOKEN_TYPES.has(type),
+)
+
+/**
+ * Maps token types to their index in `legend.tokenTypes`. Token types without
+ * an index are not sent to the client.
+ *
+ * @type {Map<number, number>}
+ */
+const legendIndices = new Map(legendTypes.map((type, index) => [type, index]))
+
+export const legend = {
+  tokenTypes: legendTypes.map((type) => TokenMap[type]),
+  tokenModifiers: [],
+}
+
+/**
+ * Appends the relative encoding of one line to `data` and returns the line of
+ * the last token that was written.
+ *
+ * @param {number[]} data
+ * @param {ArrayLike<number>} tokens
+ * @param {number} lineIndex
+ * @param {number} previousLine
+ */
+const encodeLine = (data, tokens, lineIndex, previousLine) => {
+  let offset = 0
+  let previousStart = 0
+  for (let i = 0; i < tokens.length; i += 2) {
+    const length = tokens[i + 1]
+    const typeIndex = legendIndices.get(tokens[i])
+    if (typeIndex !== undefined) {
+      const deltaLine = lineIndex - previousLine
+      data.push(
+        deltaLine,
+        deltaLine === 0 ? offset - previousStart : offset,
+        length,
+        typeIndex,
+        0,
+      )
+      previousLine = lineIndex
+      previousStart = offset
+    }
+    offset += length
+  }
+  return previousLine
+}
+
+/**
+ * @param {ArrayLike<number>} tokens
+ */
+const countTokens = (tokens) => {
+  let count = 0
+  for (let i = 0; i < tokens.length; i += 2) {
+    if (legendIndices.has(tokens[i])) {
+      count++
+    }
+  }
+  return count
+}
+
+/**
+ * Encodes the tokens of all lines in the relative format of lsp semantic
+ * tokens: five integers per token holding delta line, delta start, length,
+ * token type and token modifiers. Whitespace is omitted.
+ *
+ * @param {readonly ArrayLike<number>[]} linesTokens
+ */
+export const getSemanticTokens = (linesTokens) => {
+  /**
+   * @type {number[]}
+   */
+  const data = []
+  let previousLine = 0
+  for (let i = 0; i < linesTokens.length; i++) {
+    previousLine = encodeLine(data, linesTokens[i], i, previousLine)
+  }
+  return new Uint32Array(data)
+}
+
+/**
+ * Keeps the semantic tokens of a document tokenizer up to date and answers
+ * full and delta requests. Edits are derived from the lines that the
+ * document tokenizer re-tokenized, without comparing whole token arrays.
+ *
+ * @param {ReturnType<typeof import('./documentTokenizer.js').createDocumentTokenizer>} documentTokenizer
+ */
+export const createSemanticTokensProvider = (documentTokenizer) => {
+  const lineCount = documentTokenizer.getLineCount()
+  /**
+   * @type {number[]}
+   */
+  const tokenCounts = []
+  /**
+   * @type {ArrayLike<number>[]}
+   */
+  const linesTokens = []
+  for (let i = 0; i < lineCount; i++) {
+    const tokens = documentTokenizer.getLineTokens(i)
+    linesTokens.push(tokens)
+    tokenCounts.push(countTokens(tokens))
+  }
+  let data = getSemanticTokens(linesTokens)
+  let resultId = 0
+  let sentData = data
+  let sentResultId = -1
+  let dirtyStart = Infinity
+  let dirtySuffix = Infinity
+
+  /**
+   * @param {number} end
+   */
+  const getTokenIndex = (end) => {
+    let count = 0
+    for (let i = 0; i < end; i++) {
+      count += tokenCounts[i]
+    }
+    return count * INTS_PER_TOKEN
+  }
+
+  /**
+   * @param {number} lineIndex
+   */
+  const findPreviousTokenLine = (lineIndex) => {
+    for (let i = lineIndex - 1; i >= 0; i--) {
+      if (tokenCounts[i] > 0) {
+        return i
+      }
+    }
+    return 0
+  }
+
+  /**
+   * @param {number} lineIndex
+   */
+  const findNextTokenLine = (lineIndex) => {
+    for (let i = lineIndex; i < tokenCounts.length; i++) {
+      if (tokenCounts[i] > 0) {
+        return i
+      }
+    }
+    return -1
+  }
+
+  /**
+   * @param {TokenizeChange} change
+   */
+  const handleChange = ({ startLine, oldEndLine, newEndLine }) => {
+    const start = getTokenIndex(startLine)
+    let end = start
+    for (let i = startLine; i < oldEndLine; i++) {
+      end += tokenCounts[i] * INTS_PER_TOKEN
+    }
+    /**
+     * @type {number[]}
+     */
+    const inserted = []
+    const newCounts = []
+    let previousLine = findPreviousTokenLine(startLine)
+    for (let i = startLine; i < newEndLine; i++) {
+      const tokens = documentTokenizer.getLineTokens(i)
+      previousLine = encodeLine(inserted, tokens, i, previousLine)
+      newCounts.push(countTokens(tokens))
+    }
+    spliceArray(tokenCounts, startLine, oldEndLine - startLine, newCounts)
+    const nextLine = findNextTokenLine(newEndLine)
+    if (nextLine !== -1) {
+      // the first token after the change keeps its columns, but its line is
+      // relative to the last token before it
+      inserted.push(
+        nextLine - previousLine,
+        data[end + 1],
+        data[end + 2],
+        data[end + 3],
+        data[end + 4],
+      )
+      end += INTS_PER_TOKEN
+    }
+    const newData = new Uint32Array(
+      data.length - (end - start) + inserted.length,
+    )
+    newData.set(data.subarray(0, start))
+    newData.set(inserted, start)
+    newData.set(data.subarray(end), start + inserted.length)
+    dirtyStart = Math.min(dirtyStart, start)
+    dirtySuffix = Math.min(dirtySuffix, data.length - end)
+    data = newData
+    resultId++
+  }
+
+  const dispose = documentTokenizer.onDidTokenize(handleChange)
+
+  /**
+   * @param {Uint32Array} result
+   */
+  const markSent = (result) => {
+    sentData = result
+    sentResultId = resultId
+    dirtyStart = Infinity
+    dirtySuffix = Infinity
+  }
+
+  const getFull = () => {
+    markSent(data)
+    return {
+      resultId: String(resultId),
+      data,
+    }
+  }
+
+  /**
+   * Returns the edits since the result with the given id, or the full tokens
+   * when that result is not the last one that was sent.
+   *
+   * @param {string} previousResultId
+   */
+  const getDelta = (previousResultId) => {
+    if (previousResultId !== String(sentResultId)) {
+      return getFull()
+    }
+    /**
+     * @type {SemanticTokensEdit[]}
+     */
+    const edits = []
+    if (dirtyStart !== Infinity) {
+      const start = Math.min(dirtyStart, sentData.length - dirtySuffix)
+      edits.push({
+        start,
+        deleteCount: sentData.length - dirtySuffix - start,
+        data: data.slice(start, data.length - dirtySuffix),
+      })
+    }
+    markSent(data)
+    return {
+      resultId: String(resultId),
+      edits,
+    }
+  }
+
+  return {
+    getFull,
+    getDelta,
+    dispose,
+  }
+}
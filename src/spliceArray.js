@@ -0,0 +1,27 @@
+const MAX_SPREAD_LENGTH = 10_000
+
+/**
+ * Like `array.splice(start, deleteCount, ...items)`, but does not exceed the
+ * maximum number of call arguments when a large number of items is inserted.
+ *
+ * @template T
+ * @param {T[]} array
+ * @param {number} start
+ * @param {number} deleteCount
+ * @param {readonly T[]} items
+ */
+export const spliceArray = (array, start, deleteCount, items) => {
+  if (items.length <= MAX_SPREAD_LENGTH) {
+    return array.splice(start, deleteCount, ...items)
+  }
+  const deleted = array.slice(start, start + deleteCount)
+  const tail = array.slice(start + deleteCount)
+  array.length = start
+  for (const item of items) {
+    array.push(item)
+  }
+  for (const item of tail) {
+    array.push(item)
+  }
+  return deleted
+}
@@ -0,0 +1,471 @@
+import { RE_TEXT_PART } from './getLineIdentifiers.js'
+import { spliceArray } from './spliceArray.js'
+import { TokenType } from './tokenizeJava.js'
+
+/**
+ * Every line is reduced to a list of event codes. Brackets and semicolons use
+ * their character code, everything else one of these negative codes.
+ */
+const EventCode = {
+  TypeHeader: -1,
+  MethodHeader: -2,
+  // an operator, which cannot appear between a header and its body
+  Operator: -3,
+}
+
+/**
+ * The parser state is saved every `CHECKPOINT_INTERVAL` lines, so that after
+ * an edit parsing resumes from the last checkpoint before the edited lines.
+ */
+const CHECKPOINT_INTERVAL = 256
+
+/**
+ * @type {readonly number[]}
+ */
+const NO_EVENTS = []
+
+/**
+ * @param {number} charCode
+ */
+const isEventCharCode = (charCode) => {
+  switch (charCode) {
+    case 40: // (
+    case 41: // )
+    case 59: // ;
+    case 123: // {
+    case 125: // }
+      return true
+    default:
+      return false
+  }
+}
+
+/**
+ * `<`, `>`, `&` and `?` are not operators here, because they appear in the
+ * type parameters of a class header.
+ *
+ * @param {number} charCode
+ */
+const isOperatorCharCode = (charCode) => {
+  switch (charCode) {
+    case 33: // !
+    case 37: // %
+    case 42: // *
+    case 43: // +
+    case 45: // -
+    case 47: // /
+    case 61: // =
+    case 94: // ^
+    case 124: // |
+    case 126: // ~
+      return true
+    default:
+      return false
+  }
+}
+
+/**
+ * @param {number[]} events
+ * @param {number} charCode
+ */
+const addCharCodeEvent = (events, charCode) => {
+  if (isEventCharCode(charCode)) {
+    events.push(charCode)
+  } else if (isOperatorCharCode(charCode)) {
+    events.push(EventCode.Operator)
+  }
+}
+
+/**
+ * Keywords that can be followed by `(`.
+ */
+const statementKeywords = new Set([
+  'catch',
+  'for',
+  'if',
+  'return',
+  'super',
+  'switch',
+  'synchronized',
+  'this',
+  'throw',
+  'try',
+  'while',
+])
+
+/**
+ * Text tokens hold the rest of a line that the tokenizer could not classify,
+ * for example after the `?` of a wildcard type, so they can contain method
+ * headers as well.
+ *
+ * @param {number[]} events
+ * @param {string} line
+ * @param {number} start
+ * @param {number} end
+ */
+const addTextEvents = (events, line, start, end) => {
+  let previous = ''
+  RE_TEXT_PART.lastIndex = start
+  let match
+  while (RE_TEXT_PART.lastIndex < end && (match = RE_TEXT_PART.exec(line))) {
+    const text = match[0]
+    if (match[1]) {
+      if (
+        previous !== '.' &&
+        previous !== 'new' &&
+        !statementKeywords.has(text)
+      ) {
+        events.push(EventCode.MethodHeader)
+      }
+    } else if (text === 'new') {
+      events.push(EventCode.Operator)
+    } else if (text.length === 1) {
+      addCharCodeEvent(events, text.charCodeAt(0))
+    }
+    if (text.trim()) {
+      previous = text
+    }
+  }
+}
+
+/**
+ * @param {string} line
+ * @param {number} type
+ * @param {number} offset
+ * @param {number} length
+ */
+const isTypeKeyword = (line, type, offset, length) => {
+  switch (type) {
+    case TokenType.KeywordImport:
+      // `extends` is emitted as KeywordImport as well
+      return length === 5 && line.startsWith('class', offset)
+    case TokenType.Keyword:
+      return (
+        (length === 9 && line.startsWith('interface', offset)) ||
+        (length === 4 && line.startsWith('enum', offset))
+      )
+    case TokenType.Attribute:
+      return length === 10 && line.startsWith('@interface', offset)
+    default:
+      return false
+  }
+}
+
+/**
+ * Returns the events of a line that matter for finding the headers of class
+ * and method bodies. `Foo.class`, method calls on objects and anonymous
+ * classes are not headers.
+ *
+ * @param {string} line
+ * @param {ArrayLike<number>} tokens
+ * @returns {readonly number[]}
+ */
+export const getLineScopeEvents = (line, tokens) => {
+  /**
+   * @type {number[]|undefined}
+   */
+  let events
+  let offset = 0
+  // whether the previous token that is not whitespace is `.` or `new`
+  let isAfterDotOrNew = false
+  for (let i = 0; i < tokens.length; i += 2) {
+    const type = tokens[i]
+    const length = tokens[i + 1]
+    switch (type) {
+      case TokenType.Whitespace:
+        offset += length
+        continue
+      case TokenType.Punctuation:
+      case TokenType.BracketColor1:
+      case TokenType.BracketColor2:
+      case TokenType.BracketColor3:
+      case TokenType.BracketColor4:
+      case TokenType.BracketColor5:
+      case TokenType.BracketColor6:
+        events ||= []
+        for (let j = offset; j < offset + length; j++) {
+          addCharCodeEvent(events, line.charCodeAt(j))
+        }
+        break
+      case TokenType.Text:
+        events ||= []
+        addTextEvents(events, line, offset, offset + length)
+        break
+      case TokenType.KeywordNew:
+        events ||= []
+        events.push(EventCode.Operator)
+        break
+      case TokenType.FunctionName:
+        if (!isAfterDotOrNew) {
+          events ||= []
+          events.push(EventCode.MethodHeader)
+        }
+        break
+      default:
+        if (!isAfterDotOrNew && isTypeKeyword(line, type, offset, length)) {
+          events ||= []
+          events.push(EventCode.TypeHeader)
+        }
+        break
+    }
+    isAfterDotOrNew =
+      type === TokenType.KeywordNew ||
+      (type === TokenType.Punctuation && line.charCodeAt(offset) === 46) // .
+    offset += length
+  }
+  return events && events.length > 0 ? events : NO_EVENTS
+}
+
+/**
+ * @typedef {object} Checkpoint
+ * @property {number} scopeCount
+ * @property {number[]} stack
+ * @property {number} parenDepth
+ * @property {number} pendingKind
+ * @property {number} pendingLine
+ */
+
+/**
+ * Keeps track of the class, interface, enum and method bodies of a document,
+ * for showing the headers of the scopes that enclose the first visible line.
+ *
+ * The events of each line are kept up to date with the lines that the
+ * document tokenizer re-tokenizes. Scopes are found by a lazy linear pass over
+ * these events that only goes as far as the lines that were asked for, and
+ * that saves its state in checkpoints, so that after an edit it resumes from
+ * the checkpoint before the edited lines. Scopes are stored in the order they
+ * were opened, so the scopes that enclose a line are found with a binary
+ * search for the last scope that starts before it, followed by its parents.
+ *
+ * @param {ReturnType<typeof import('./documentTokenizer.js').createDocumentTokenizer>} documentTokenizer
+ */
+export const createStickyScrollProvider = (documentTokenizer) => {
+  /**
+   * @param {number} start
+   * @param {number} end
+   */
+  const getEvents = (start, end) => {
+    const events = []
+    for (let i = start; i < end; i++) {
+      events.push(
+        getLineScopeEvents(
+          documentTokenizer.getLine(i),
+          documentTokenizer.getLineTokens(i),
+        ),
+      )
+    }
+    return events
+  }
+
+  const lineEvents = getEvents(0, documentTokenizer.getLineCount())
+
+  // the header line, the line of the opening and closing curly bracket and
+  // the index of the parent scope of each scope, the end line is -1 while the
+  // scope is open
+  /**
+   * @type {number[]}
+   */
+  const scopeStartLines = []
+  /**
+   * @type {number[]}
+   */
+  const scopeBodyLines = []
+  /**
+   * @type {number[]}
+   */
+  const scopeEndLines = []
+  /**
+   * @type {number[]}
+   */
+  const scopeParents = []
+
+  // the scope index of each open curly bracket, or -1 for other blocks,
+  // followed by the paren depth outside of it
+  /**
+   * @type {number[]}
+   */
+  let stack = []
+  let parenDepth = 0
+  let pendingKind = 0
+  let pendingLine = -1
+  let parsedLineCount = 0
+  /**
+   * @type {Checkpoint[]}
+   */
+  const checkpoints = []
+
+  /**
+   * @returns {Checkpoint}
+   */
+  const createCheckpoint = () => {
+    return {
+      scopeCount: scopeStartLines.length,
+      stack: stack.slice(),
+      parenDepth,
+      pendingKind,
+      pendingLine,
+    }
+  }
+
+  /**
+   * @param {number} lineIndex
+   */
+  const rollback = (lineIndex) => {
+    if (lineIndex >= parsedLineCount) {
+      return
+    }
+    // the checkpoint is pushed again when parsing resumes
+    const index = Math.floor(lineIndex / CHECKPOINT_INTERVAL)
+    const checkpoint = checkpoints[index]
+    checkpoints.length = index
+    scopeStartLines.length = checkpoint.scopeCount
+    scopeBodyLines.length = checkpoint.scopeCount
+    scopeEndLines.length = checkpoint.scopeCount
+    scopeParents.length = checkpoint.scopeCount
+    stack = checkpoint.stack.slice()
+    for (let i = 0; i < stack.length; i += 2) {
+      if (stack[i] !== -1) {
+        scopeEndLines[stack[i]] = -1
+      }
+    }
+    parenDepth = checkpoint.parenDepth
+    pendingKind = checkpoint.pendingKind
+    pendingLine = checkpoint.pendingLine
+    parsedLineCount = index * CHECKPOINT_INTERVAL
+  }
+
+  const dispose = documentTokenizer.onDidTokenize(
+    ({ startLine, oldEndLine, newEndLine }) => {
+      spliceArray(
+        lineEvents,
+        startLine,
+        oldEndLine - startLine,
+        getEvents(startLine, newEndLine),
+      )
+      rollback(startLine)
+    },
+  )
+
+  /**
+   * @param {number} lineIndex
+   */
+  const parseLine = (lineIndex) => {
+    for (const code of lineEvents[lineIndex]) {
+      switch (code) {
+        case EventCode.TypeHeader:
+          if (parenDepth === 0) {
+            pendingKind = code
+            pendingLine = lineIndex
+          }
+          break
+        case EventCode.MethodHeader:
+          if (parenDepth === 0 && pendingKind !== EventCode.TypeHeader) {
+            pendingKind = code
+            pendingLine = lineIndex
+          }
+          break
+        case EventCode.Operator:
+        case 59: // ;
+          if (parenDepth === 0) {
+            pendingKind = 0
+          }
+          break
+        case 40: // (
+          parenDepth++
+          break
+        case 41: // )
+          if (parenDepth > 0) {
+            parenDepth--
+          }
+          break
+        case 123: {
+          // {
+          let scope = -1
+          if (pendingKind !== 0 && parenDepth === 0) {
+            scope = scopeStartLines.length
+            scopeStartLines.push(pendingLine)
+            scopeBodyLines.push(lineIndex)
+            scopeEndLines.push(-1)
+            let parent = -1
+            for (let i = stack.length - 2; i >= 0; i -= 2) {
+              if (stack[i] !== -1) {
+                parent = stack[i]
+                break
+              }
+            }
+            scopeParents.push(parent)
+          }
+          stack.push(scope, parenDepth)
+          parenDepth = 0
+          pendingKind = 0
+          break
+        }
+        case 125: // }
+          if (stack.length > 0) {
+            parenDepth = stack.pop()
+            const scope = stack.pop()
+            if (scope !== -1) {
+              scopeEndLines[scope] = lineIndex
+            }
+          }
+          pendingKind = 0
+          break
+        default:
+          break
+      }
+    }
+  }
+
+  /**
+   * @param {number} lineCount
+   */
+  const parseUntil = (lineCount) => {
+    lineCount = Math.min(lineCount, lineEvents.length)
+    for (let i = parsedLineCount; i < lineCount; i++) {
+      if (i % CHECKPOINT_INTERVAL === 0) {
+        checkpoints.push(createCheckpoint())
+      }
+      parseLine(i)
+    }
+    parsedLineCount = Math.max(parsedLineCount, lineCount)
+  }
+
+  /**
+   * Returns the header lines of the scopes that enclose the line, from the
+   * outermost to the innermost scope. A scope encloses the lines from its
+   * opening to its closing curly bracket.
+   *
+   * @param {number} lineIndex
+   * @returns {number[]}
+   */
+  const getEnclosingScopes = (lineIndex) => {
+    parseUntil(lineIndex + 1)
+    // the last scope whose body starts at or before the line
+    let low = 0
+    let high = scopeBodyLines.length
+    while (low < high) {
+      const middle = (low + high) >>> 1
+      if (scopeBodyLines[middle] <= lineIndex) {
+        low = middle + 1
+      } else {
+        high = middle
+      }
+    }
+    /**
+     * @type {number[]}
+     */
+    const startLines = []
+    for (let scope = low - 1; scope !== -1; scope = scopeParents[scope]) {
+      const endLine = scopeEndLines[scope]
+      if (endLine === -1 || endLine >= lineIndex) {
+        startLines.push(scopeStartLines[scope])
+      }
+    }
+    return startLines.reverse()
+  }
+
+  return {
+    getEnclosingScopes,
+    dispose,
+  }
+}
@@ -0,0 +1,206 @@
+import * as TokenizeJava from './tokenizeJava.js'
+
+/**
+ * @typedef {object} LineTokenIndex
+ * @property {Uint32Array} ends the end offset of each token, in increasing order
+ * @property {Uint8Array} states the state before each token, followed by the state at the end of the line
+ */
+
+/**
+ * @typedef {object} TokenAtColumn
+ * @property {number} type the token type, or -1 when the line has no tokens
+ * @property {number} start
+ * @property {number} end
+ * @property {number} state the state of the tokenizer before it reads the character at the column
+ */
+
+/**
+ * @type {WeakMap<ArrayLike<number>, LineTokenIndex>}
+ */
+const indices = new WeakMap()
+
+/**
+ * @param {ArrayLike<number>} tokens
+ * @param {ArrayLike<number>} tokenStates the state before each token, as
+ * recorded by `tokenizeLine`, followed by the state at the end of the line
+ * @returns {LineTokenIndex}
+ */
+const createLineTokenIndex = (tokens, tokenStates) => {
+  const tokenCount = tokens.length / 2
+  const ends = new Uint32Array(tokenCount)
+  let offset = 0
+  for (let i = 0; i < tokenCount; i++) {
+    offset += tokens[i * 2 + 1]
+    ends[i] = offset
+  }
+  const states =
+    tokenStates instanceof Uint8Array
+      ? tokenStates
+      : Uint8Array.from(tokenStates)
+  const index = { ends, states }
+  indices.set(tokens, index)
+  return index
+}
+
+/**
+ * Returns the prefix summed token offsets and the state before each token of
+ * a line. The states are taken from `tokenStates` when the caller recorded
+ * them while tokenizing, see `getLineTokenStates` of the document tokenizer,
+ * and are otherwise recorded by tokenizing the line again. The index is
+ * computed once per token array, so the tokens must not be modified
+ * afterwards.
+ *
+ * @param {string} line
+ * @param {ArrayLike<number>} tokens
+ * @param {any} startLineState the state at the end of the previous line
+ * @param {ArrayLike<number>} [tokenStates]
+ * @returns {LineTokenIndex}
+ */
+export const getLineTokenIndex = (
+  line,
+  tokens,
+  startLineState,
+  tokenStates,
+) => {
+  const index = indices.get(tokens)
+  if (index) {
+    return index
+  }
+  if (tokenStates) {
+    return createLineTokenIndex(tokens, tokenStates)
+  }
+  /**
+   * @type {number[]}
+   */
+  const recorded = []
+  const { state } = TokenizeJava.tokenizeLine(line, startLineState, recorded)
+  recorded.push(state)
+  return createLineTokenIndex(tokens, recorded)
+}
+
+/**
+ * Returns the token that contains the character at the column, using binary
+ * search over the token offsets. Columns at or after the end of the line
+ * resolve to the last token and the state at the end of the line.
+ *
+ * @param {string} line
+ * @param {ArrayLike<number>} tokens
+ * @param {any} startLineState the state at the end of the previous line
+ * @param {number} column
+ * @param {ArrayLike<number>} [tokenStates] see `getLineTokenIndex`
+ * @returns {TokenAtColumn}
+ */
+export const getTokenAtColumn = (
+  line,
+  tokens,
+  startLineState,
+  column,
+  tokenStates,
+) => {
+  const { ends, states } = getLineTokenIndex(
+    line,
+    tokens,
+    startLineState,
+    tokenStates,
+  )
+  const tokenCount = ends.length
+  if (tokenCount === 0) {
+    return { type: -1, start: 0, end: 0, state: states[0] }
+  }
+  let low = 0
+  let high = tokenCount - 1
+  while (low < high) {
+    const middle = (low + high) >>> 1
+    if (ends[middle] > column) {
+      high = middle
+    } else {
+      low = middle + 1
+    }
+  }
+  return {
+    type: tokens[low * 2],
+    start: low === 0 ? 0 : ends[low - 1],
+    end: ends[low],
+    state: column >= ends[tokenCount - 1] ? states[tokenCount] : states[low],
+  }
+}
+
+/**
+ * Like `getTokenAtColumn`, for a line of a document tokenizer. When the
+ * document tokenizer records token states, the index is built from them, so
+ * the line is not tokenized again after an edit.
+ *
+ * @param {ReturnType<typeof import('./documentTokenizer.js').createDocumentTokenizer>} documentTokenizer
+ * @param {number} lineIndex
+ * @param {number} column
+ */
+export const getTokenAtColumnOfDocument = (
+  documentTokenizer,
+  lineIndex,
+  column,
+) => {
+  return getTokenAtColumn(
+    documentTokenizer.getLine(lineIndex),
+    documentTokenizer.getLineTokens(lineIndex),
+    documentTokenizer.getStartState(lineIndex),
+    column,
+    documentTokenizer.getLineTokenStates(lineIndex),
+  )
+}
+
+/**
+ * @typedef {object} LastTokenized
+ * @property {string} line
+ * @property {number} packed
+ * @property {ArrayLike<number>} tokens
+ */
+
+/**
+ * The last line tokenized for each document.
+ *
+ * @type {WeakMap<object, LastTokenized>}
+ */
+const lastTokenizedLines = new WeakMap()
+
+/**
+ * Like `getTokenAtColumn`, for a line that has not been tokenized yet. The
+ * line is tokenized from the cached state at the end of the previous line,
+ * recording the state before each token in the same pass. The tokens of the
+ * last line of each document are kept for following queries, for example
+ * while typing in the same line, so that queries in other documents do not
+ * evict them.
+ *
+ * @param {object} document any object that identifies the document
+ * @param {string} line
+ * @param {any} startLineState the state at the end of the previous line
+ * @param {number} column
+ */
+export const getTokenAtColumnOfLine = (
+  document,
+  line,
+  startLineState,
+  column,
+) => {
+  const packed = TokenizeJava.getPackedLineState(startLineState)
+  let lastTokenized = lastTokenizedLines.get(document)
+  if (
+    !lastTokenized ||
+    lastTokenized.line !== line ||
+    lastTokenized.packed !== packed
+  ) {
+    /**
+     * @type {number[]}
+     */
+    const tokenStates = []
+    const { state, tokens } = TokenizeJava.tokenizeLine(
+      line,
+      startLineState,
+      tokenStates,
+    )
+    tokenStates.push(state)
+    createLineTokenIndex(tokens, tokenStates)
+    lastTokenized = { line, packed, tokens }
+    lastTokenizedLines.set(document, lastTokenized)
+  }
+  return getTokenAtColumn(line, lastTokenized.tokens, startLineState, column)
+}
@@ -0,0 +1,276 @@
+import * as TokenizeJava from './tokenizeJava.js'
+import {
+  TYPE_INDEX_BITS,
+  tokenTypeIndices,
+  tokenTypes,
+} from './tokenTypeIndex.js'
+
+/**
+ * Layout of a token buffer, in native-endian 32 bit integers:
+ *
+ * - `[0]` published line count, written with `Atomics.store` after the tokens
+ *   and states of those lines were written, and signalled with
+ *   `Atomics.notify`
+ * - `[1]` line capacity
+ * - `[2]` token capacity
+ * - `[3]` layout version
+ * - line capacity integers: the end offset of each line in the token area
+ * - line capacity integers: the state at the end of each line
+ * - token capacity integers: one token each, packed as
+ *   `length * 32 + typeIndex`, where `typeIndex` indexes `tokenTypes`; the
+ *   packed value is read back as unsigned, so lengths fit in 27 bits
+ *
+ * The buffer is either a `SharedArrayBuffer` that the renderer reads in place
+ * while lines are being published, or an `ArrayBuffer` that is transferred to
+ * the renderer once all lines are written.
+ */
+
+const PUBLISHED_LINE_COUNT = 0
+const LINE_CAPACITY = 1
+const TOKEN_CAPACITY = 2
+const LAYOUT_VERSION = 3
+const HEADER_LENGTH = 4
+const VERSION = 2
+const TYPE_BITS = TYPE_INDEX_BITS
+const TYPE_INDEX_MASK = (1 << TYPE_BITS) - 1
+const LENGTH_MULTIPLIER = 1 << TYPE_BITS
+const MAX_TOKEN_LENGTH = 2 ** (32 - TYPE_BITS) - 1
+
+/**
+ * The view of each buffer that was read, so that the renderer does not create
+ * a view for every line it reads.
+ *
+ * @type {WeakMap<ArrayBuffer|SharedArrayBuffer, Int32Array>}
+ */
+const views = new WeakMap()
+
+/**
+ * @param {ArrayBuffer|SharedArrayBuffer} buffer
+ */
+const getView = (buffer) => {
+  let data = views.get(buffer)
+  if (!data) {
+    data = new Int32Array(buffer)
+    if (data[LAYOUT_VERSION] !== VERSION) {
+      throw new Error(
+        `unsupported token buffer version ${data[LAYOUT_VERSION]}`,
+      )
+    }
+    views.set(buffer, data)
+  }
+  return data
+}
+
+/**
+ * @param {Int32Array} data
+ * @param {number} lineIndex
+ */
+const checkPublished = (data, lineIndex) => {
+  const published = Atomics.load(data, PUBLISHED_LINE_COUNT)
+  if (!Number.isInteger(lineIndex) || lineIndex < 0 || lineIndex >= published) {
+    throw new Error(
+      `line ${lineIndex} is not published, ${published} lines are published`,
+    )
+  }
+}
+
+/**
+ * @param {{lineCapacity: number, tokenCapacity: number, shared?: boolean}} options
+ */
+export const createTokenBufferWriter = ({
+  lineCapacity,
+  tokenCapacity,
+  shared = false,
+}) => {
+  const byteLength = (HEADER_LENGTH + lineCapacity * 2 + tokenCapacity) * 4
+  const buffer = shared
+    ? new SharedArrayBuffer(byteLength)
+    : new ArrayBuffer(byteLength)
+  const data = new Int32Array(buffer)
+  data[LINE_CAPACITY] = lineCapacity
+  data[TOKEN_CAPACITY] = tokenCapacity
+  data[LAYOUT_VERSION] = VERSION
+  const lineEndsOffset = HEADER_LENGTH
+  const statesOffset = HEADER_LENGTH + lineCapacity
+  const tokensOffset = HEADER_LENGTH + lineCapacity * 2
+  let lineCount = 0
+  let tokenCount = 0
+
+  /**
+   * @param {ArrayLike<number>} tokens
+   * @param {any} lineState the state at the end of the line
+   */
+  const writeLine = (tokens, lineState) => {
+    if (lineCount >= lineCapacity) {
+      throw new Error('token buffer line capacity exceeded')
+    }
+    if (tokenCount + tokens.length / 2 > tokenCapacity) {
+      throw new Error('token buffer token capacity exceeded')
+    }
+    for (let i = 0; i < tokens.length; i += 2) {
+      const typeIndex = tokenTypeIndices.get(tokens[i])
+      if (typeIndex === undefined) {
+        throw new Error(`unsupported token type ${tokens[i]}`)
+      }
+      if (tokens[i + 1] > MAX_TOKEN_LENGTH) {
+        throw new Error(`token length ${tokens[i + 1]} exceeds the maximum`)
+      }
+      data[tokensOffset + tokenCount++] =
+        tokens[i + 1] * LENGTH_MULTIPLIER + typeIndex
+    }
+    data[lineEndsOffset + lineCount] = tokenCount
+    data[statesOffset + lineCount] = TokenizeJava.getPackedLineState(lineState)
+    lineCount++
+  }
+
+  /**
+   * Makes all written lines visible to readers and wakes up waiting readers.
+   */
+  const publish = () => {
+    if (shared) {
+      Atomics.store(data, PUBLISHED_LINE_COUNT, lineCount)
+      Atomics.notify(data, PUBLISHED_LINE_COUNT)
+    } else {
+      data[PUBLISHED_LINE_COUNT] = lineCount
+    }
+  }
+
+  return {
+    buffer,
+    writeLine,
+    publish,
+  }
+}
+
+/**
+ * Tokenizes the text into a new token buffer, publishing lines every
+ * `publishInterval` lines. The token capacity is the number of characters,
+ * since every token is at least one character long.
+ *
+ * @param {string} text
+ * @param {{shared?: boolean, publishInterval?: number}} [options]
+ */
+export const tokenizeToBuffer = (
+  text,
+  { shared = false, publishInterval = 256 } = {},
+) => {
+  const lines = text.split('\n')
+  const writer = createTokenBufferWriter({
+    lineCapacity: lines.length,
+    tokenCapacity: text.length,
+    shared,
+  })
+  let lineState = TokenizeJava.initialLineState
+  for (let i = 0; i < lines.length; i++) {
+    lineState = TokenizeJava.tokenizeLine(lines[i], lineState)
+    writer.writeLine(lineState.tokens, lineState)
+    if ((i + 1) % publishInterval === 0) {
+      writer.publish()
+    }
+  }
+  writer.publish()
+  return writer.buffer
+}
+
+/**
+ * @param {ArrayBuffer|SharedArrayBuffer} buffer
+ */
+export const getPublishedLineCount = (buffer) => {
+  return Atomics.load(getView(buffer), PUBLISHED_LINE_COUNT)
+}
+
+/**
+ * Blocks until at least `lineCount` lines are published or the timeout
+ * expires. Only usable in workers, the main thread should use
+ * `waitForLinesAsync`.
+ *
+ * @param {SharedArrayBuffer} buffer
+ * @param {number} lineCount
+ * @param {number} [timeout]
+ */
+export const waitForLines = (buffer, lineCount, timeout = Infinity) => {
+  const data = getView(buffer)
+  let published = Atomics.load(data, PUBLISHED_LINE_COUNT)
+  const deadline = performance.now() + timeout
+  while (published < lineCount) {
+    const remaining = deadline - performance.now()
+    if (remaining <= 0) {
+      break
+    }
+    Atomics.wait(data, PUBLISHED_LINE_COUNT, published, remaining)
+    published = Atomics.load(data, PUBLISHED_LINE_COUNT)
+  }
+  return published
+}
+
+/**
+ * Resolves once at least `lineCount` lines are published or the timeout
+ * expires.
+ *
+ * @param {SharedArrayBuffer} buffer
+ * @param {number} lineCount
+ * @param {number} [timeout]
+ */
+export const waitForLinesAsync = async (
+  buffer,
+  lineCount,
+  timeout = Infinity,
+) => {
+  const data = getView(buffer)
+  let published = Atomics.load(data, PUBLISHED_LINE_COUNT)
+  const deadline = performance.now() + timeout
+  while (published < lineCount) {
+    const remaining = deadline - performance.now()
+    if (remaining <= 0) {
+      break
+    }
+    const result = Atomics.waitAsync(
+      data,
+      PUBLISHED_LINE_COUNT,
+      published,
+      remaining,
+    )
+    if (result.async) {
+      await result.value
+    }
+    published = Atomics.load(data, PUBLISHED_LINE_COUNT)
+  }
+  return published
+}
+
+/**
+ * Decodes the tokens of a published line into `tokens`, in the same format
+ * that `tokenizeLine` returns. Throws for lines that are not published yet.
+ *
+ * @param {ArrayBuffer|SharedArrayBuffer} buffer
+ * @param {number} lineIndex
+ * @param {number[]} [tokens]
+ */
+export const readLineTokens = (buffer, lineIndex, tokens = []) => {
+  const data = getView(buffer)
+  checkPublished(data, lineIndex)
+  const tokensOffset = HEADER_LENGTH + data[LINE_CAPACITY] * 2
+  const start = lineIndex === 0 ? 0 : data[HEADER_LENGTH + lineIndex - 1]
+  const end = data[HEADER_LENGTH + lineIndex]
+  tokens.length = 0
+  for (let i = tokensOffset + start; i < tokensOffset + end; i++) {
+    const value = data[i]
+    tokens.push(tokenTypes[value & TYPE_INDEX_MASK], value >>> TYPE_BITS)
+  }
+  return tokens
+}
+
+/**
+ * Returns the state at the end of a published line. Throws for lines that are
+ * not published yet.
+ *
+ * @param {ArrayBuffer|SharedArrayBuffer} buffer
+ * @param {number} lineIndex
+ */
+export const readLineState = (buffer, lineIndex) => {
+  const data = getView(buffer)
+  checkPublished(data, lineIndex)
+  return TokenizeJava.getLineState(
+    data[HEADER_LENGTH + data[LINE_CAPACITY] + lineIndex],
+  )
+}
@@ -0,0 +1,177 @@
+import { hashString, toSmallHash } from './hash.js'
+import * as TokenizeJava from './tokenizeJava.js'
+
+/**
+ * @typedef {object} TokenCacheEntry
+ * @property {number} key
+ * @property {string} line
+ * @property {number} state
+ * @property {any} result
+ * @property {number} bytes
+ */
+
+/**
+ * @typedef {object} TokenCacheOptions
+ * @property {number} [maxEntries] less than 1 disables caching
+ * @property {number} [maxBytes]
+ */
+
+const ENTRY_OVERHEAD = 64
+
+/**
+ * @param {number} lineHash
+ * @param {number} state
+ */
+const getKey = (lineHash, state) => {
+  return toSmallHash(lineHash ^ Math.imul(state + 1, 0x9e3779b1))
+}
+
+/**
+ * @param {string} line
+ * @param {readonly number[]} tokens
+ */
+const estimateBytes = (line, tokens) => {
+  return ENTRY_OVERHEAD + line.length * 2 + tokens.length * 8
+}
+
+/**
+ * Creates a bounded cache in front of `tokenizeLine`, evicting with the clock
+ * algorithm. Results for the same line text and start state are shared between
+ * callers, so cached results and their token arrays are frozen.
+ *
+ * @param {TokenCacheOptions} [options]
+ */
+export const createTokenCache = ({
+  maxEntries = 10_000,
+  maxBytes = 8 * 1024 * 1024,
+} = {}) => {
+  /**
+   * @type {Map<number, number>}
+   */
+  const index = new Map()
+  /**
+   * @type {(TokenCacheEntry|undefined)[]}
+   */
+  const slots = []
+  /**
+   * @type {number[]}
+   */
+  const freeSlots = []
+  let referenced = new Uint8Array(Math.max(Math.min(maxEntries, 1024), 0))
+  let hand = 0
+  let bytes = 0
+  let hits = 0
+  let misses = 0
+  let evictions = 0
+
+  /**
+   * @param {number} slot
+   */
+  const evictSlot = (slot) => {
+    const entry = slots[slot]
+    index.delete(entry.key)
+    bytes -= entry.bytes
+    slots[slot] = undefined
+    freeSlots.push(slot)
+    evictions++
+  }
+
+  /**
+   * @param {number} entryBytes
+   */
+  const makeRoom = (entryBytes) => {
+    while (
+      index.size > 0 &&
+      (bytes + entryBytes > maxBytes ||
+        (freeSlots.length === 0 && slots.length >= maxEntries))
+    ) {
+      if (hand >= slots.length) {
+        hand = 0
+      }
+      if (slots[hand] === undefined) {
+        hand++
+      } else if (referenced[hand]) {
+        referenced[hand] = 0
+        hand++
+      } else {
+        evictSlot(hand++)
+      }
+    }
+  }
+
+  /**
+   * @param {TokenCacheEntry} entry
+   */
+  const insert = (entry) => {
+    makeRoom(entry.bytes)
+    const slot = freeSlots.length > 0 ? freeSlots.pop() : slots.length
+    if (slot >= referenced.length) {
+      const grown = new Uint8Array(Math.min(maxEntries, referenced.length * 2))
+      grown.set(referenced)
+      referenced = grown
+    }
+    slots[slot] = entry
+    referenced[slot] = 0
+    index.set(entry.key, slot)
+    bytes += entry.bytes
+  }
+
+  /**
+   * @param {string} line
+   * @param {any} lineState
+   */
+  const tokenizeLine = (line, lineState) => {
+    const state = TokenizeJava.getPackedLineState(lineState)
+    const key = getKey(hashString(line), state)
+    const slot = index.get(key)
+    const entry = slot === undefined ? undefined : slots[slot]
+    if (entry && entry.line === line && entry.state === state) {
+      hits++
+      referenced[slot] = 1
+      return entry.result
+    }
+    misses++
+    const result = TokenizeJava.tokenizeLine(line, lineState)
+    const entryBytes = estimateBytes(line, result.tokens)
+    if (maxEntries < 1 || entryBytes > maxBytes) {
+      return result
+    }
+    if (entry) {
+      evictSlot(slot)
+    }
+    Object.freeze(result.tokens)
+    Object.freeze(result)
+    insert({ key, line, state, result, bytes: entryBytes })
+    return result
+  }
+
+  const getStats = () => {
+    const total = hits + misses
+    return {
+      hits,
+      misses,
+      evictions,
+      entries: index.size,
+      bytes,
+      hitRate: total === 0 ? 0 : hits / total,
+    }
+  }
+
+  const clear = () => {
+    index.clear()
+    slots.length = 0
+    freeSlots.length = 0
+    referenced.fill(0)
+    hand = 0
+    bytes = 0
+    hits = 0
+    misses = 0
+    evictions = 0
+  }
+
+  return {
+    tokenizeLine,
+    getStats,
+    clear,
+  }
+}
@@ -0,0 +1,292 @@
+import { combineHash, hashString, toSmallHash } from './hash.js'
+import * as TokenizeJava from './tokenizeJava.js'
+
+/**
+ * @typedef {object} TokenBlock
+ * @property {number} key
+ * @property {any} startState
+ * @property {readonly string[]} lines
+ * @property {readonly (readonly number[])[]} tokens
+ * @property {readonly any[]} states
+ * @property {number} refCount
+ */
+
+/**
+ * @typedef {object} StoredDocument
+ * @property {number} key
+ * @property {string} text
+ * @property {number} lineCount
+ * @property {readonly TokenBlock[]} blocks
+ * @property {Uint32Array} blockStarts
+ * @property {number} refCount
+ */
+
+/**
+ * @typedef {object} TokenStoreOptions
+ * @property {number} [averageBlockSize] must be a power of two
+ * @property {number} [minBlockSize]
+ * @property {number} [maxBlockSize]
+ * @property {(line: string, lineState: any) => any} [tokenizeLine]
+ */
+
+/**
+ * @param {readonly string[]} a
+ * @param {readonly string[]} b
+ * @param {number} offset
+ */
+const isSameLines = (a, b, offset) => {
+  for (let i = 0; i < a.length; i++) {
+    if (a[i] !== b[offset + i]) {
+      return false
+    }
+  }
+  return true
+}
+
+/**
+ * @param {Uint32Array} blockStarts
+ * @param {number} lineIndex
+ */
+const findBlock = (blockStarts, lineIndex) => {
+  let low = 0
+  let high = blockStarts.length - 1
+  while (low < high) {
+    const middle = (low + high + 1) >> 1
+    if (blockStarts[middle] <= lineIndex) {
+      low = middle
+    } else {
+      high = middle - 1
+    }
+  }
+  return low
+}
+
+/**
+ * Creates a store that shares tokenization results between documents. Whole
+ * documents are deduplicated by content hash, and the lines of each document
+ * are split into content-defined blocks, so that identical regions of
+ * different files (for example vendored copies or both sides of a diff) share
+ * token arrays and line states even when lines were inserted above them.
+ *
+ * @param {TokenStoreOptions} [options]
+ */
+export const createTokenStore = ({
+  averageBlockSize = 32,
+  minBlockSize = 8,
+  maxBlockSize = 256,
+  tokenizeLine = TokenizeJava.tokenizeLine,
+} = {}) => {
+  const boundaryMask = averageBlockSize - 1
+  /**
+   * @type {Map<number, StoredDocument[]>}
+   */
+  const documents = new Map()
+  /**
+   * @type {Map<number, TokenBlock[]>}
+   */
+  const blocks = new Map()
+  let blockHits = 0
+  let blockMisses = 0
+
+  /**
+   * @param {readonly string[]} lines
+   * @param {number} start
+   * @param {number} end
+   * @param {number} blockHash
+   * @param {any} startState
+   * @returns {TokenBlock}
+   */
+  const getBlock = (lines, start, end, blockHash, startState) => {
+    const packed = TokenizeJava.getPackedLineState(startState)
+    const key = toSmallHash(combineHash(blockHash, packed))
+    const candidates = blocks.get(key) || []
+    for (const block of candidates) {
+      if (
+        TokenizeJava.getPackedLineState(block.startState) === packed &&
+        block.lines.length === end - start &&
+        isSameLines(block.lines, lines, start)
+      ) {
+        blockHits++
+        block.refCount++
+        return block
+      }
+    }
+    blockMisses++
+    const blockLines = lines.slice(start, end)
+    const tokens = []
+    const states = []
+    let lineState = startState
+    for (const line of blockLines) {
+      lineState = tokenizeLine(line, lineState)
+      // blocks are shared between documents, so a caller that modifies the
+      // tokens or states of one document must not change the others
+      tokens.push(Object.freeze(lineState.tokens))
+      states.push(Object.freeze(lineState))
+    }
+    const block = {
+      key,
+      startState,
+      lines: Object.freeze(blockLines),
+      tokens: Object.freeze(tokens),
+      states: Object.freeze(states),
+      refCount: 1,
+    }
+    candidates.push(block)
+    blocks.set(key, candidates)
+    return block
+  }
+
+  /**
+   * @param {TokenBlock} block
+   */
+  const releaseBlock = (block) => {
+    block.refCount--
+    if (block.refCount > 0) {
+      return
+    }
+    const candidates = blocks.get(block.key)
+    const index = candidates.indexOf(block)
+    candidates.splice(index, 1)
+    if (candidates.length === 0) {
+      blocks.delete(block.key)
+    }
+  }
+
+  /**
+   * @param {readonly string[]} lines
+   */
+  const tokenizeBlocks = (lines) => {
+    const documentBlocks = []
+    const starts = []
+    let lineState = TokenizeJava.initialLineState
+    let start = 0
+    let blockHash = 0
+    for (let i = 0; i < lines.length; i++) {
+      const lineHash = hashString(lines[i])
+      blockHash = combineHash(blockHash, lineHash)
+      const size = i + 1 - start
+      const isLast = i === lines.length - 1
+      if (
+        isLast ||
+        size >= maxBlockSize ||
+        (size >= minBlockSize && (lineHash & boundaryMask) === 0)
+      ) {
+        const block = getBlock(lines, start, i + 1, blockHash, lineState)
+        documentBlocks.push(block)
+        starts.push(start)
+        lineState = block.states.at(-1)
+        start = i + 1
+        blockHash = 0
+      }
+    }
+    return {
+      blocks: documentBlocks,
+      blockStarts: new Uint32Array(starts),
+    }
+  }
+
+  /**
+   * Returns the shared tokenization of the given text. Every call must be
+   * paired with a call to `release` once the document is closed.
+   *
+   * @param {string} text
+   * @returns {StoredDocument}
+   */
+  const acquire = (text) => {
+    const key = toSmallHash(hashString(text))
+    const candidates = documents.get(key) || []
+    for (const document of candidates) {
+      if (document.text === text) {
+        document.refCount++
+        return document
+      }
+    }
+    const lines = text.split('\n')
+    const tokenized = tokenizeBlocks(lines)
+    const document = {
+      key,
+      text,
+      lineCount: lines.length,
+      blocks: tokenized.blocks,
+      blockStarts: tokenized.blockStarts,
+      refCount: 1,
+    }
+    candidates.push(document)
+    documents.set(key, candidates)
+    return document
+  }
+
+  /**
+   * @param {StoredDocument} document
+   */
+  const release = (document) => {
+    document.refCount--
+    if (document.refCount > 0) {
+      return
+    }
+    for (const block of document.blocks) {
+      releaseBlock(block)
+    }
+    const candidates = documents.get(document.key)
+    candidates.splice(candidates.indexOf(document), 1)
+    if (candidates.length === 0) {
+      documents.delete(document.key)
+    }
+  }
+
+  const getStats = () => {
+    let documentCount = 0
+    let blockCount = 0
+    let lineCount = 0
+    let tokenCount = 0
+    for (const candidates of documents.values()) {
+      documentCount += candidates.length
+    }
+    for (const candidates of blocks.values()) {
+      for (const block of candidates) {
+        blockCount++
+        lineCount += block.lines.length
+        for (const tokens of block.tokens) {
+          tokenCount += tokens.length / 2
+        }
+      }
+    }
+    return {
+      documents: documentCount,
+      blocks: blockCount,
+      lines: lineCount,
+      tokens: tokenCount,
+      blockHits,
+      blockMisses,
+    }
+  }
+
+  return {
+    acquire,
+    release,
+    getStats,
+  }
+}
+
+/**
+ * @param {StoredDocument} document
+ * @param {number} lineIndex
+ * @returns {readonly number[]}
+ */
+export const getLineTokens = (document, lineIndex) => {
+  const blockIndex = findBlock(document.blockStarts, lineIndex)
+  const block = document.blocks[blockIndex]
+  return block.tokens[lineIndex - document.blockStarts[blockIndex]]
+}
+
+/**
+ * Returns the state at the end of the given line.
+ *
+ * @param {StoredDocument} document
+ * @param {number} lineIndex
+ */
+export const getLineState = (document, lineIndex) => {
+  const blockIndex = findBlock(document.blockStarts, lineIndex)
+  const block = document.blocks[blockIndex]
+  return block.states[lineIndex - document.blockStarts[blockIndex]]
+}
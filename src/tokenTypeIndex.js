@@ -0,0 +1,28 @@
+import { TokenType } from './tokenizeJava.js'
+
+/**
+ * All token types in a stable order, so that they can be stored as small
+ * indices in binary formats.
+ */
+export const tokenTypes = Object.values(TokenType)
+
+/**
+ * @type {Map<number, number>}
+ */
+export const tokenTypeIndices = new Map(
+  tokenTypes.map((type, index) => [type, index]),
+)
+
+/**
+ * Binary formats store token type indices in 5 bits. encodeTokens.js reserves
+ * the highest index as an escape for types that are not in `TokenType`.
+ */
+export const TYPE_INDEX_BITS = 5
+
+export const ESCAPE_TYPE_INDEX = (1 << TYPE_INDEX_BITS) - 1
+
+if (tokenTypes.length > ESCAPE_TYPE_INDEX) {
+  throw new Error(
+    `${tokenTypes.length} token types do not fit in ${TYPE_INDEX_BITS} bits, at most ${ESCAPE_TYPE_INDEX} do`,
+  )
+}
@@ -1,7 +1,7 @@
 /**
  * @enum number
  */
-const State = {
+export const State = {
   None: 0,
   TopLevelContent: 1,
   InsideSingleQuoteString: 2,
@@ -33,6 +33,12 @@ export const TokenType = {
   FunctionName: 885,
   KeywordImport: 215,
   LanguageConstant: 71,
+  BracketColor1: 16,
+  BracketColor2: 17,
+  BracketColor3: 18,
+  BracketColor4: 19,
+  BracketColor5: 20,
+  BracketColor6: 21,
 }
 
 export const TokenMap = {
@@ -55,12 +61,101 @@ export const TokenMap = {
   [TokenType.Text]: 'Text',
   [TokenType.KeywordImport]: 'KeywordImport',
   [TokenType.LanguageConstant]: 'LanguageConstant',
+  [TokenType.BracketColor1]: 'BracketColor1',
+  [TokenType.BracketColor2]: 'BracketColor2',
+  [TokenType.BracketColor3]: 'BracketColor3',
+  [TokenType.BracketColor4]: 'BracketColor4',
+  [TokenType.BracketColor5]: 'BracketColor5',
+  [TokenType.BracketColor6]: 'BracketColor6',
 }
 
-export const initialLineState = {
-  state: State.TopLevelContent,
+const BRACKET_COLOR_COUNT = 6
+
+/**
+ * Line states are packed into one number: the state in the lowest 3 bits, a
+ * flag that enables bracket colors, and the curly, paren and square bracket
+ * depths in 6 bits each. Depths are only tracked when bracket colors are
+ * enabled, because otherwise every unbalanced edit would change the state of
+ * all following lines.
+ *
+ * Depths saturate at 63: an opening bracket beyond that depth keeps 63, and
+ * the matching closing brackets count down from there, so brackets nested more
+ * than 63 deep get the colors of shallower ones. Java code that nests this
+ * deep does not occur in practice, and a wider field would not fit into the
+ * 31 bits of a small integer.
+ */
+const STATE_MASK = 0b111
+const BRACKET_COLORS_FLAG = 1 << 3
+const DEPTH_BITS = 6
+const MAX_DEPTH = (1 << DEPTH_BITS) - 1
+const CURLY_SHIFT = 4
+const PAREN_SHIFT = CURLY_SHIFT + DEPTH_BITS
+const SQUARE_SHIFT = PAREN_SHIFT + DEPTH_BITS
+
+/**
+ * The shared line states without bracket depths, one for each state with and
+ * without bracket colors.
+ *
+ * @type {{state: number, packed: number}[]}
+ */
+const internedLineStates = []
+
+/**
+ * Returns the line state object for a packed line state. States without
+ * bracket depths are shared. States with bracket depths get a new object,
+ * because there are up to 2^21 of them and interning them would keep every
+ * depth ever seen alive. Line states are compared by their packed number, see
+ * `isEqualLineState`, so the identity of the object does not matter.
+ *
+ * @param {number} packed
+ */
+export const getLineState = (packed) => {
+  if (packed >= 1 << CURLY_SHIFT) {
+    return Object.freeze({ state: packed & STATE_MASK, packed })
+  }
+  let lineState = internedLineStates[packed]
+  if (!lineState) {
+    lineState = Object.freeze({ state: packed & STATE_MASK, packed })
+    internedLineStates[packed] = lineState
+  }
+  return lineState
+}
+
+/**
+ * Line states created before bracket depths were tracked only have a state.
+ *
+ * @param {any} lineState
+ * @returns {number}
+ */
+export const getPackedLineState = (lineState) => {
+  return lineState.packed ?? lineState.state
+}
+
+/**
+ * Returns the bracket depths at the end of a line. Depths are only tracked for
+ * states that derive from `initialLineStateWithBracketColors`.
+ *
+ * @param {any} lineState
+ */
+export const getBracketDepths = (lineState) => {
+  const packed = getPackedLineState(lineState)
+  return {
+    curly: (packed >> CURLY_SHIFT) & MAX_DEPTH,
+    paren: (packed >> PAREN_SHIFT) & MAX_DEPTH,
+    square: (packed >> SQUARE_SHIFT) & MAX_DEPTH,
+  }
 }
 
+export const initialLineState = getLineState(State.TopLevelContent)
+
+/**
+ * Like `initialLineState`, but brackets are emitted as `BracketColor1` to
+ * `BracketColor6` tokens depending on their nesting depth.
+ */
+export const initialLineStateWithBracketColors = getLineState(
+  State.TopLevelContent | BRACKET_COLORS_FLAG,
+)
+
 const RE_KEYWORD =
   /^(?:_|null|true|false|abstract|assert|boolean|break|byte|case|catch|char|class|const|continue|default|do|double|else|enum|extends|final|finally|float|for|goto|if|implements|import|instanceof|int|interface|long|native|new|package|private|protected|public|return|short|static|super|switch|synchronized|this|throw|throws|transient|try|void|volatile|while)\b/
 
@@ -93,15 +188,22 @@ export const hasArrayReturn = true
 /**
  * @param {string} line
  * @param {any} lineState
+ * @param {number[]} [tokenStates] receives the state before each token
  */
-export const tokenizeLine = (line, lineState) => {
+export const tokenizeLine = (line, lineState, tokenStates) => {
   let next = null
   let index = 0
   let tokens = []
   let token = TokenType.None
-  let state = lineState.state
+  const packed = getPackedLineState(lineState)
+  let state = packed & STATE_MASK
+  let curlyDepth = (packed >> CURLY_SHIFT) & MAX_DEPTH
+  let parenDepth = (packed >> PAREN_SHIFT) & MAX_DEPTH
+  let squareDepth = (packed >> SQUARE_SHIFT) & MAX_DEPTH
+  const colorizeBrackets = (packed & BRACKET_COLORS_FLAG) !== 0
   while (index < line.length) {
     const part = line.slice(index)
+    tokenStates?.push(state)
     switch (state) {
       case State.TopLevelContent:
         if ((next = part.match(RE_WHITESPACE))) {
@@ -274,11 +376,51 @@ export const tokenizeLine = (line, lineState) => {
     }
     const currentTokenText = next[0]
     const currentTokenLength = currentTokenText.length
+    if (colorizeBrackets && token === TokenType.Punctuation) {
+      let depth = -1
+      switch (line.charCodeAt(index)) {
+        case 123: // {
+          depth = curlyDepth + parenDepth + squareDepth
+          curlyDepth = Math.min(curlyDepth + 1, MAX_DEPTH)
+          break
+        case 125: // }
+          curlyDepth = Math.max(curlyDepth - 1, 0)
+          depth = curlyDepth + parenDepth + squareDepth
+          break
+        case 40: // (
+          depth = curlyDepth + parenDepth + squareDepth
+          parenDepth = Math.min(parenDepth + 1, MAX_DEPTH)
+          break
+        case 41: // )
+          parenDepth = Math.max(parenDepth - 1, 0)
+          depth = curlyDepth + parenDepth + squareDepth
+          break
+        case 91: // [
+          depth = curlyDepth + parenDepth + squareDepth
+          squareDepth = Math.min(squareDepth + 1, MAX_DEPTH)
+          break
+        case 93: // ]
+          squareDepth = Math.max(squareDepth - 1, 0)
+          depth = curlyDepth + parenDepth + squareDepth
+          break
+        default:
+          break
+      }
+      if (depth !== -1) {
+        token = TokenType.BracketColor1 + (depth % BRACKET_COLOR_COUNT)
+      }
+    }
     index += currentTokenLength
     tokens.push(token, currentTokenLength)
   }
   return {
     state,
+    packed:
+      state |
+      (packed & BRACKET_COLORS_FLAG) |
+      (curlyDepth << CURLY_SHIFT) |
+      (parenDepth << PAREN_SHIFT) |
+      (squareDepth << SQUARE_SHIFT),
     tokens,
   }
 }
@@ -0,0 +1,206 @@
+import { combineHash, hashString } from './hash.js'
+
+/**
+ * A rule of the tokenizer is one of the top level `part.match(RE_...)`
+ * branches of a state in `tokenizeLine`. Its hash covers the text of the
+ * branch, including nested branches, the definitions of the regular
+ * expressions that the branch uses and the order of the rules of its state,
+ * because the rules of a state are tried in order. Everything else in the
+ * source is covered by the rest hash.
+ *
+ * @typedef {object} TokenizerRule
+ * @property {string} id the state and the regular expression, for example
+ * `TopLevelContent:RE_KEYWORD`
+ * @property {string} state
+ * @property {number} hash
+ * @property {number} line the line of the condition
+ */
+
+const RE_STATE_CASE = /^ {6}case State\.(\w+):$/
+const RE_BRANCH =
+  /^ {8}(?:\} else )?if \(\(next = part\.match\((RE_\w+)\)\)\) \{$/
+const RE_BRANCH_END = /^ {8}\}/
+const RE_ANY_STATE_CASE = /\bcase State\.\w+:/
+const RE_ANY_BRANCH = /^( *)(?:\} else )?if \(\(next = part\.match\(/
+const RE_REGEX_DEFINITION = /^const (RE_\w+) =/
+const RE_REGEX_NAME = /\bRE_\w+/g
+const RE_MATCH_CALL = /\bpart\.match\(/g
+const RE_RELATIVE_IMPORT =
+  /(\bfrom\s*|\bimport\s*\(?\s*)(['"])(\.\.?\/[^'"]*)\2/g
+
+/**
+ * @param {string} source
+ */
+const getRegexDefinitions = (source) => {
+  /**
+   * @type {Map<string, string>}
+   */
+  const definitions = new Map()
+  /**
+   * @type {Set<number>}
+   */
+  const lineIndices = new Set()
+  const lines = source.split('\n')
+  for (let i = 0; i < lines.length; i++) {
+    const match = lines[i].match(RE_REGEX_DEFINITION)
+    if (!match) {
+      continue
+    }
+    // definitions that do not fit on one line continue on indented lines
+    let end = i + 1
+    while (end < lines.length && lines[end].startsWith('  ')) {
+      end++
+    }
+    definitions.set(match[1], lines.slice(i, end).join('\n'))
+    for (let j = i; j < end; j++) {
+      lineIndices.add(j)
+    }
+  }
+  return { definitions, lineIndices }
+}
+
+/**
+ * Splits the source of the tokenizer into rules and the rest. Rules are found
+ * by the indentation of the state cases and branches, so this throws when the
+ * source is formatted differently, instead of silently merging rules, giving
+ * them to the wrong state or covering them by the rest hash only: every state
+ * case must be recognized, no branch of the same level may end up inside a
+ * rule and no `part.match` call may be left in the rest.
+ *
+ * @param {string} source
+ */
+export const getTokenizerRules = (source) => {
+  const lines = source.split('\n')
+  const { definitions, lineIndices } = getRegexDefinitions(source)
+  /**
+   * @type {TokenizerRule[]}
+   */
+  const rules = []
+  /**
+   * @type {Set<string>}
+   */
+  const ids = new Set()
+  /**
+   * @type {string[]}
+   */
+  const rest = []
+  let state = ''
+  for (let i = 0; i < lines.length; i++) {
+    const line = lines[i]
+    const stateMatch = line.match(RE_STATE_CASE)
+    if (stateMatch) {
+      state = stateMatch[1]
+    } else if (RE_ANY_STATE_CASE.test(line)) {
+      throw new Error(
+        `expected the state case on line ${i + 1} to be indented like the others`,
+      )
+    }
+    const branchMatch = state && line.match(RE_BRANCH)
+    if (!branchMatch) {
+      if (!lineIndices.has(i)) {
+        rest.push(line)
+      }
+      continue
+    }
+    let end = i + 1
+    while (end < lines.length && !RE_BRANCH_END.test(lines[end])) {
+      end++
+    }
+    for (let j = i + 1; j < end; j++) {
+      const nestedMatch = lines[j].match(RE_ANY_BRANCH)
+      // nested branches are indented by at least one more level
+      if (nestedMatch && nestedMatch[1].length < 10) {
+        throw new Error(
+          `expected the branch on line ${j + 1} to start a new rule, but it is inside the rule on line ${i + 1}`,
+        )
+      }
+    }
+    const text = lines.slice(i, end).join('\n')
+    let hash = hashString(text)
+    for (const name of new Set(text.match(RE_REGEX_NAME))) {
+      hash = combineHash(hash, hashString(definitions.get(name) || name))
+    }
+    let id = `${state}:${branchMatch[1]}`
+    for (let n = 2; ids.has(id); n++) {
+      id = `${state}:${branchMatch[1]}:${n}`
+    }
+    ids.add(id)
+    rules.push({ id, state, hash, line: i })
+    // the line that closes the branch belongs to the next branch or the rest
+    i = end - 1
+  }
+  const unmatched = rest.join('\n').match(RE_MATCH_CALL)
+  if (unmatched) {
+    throw new Error(
+      `expected every part.match call to belong to a rule, but ${unmatched.length} of them are outside of the ${rules.length} rules found`,
+    )
+  }
+  // reordering the rules of a state changes all of them
+  for (const rule of rules) {
+    const order = rules
+      .filter((other) => other.state === rule.state)
+      .map((other) => other.id)
+      .join('\n')
+    rule.hash = combineHash(rule.hash, hashString(order))
+  }
+  return { rules, restHash: hashString(rest.join('\n')) }
+}
+
+/**
+ * Makes the relative imports of a module source absolute, so that the source
+ * can be imported from a `data:` url, which cannot resolve relative imports.
+ *
+ * @param {string} source
+ * @param {string|URL} url the url of the module file
+ */
+const resolveImports = (source, url) => {
+  return source.replace(
+    RE_RELATIVE_IMPORT,
+    (match, before, quote, specifier) => {
+      return `${before}${quote}${new URL(specifier, url).href}${quote}`
+    },
+  )
+}
+
+/**
+ * Returns a copy of the tokenizer source that records which rules are tried.
+ * The copy exports `coveredRules`, which has a 1 at the index of each rule in
+ * `rules` whose condition was evaluated since it was last cleared. Relative
+ * imports are resolved against `url`, the url of the tokenizer file.
+ *
+ * @param {string} source
+ * @param {string|URL} url
+ */
+export const instrumentTokenizer = (source, url) => {
+  const { rules } = getTokenizerRules(source)
+  const lines = source.split('\n')
+  for (let i = 0; i < rules.length; i++) {
+    const { line } = rules[i]
+    lines[line] = lines[line].replace(
+      '((next = part.match(',
+      `((coveredRules[${i}] = 1), (next = part.match(`,
+    )
+  }
+  lines.push(`export const coveredRules = new Uint8Array(${rules.length})`)
+  return { source: resolveImports(lines.join('\n'), url), rules }
+}
+
+/**
+ * Returns a copy of the tokenizer source that counts how often each rule
+ * matched. The copy exports `ruleHits`, which has the count of each rule at
+ * its index in `rules`. Relative imports are resolved against `url`, like in
+ * `instrumentTokenizer`.
+ *
+ * @param {string} source
+ * @param {string|URL} url
+ */
+export const countTokenizerRules = (source, url) => {
+  const { rules } = getTokenizerRules(source)
+  const lines = source.split('\n')
+  for (let i = 0; i < rules.length; i++) {
+    const { line } = rules[i]
+    lines[line] = lines[line].replace(/\)\)\) \{$/, `)) && ++ruleHits[${i}]) {`)
+  }
+  lines.push(`export const ruleHits = new Uint32Array(${rules.length})`)
+  return { source: resolveImports(lines.join('\n'), url), rules }
+}
@@ -1 +0,0 @@
-0x0p
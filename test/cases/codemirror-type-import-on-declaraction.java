@@ -1 +0,0 @@
-import java.util.*;